@@ -352,17 +352,16 @@ public class YoloDashboard extends JPanel {
 
                 int imageCount = currentProject.getImages().size();
                 int classCount = currentProject.getClasses().size();
-                int annotatedCount = (int) currentProject.getImages().stream()
-                        .mapToLong(img -> img.getAnnotations().size())
-                        .count();
+                int annotationCount = currentProject.getTotalAnnotationCount();
+                int labeledCount = currentProject.getLabeledImageCount();
 
                 imageCountLabel.setText("Images: " + imageCount);
                 classCountLabel.setText("Classes: " + classCount);
-                annotatedCountLabel.setText("Annotations: " + annotatedCount);
+                annotatedCountLabel.setText("Annotations: " + annotationCount);
 
                 // Update progress
                 if (imageCount > 0) {
-                    int progress = (annotatedCount * 100) / imageCount;
+                    int progress = (int) ((labeledCount * 100L) / imageCount);
                     progressBar.setValue(progress);
                     progressBar.setString(progress + "% Complete");
                 } else {
@@ -644,10 +643,7 @@ public class YoloDashboard extends JPanel {
             }
             
             // Count labeled objects
-            int totalLabeledObjects = 0;
-            for (raven.yolo.model.YoloImage image : sourceProject.getImages()) {
-                totalLabeledObjects += image.getAnnotations().size();
-            }
+            int totalLabeledObjects = sourceProject.getTotalAnnotationCount();
             
             if (totalLabeledObjects == 0) {
                 JOptionPane.showMessageDialog(this, 
@@ -12,6 +12,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import javax.imageio.ImageIO;
@@ -128,31 +129,52 @@ public class ImageListPanel extends JPanel {
         if (result == JFileChooser.APPROVE_OPTION) {
             File[] selectedFiles = fileChooser.getSelectedFiles();
             
-            SwingWorker<Void, Integer> worker = new SwingWorker<Void, Integer>() {                @Override
-                protected Void doInBackground() throws Exception {
-                    for (int i = 0; i < selectedFiles.length; i++) {
-                        final int currentIndex = i;
-                        try {
-                            ProjectManager.getInstance().addImageToProject(selectedFiles[i]);
-                            publish((currentIndex + 1) * 100 / selectedFiles.length);
-                        } catch (IOException e) {
-                            final int errorIndex = currentIndex;
-                            SwingUtilities.invokeLater(() -> 
-                                JOptionPane.showMessageDialog(ImageListPanel.this, 
-                                    "Error adding image " + selectedFiles[errorIndex].getName() + ": " + e.getMessage(), 
-                                    "Error", JOptionPane.ERROR_MESSAGE));
-                        }
-                    }
-                    return null;
+            ProjectManager projectManager = ProjectManager.getInstance();
+            YoloProject project = projectManager.getCurrentProject();
+            if (project == null) {
+                return;
+            }
+            Set<String> existingFilenames = projectManager.getImageFilenames();
+            addImageButton.setEnabled(false);
+            
+            // Files are copied in the background; the project is changed and saved on the EDT in done()
+            SwingWorker<ProjectManager.AddImagesResult, Integer> worker = new SwingWorker<ProjectManager.AddImagesResult, Integer>() {
+                @Override
+                protected ProjectManager.AddImagesResult doInBackground() throws Exception {
+                    return projectManager.copyImagesToProject(project, existingFilenames, List.of(selectedFiles),
+                        (completed, total) -> publish(completed * 100 / total));
                 }
                 
                 @Override
                 protected void process(List<Integer> chunks) {
-                    // Update progress if needed
+                    int progress = chunks.get(chunks.size() - 1);
+                    addImageButton.setText("Adding... " + progress + "%");
                 }
                 
                 @Override
                 protected void done() {
+                    addImageButton.setText("Add Images");
+                    addImageButton.setEnabled(true);
+                    try {
+                        ProjectManager.AddImagesResult result = get();
+                        projectManager.addCopiedImages(result).whenComplete((report, error) -> {
+                            if (error != null) {
+                                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(ImageListPanel.this,
+                                    "Error saving project: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+                            }
+                        });
+                        if (!result.getFailures().isEmpty()) {
+                            StringBuilder message = new StringBuilder("Failed to add " + result.getFailures().size() + " image(s):\n");
+                            result.getFailures().entrySet().stream().limit(10).forEach(entry ->
+                                message.append(entry.getKey().getName()).append(": ").append(entry.getValue().getMessage()).append("\n"));
+                            JOptionPane.showMessageDialog(ImageListPanel.this, message.toString(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    } catch (Exception e) {
+                        String errorMessage = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                        JOptionPane.showMessageDialog(ImageListPanel.this, "Error adding images: " + errorMessage,
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    }
                     loadProjectImages();
                 }
             };
@@ -177,36 +199,20 @@ public class ImageListPanel extends JPanel {
                 } else {
                     removeImageButton.setText("Removing " + selectedImages.size() + "...");
                 }
-                // Đảm bảo chỉ tạo 1 SwingWorker cho mỗi thao tác
-                SwingWorker<String, Integer> worker = new SwingWorker<String, Integer>() {
-                    @Override
-                    protected String doInBackground() throws Exception {
-                        for (int i = selectedImages.size() - 1; i >= 0; i--) {
-                            YoloImage imageToRemove = selectedImages.get(i);
-                            ProjectManager.getInstance().removeImageFromProject(imageToRemove);
-                            int progress = ((selectedImages.size() - i) * 100) / selectedImages.size();
-                            publish(progress);
-                        }
-                        return "SUCCESS";
-                    }
-                    @Override
-                    protected void process(List<Integer> chunks) {
-                        if (!chunks.isEmpty()) {
-                            int progress = chunks.get(chunks.size() - 1);
-                            removeImageButton.setText("Removing... " + progress + "%");
-                        }
-                    }
-                    @Override
-                    protected void done() {
+                // Removal and the save are requested on the EDT; files are deleted on the save thread
+                ProjectManager.getInstance().removeImagesFromProject(selectedImages).whenComplete((report, error) ->
+                    SwingUtilities.invokeLater(() -> {
                         try {
-                            get();
+                            if (error != null) {
+                                throw error;
+                            }
                             loadProjectImages();
                             // Clear thumbnail cache nếu cần
                             thumbnailCache.clear();
                             if (selectedImages.size() > 1) {
                                 JOptionPane.showMessageDialog(ImageListPanel.this, String.format("Successfully removed %d images.", selectedImages.size()), "Success", JOptionPane.INFORMATION_MESSAGE);
                             }
-                        } catch (Exception e) {
+                        } catch (Throwable e) {
                             String errorMessage = e.getCause() instanceof IOException ? e.getCause().getMessage() : e.getMessage();
                             JOptionPane.showMessageDialog(ImageListPanel.this, "Error removing images: " + errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
                             loadProjectImages();
@@ -215,12 +221,8 @@ public class ImageListPanel extends JPanel {
                             removeImageButton.setEnabled(false);
                             removeImageButton.setText("Remove Selected");
                             updateSelection();
-                            // Nếu có custom dialog, luôn dispose trên EDT
-                            // Example: if (customDialog != null) SwingUtilities.invokeLater(() -> customDialog.dispose());
                         }
-                    }
-                };
-                worker.execute();
+                    }));
             }
         }
     }
@@ -287,7 +289,7 @@ public class ImageListPanel extends JPanel {
                 String displayText = String.format("<html><b>%s</b><br/>%dx%d<br/>%d annotations%s</html>", 
                     image.getFilename(),
                     image.getWidth(), image.getHeight(),
-                    image.getAnnotations().size(),
+                    image.getAnnotationCount(),
                     image.isLabeled() ? " ✓" : "");
                   setText(displayText);
                 
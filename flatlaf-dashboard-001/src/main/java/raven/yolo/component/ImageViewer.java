@@ -178,12 +178,8 @@ public class ImageViewer extends JPanel {
             
             currentYoloImage.addAnnotation(annotation);
             
-            // Auto-save annotations to file
-            try {
-                raven.yolo.manager.ProjectManager.getInstance().saveImageAnnotations(currentYoloImage);
-            } catch (Exception e) {
-                System.err.println("Error saving annotations: " + e.getMessage());
-            }
+            // Journaled in the background once the edits settle
+            raven.yolo.manager.ProjectAutosave.getInstance().annotationsChanged(currentYoloImage);
         }
     }
     
@@ -280,12 +276,8 @@ public class ImageViewer extends JPanel {
       public void clearAnnotations() {
         if (currentYoloImage != null) {
             currentYoloImage.clearAnnotations();
-            // Auto-save annotations to file
-            try {
-                raven.yolo.manager.ProjectManager.getInstance().saveImageAnnotations(currentYoloImage);
-            } catch (Exception e) {
-                System.err.println("Error saving annotations: " + e.getMessage());
-            }
+            // Journaled in the background once the edits settle
+            raven.yolo.manager.ProjectAutosave.getInstance().annotationsChanged(currentYoloImage);
             repaint();
         }
     }
@@ -295,12 +287,8 @@ public class ImageViewer extends JPanel {
             List<YoloAnnotation> annotations = currentYoloImage.getAnnotations();
             annotations.remove(annotations.size() - 1);
             currentYoloImage.setLabeled(!annotations.isEmpty());
-            // Auto-save annotations to file
-            try {
-                raven.yolo.manager.ProjectManager.getInstance().saveImageAnnotations(currentYoloImage);
-            } catch (Exception e) {
-                System.err.println("Error saving annotations: " + e.getMessage());
-            }
+            // Journaled in the background once the edits settle
+            raven.yolo.manager.ProjectAutosave.getInstance().annotationsChanged(currentYoloImage);
             repaint();
         }
     }
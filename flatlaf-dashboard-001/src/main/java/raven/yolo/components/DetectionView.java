@@ -0,0 +1,135 @@
+package raven.yolo.components;
+
+import raven.yolo.model.DetectionResult;
+import raven.yolo.utils.ImageRenderer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Shows an image fitted to the component with detections painted as an
+ * overlay. The image is kept at display resolution in the screen's pixel
+ * format and rescaled only when the component is resized; changing or
+ * hiding the detections just repaints the overlay, without copying pixels.
+ */
+public class DetectionView extends JComponent {
+
+    private BufferedImage displayImage;
+    private int sourceWidth;
+    private int sourceHeight;
+    private List<DetectionResult> detections = List.of();
+    private boolean detectionsVisible = true;
+    private String placeholder = "No image selected";
+
+    // The display image scaled to the current view size
+    private BufferedImage viewImage;
+    private int viewImageWidth;
+    private int viewImageHeight;
+
+    public DetectionView() {
+        setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        setPreferredSize(new Dimension(400, 300));
+    }
+
+    /**
+     * Show an image; detections are given in the coordinates of the
+     * source image, which may be larger than the display image
+     */
+    public void setImage(ImageRenderer.DisplayImage image) {
+        displayImage = image != null ? image.getImage() : null;
+        sourceWidth = image != null ? image.getSourceWidth() : 0;
+        sourceHeight = image != null ? image.getSourceHeight() : 0;
+        viewImage = null;
+        detections = List.of();
+        repaint();
+    }
+
+    public boolean hasImage() {
+        return displayImage != null;
+    }
+
+    public void setDetections(List<DetectionResult> detections) {
+        this.detections = detections != null ? detections : List.of();
+        repaint();
+    }
+
+    public boolean isDetectionsVisible() {
+        return detectionsVisible;
+    }
+
+    public void setDetectionsVisible(boolean detectionsVisible) {
+        this.detectionsVisible = detectionsVisible;
+        repaint();
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Insets insets = getInsets();
+        int availableWidth = getWidth() - insets.left - insets.right;
+        int availableHeight = getHeight() - insets.top - insets.bottom;
+        if (availableWidth <= 0 || availableHeight <= 0) {
+            return;
+        }
+
+        Graphics2D g2d = (Graphics2D) g.create();
+        try {
+            if (displayImage == null) {
+                paintPlaceholder(g2d, insets, availableWidth, availableHeight);
+                return;
+            }
+
+            double scale = Math.min((double) availableWidth / sourceWidth, (double) availableHeight / sourceHeight);
+            int viewWidth = Math.max(1, (int) (sourceWidth * scale));
+            int viewHeight = Math.max(1, (int) (sourceHeight * scale));
+            int x = insets.left + (availableWidth - viewWidth) / 2;
+            int y = insets.top + (availableHeight - viewHeight) / 2;
+
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(viewImageFor(viewWidth, viewHeight), x, y, viewWidth, viewHeight, null);
+
+            if (detectionsVisible && !detections.isEmpty()) {
+                g2d.clipRect(x, y, viewWidth, viewHeight);
+                ImageRenderer.paintDetections(g2d, detections, scale, x, y);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * Downscaled copy for the view size, rebuilt only on resize; when the
+     * view is larger than the display image it is stretched while drawing
+     */
+    private BufferedImage viewImageFor(int viewWidth, int viewHeight) {
+        if (viewWidth >= displayImage.getWidth() || viewHeight >= displayImage.getHeight()) {
+            viewImage = null;
+            return displayImage;
+        }
+        if (viewImage == null || viewImageWidth != viewWidth || viewImageHeight != viewHeight) {
+            viewImage = ImageRenderer.scaleImage(displayImage, viewWidth, viewHeight);
+            viewImageWidth = viewWidth;
+            viewImageHeight = viewHeight;
+        }
+        return viewImage;
+    }
+
+    private void paintPlaceholder(Graphics2D g2d, Insets insets, int availableWidth, int availableHeight) {
+        if (placeholder == null) {
+            return;
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setFont(getFont() != null ? getFont() : UIManager.getFont("Label.font"));
+        g2d.setColor(UIManager.getColor("Label.disabledForeground"));
+        FontMetrics fm = g2d.getFontMetrics();
+        g2d.drawString(placeholder,
+            insets.left + (availableWidth - fm.stringWidth(placeholder)) / 2,
+            insets.top + (availableHeight - fm.getHeight()) / 2 + fm.getAscent());
+    }
+}
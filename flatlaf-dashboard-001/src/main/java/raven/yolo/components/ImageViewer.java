@@ -800,12 +800,8 @@ public class ImageViewer extends JPanel {
             currentYoloImage.setAnnotations(annotations);
             currentYoloImage.setLabeled(!annotations.isEmpty());
             
-            // Auto-save to file
-            try {
-                raven.yolo.manager.ProjectManager.getInstance().saveImageAnnotations(currentYoloImage);
-            } catch (Exception e) {
-                System.err.println("Error saving annotations: " + e.getMessage());
-            }
+            // Journaled in the background once the edits settle
+            raven.yolo.manager.ProjectAutosave.getInstance().annotationsChanged(currentYoloImage);
         }
     }
     
@@ -0,0 +1,364 @@
+package raven.yolo.forms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.formdev.flatlaf.FlatClientProperties;
+import net.miginfocom.swing.MigLayout;
+import raven.yolo.manager.ProjectManager;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+import raven.yolo.utils.ModelConverter;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a model over a folder or the current project's images in batches,
+ * showing results as each batch completes and writing them to a JSON lines
+ * file (one {"image", "detections", "image_shape"} object per image).
+ */
+public class BatchInferenceDialog extends JDialog {
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp", "webp", "tif", "tiff");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final String modelPath;
+    private final String projectPath;
+
+    private JRadioButton folderRadio;
+    private JRadioButton projectRadio;
+    private JTextField folderField;
+    private JButton browseFolderButton;
+    private JCheckBox recursiveCheckBox;
+    private JSpinner confidenceSpinner;
+    private JSpinner batchSizeSpinner;
+    private JTextField outputField;
+    private JButton browseOutputButton;
+    private JTable resultsTable;
+    private DefaultTableModel resultsModel;
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private JButton startButton;
+    private JButton closeButton;
+
+    private volatile boolean cancelRequested;
+    private SwingWorker<Integer, Object[]> batchWorker;
+
+    public BatchInferenceDialog(Window parent, String modelPath, String projectPath, double confidence) {
+        super(parent, "Batch Inference - " + new File(modelPath).getName(), ModalityType.MODELESS);
+        this.modelPath = modelPath;
+        this.projectPath = projectPath;
+        initComponents(confidence);
+        setupLayout();
+        setupEventHandlers();
+
+        setSize(820, 620);
+        setLocationRelativeTo(parent);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+    }
+
+    private void initComponents(double confidence) {
+        YoloProject project = ProjectManager.getInstance().getCurrentProject();
+
+        folderRadio = new JRadioButton("Folder:", true);
+        projectRadio = new JRadioButton(project != null
+            ? "Current project images (" + project.getImages().size() + ")"
+            : "Current project images");
+        projectRadio.setEnabled(project != null);
+        ButtonGroup sourceGroup = new ButtonGroup();
+        sourceGroup.add(folderRadio);
+        sourceGroup.add(projectRadio);
+
+        folderField = new JTextField();
+        folderField.putClientProperty(FlatClientProperties.PLACEHOLDER_TEXT, "Select image folder...");
+        browseFolderButton = new JButton("Browse...");
+        recursiveCheckBox = new JCheckBox("Include subfolders", true);
+
+        confidenceSpinner = new JSpinner(new SpinnerNumberModel(confidence, 0.01, 1.0, 0.05));
+        confidenceSpinner.setEditor(new JSpinner.NumberEditor(confidenceSpinner, "0.00"));
+        batchSizeSpinner = new JSpinner(new SpinnerNumberModel(8, 1, 64, 1));
+        batchSizeSpinner.setToolTipText("Images per forward pass; larger batches are faster until memory runs out");
+
+        outputField = new JTextField();
+        outputField.putClientProperty(FlatClientProperties.PLACEHOLDER_TEXT, "Results file (.jsonl)");
+        browseOutputButton = new JButton("Browse...");
+
+        resultsModel = new DefaultTableModel(new Object[]{"Image", "Detections", "Classes", "Status"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        resultsTable = new JTable(resultsModel);
+        resultsTable.getColumnModel().getColumn(0).setPreferredWidth(260);
+        resultsTable.getColumnModel().getColumn(1).setPreferredWidth(70);
+        resultsTable.getColumnModel().getColumn(2).setPreferredWidth(300);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Ready");
+
+        statusLabel = new JLabel("Ready");
+        statusLabel.putClientProperty(FlatClientProperties.STYLE, "font:-1");
+
+        startButton = new JButton("Start");
+        startButton.putClientProperty(FlatClientProperties.STYLE, "background:$Component.accentColor");
+        closeButton = new JButton("Close");
+    }
+
+    private void setupLayout() {
+        setLayout(new MigLayout("fill,insets 15", "[fill]", "[][][fill][][][]"));
+
+        JPanel sourcePanel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][fill][grow 0]", "[][][]"));
+        sourcePanel.setBorder(BorderFactory.createTitledBorder("Images"));
+        sourcePanel.add(folderRadio, "");
+        sourcePanel.add(folderField, "");
+        sourcePanel.add(browseFolderButton, "w 80!, wrap");
+        sourcePanel.add(recursiveCheckBox, "skip 1, wrap");
+        sourcePanel.add(projectRadio, "span");
+        add(sourcePanel, "wrap 10");
+
+        JPanel optionsPanel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][grow 0]20[grow 0][grow 0][fill]", "[][]"));
+        optionsPanel.setBorder(BorderFactory.createTitledBorder("Options"));
+        optionsPanel.add(new JLabel("Confidence:"), "");
+        optionsPanel.add(confidenceSpinner, "w 70!");
+        optionsPanel.add(new JLabel("Batch size:"), "");
+        optionsPanel.add(batchSizeSpinner, "w 60!, wrap 10");
+        optionsPanel.add(new JLabel("Results file:"), "");
+        optionsPanel.add(outputField, "span 3, growx");
+        optionsPanel.add(browseOutputButton, "w 80!");
+        add(optionsPanel, "wrap 10");
+
+        add(new JScrollPane(resultsTable), "wrap 10");
+        add(progressBar, "wrap 5");
+        add(statusLabel, "wrap 10");
+
+        JPanel buttonPanel = new JPanel(new MigLayout("insets 0", "push[][]", "[]"));
+        buttonPanel.add(startButton, "w 100!");
+        buttonPanel.add(closeButton, "w 100!");
+        add(buttonPanel, "");
+    }
+
+    private void setupEventHandlers() {
+        folderRadio.addActionListener(e -> updateSourceState());
+        projectRadio.addActionListener(e -> updateSourceState());
+        browseFolderButton.addActionListener(e -> browseFolder());
+        browseOutputButton.addActionListener(e -> browseOutput());
+        startButton.addActionListener(e -> startBatch());
+        closeButton.addActionListener(e -> closeOrCancel());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                closeOrCancel();
+            }
+        });
+    }
+
+    private void updateSourceState() {
+        boolean folder = folderRadio.isSelected();
+        folderField.setEnabled(folder);
+        browseFolderButton.setEnabled(folder);
+        recursiveCheckBox.setEnabled(folder);
+        if (!folder && projectPath != null && outputField.getText().trim().isEmpty()) {
+            outputField.setText(defaultOutputFile(new File(projectPath)).getAbsolutePath());
+        }
+    }
+
+    private void browseFolder() {
+        JFileChooser chooser = new JFileChooser(folderField.getText().trim());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File folder = chooser.getSelectedFile();
+            folderField.setText(folder.getAbsolutePath());
+            if (outputField.getText().trim().isEmpty()) {
+                outputField.setText(defaultOutputFile(folder).getAbsolutePath());
+            }
+        }
+    }
+
+    private void browseOutput() {
+        JFileChooser chooser = new JFileChooser();
+        String current = outputField.getText().trim();
+        if (!current.isEmpty()) {
+            chooser.setSelectedFile(new File(current));
+        }
+        if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            outputField.setText(chooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+
+    private File defaultOutputFile(File directory) {
+        String modelName = new File(modelPath).getName().replaceFirst("\\.[^.]+$", "");
+        return new File(directory, modelName + "_results.jsonl");
+    }
+
+    private void closeOrCancel() {
+        if (batchWorker != null && !batchWorker.isDone()) {
+            cancelRequested = true;
+            closeButton.setEnabled(false);
+            statusLabel.setText("Cancelling after the current batch...");
+        } else {
+            dispose();
+        }
+    }
+
+    private void startBatch() {
+        List<String> images;
+        try {
+            images = collectImages();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Cannot list images: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (images.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No images found.", "No Images", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String outputPath = outputField.getText().trim();
+        if (outputPath.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please choose a results file.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        double confidence = ((Number) confidenceSpinner.getValue()).doubleValue();
+        int batchSize = (Integer) batchSizeSpinner.getValue();
+        Path outputFile = new File(outputPath).toPath();
+
+        resultsModel.setRowCount(0);
+        cancelRequested = false;
+        startButton.setEnabled(false);
+        closeButton.setText("Cancel");
+        progressBar.setValue(0);
+        progressBar.setString("Loading model...");
+        statusLabel.setText("Running " + images.size() + " images");
+
+        long startTime = System.currentTimeMillis();
+        batchWorker = new SwingWorker<Integer, Object[]>() {
+            private volatile int completed;
+
+            @Override
+            protected Integer doInBackground() throws Exception {
+                if (outputFile.getParent() != null) {
+                    Files.createDirectories(outputFile.getParent());
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+                    return ModelConverter.runBatchInference(modelPath, images, confidence, batchSize, projectPath,
+                        (results, done, total) -> {
+                            for (JsonNode result : results) {
+                                try {
+                                    writer.write(JSON.writeValueAsString(result));
+                                    writer.newLine();
+                                } catch (IOException e) {
+                                    System.err.println("[BATCH] Cannot write result: " + e.getMessage());
+                                }
+                                publish(toRow(result));
+                            }
+                            completed = done;
+                            setProgress(Math.min(100, done * 100 / Math.max(1, total)));
+                        },
+                        () -> cancelRequested);
+                }
+            }
+
+            @Override
+            protected void process(List<Object[]> rows) {
+                for (Object[] row : rows) {
+                    resultsModel.addRow(row);
+                }
+                double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+                double rate = seconds > 0 ? completed / seconds : 0;
+                progressBar.setString(completed + " / " + images.size());
+                statusLabel.setText(String.format(Locale.ROOT, "%d of %d images, %.1f images/s", completed, images.size(), rate));
+            }
+
+            @Override
+            protected void done() {
+                startButton.setEnabled(true);
+                closeButton.setEnabled(true);
+                closeButton.setText("Close");
+                try {
+                    int processed = get();
+                    double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+                    progressBar.setValue(processed == images.size() ? 100 : progressBar.getValue());
+                    progressBar.setString(processed + " / " + images.size());
+                    statusLabel.setText(String.format(Locale.ROOT, "%s %d images in %.1fs (%.1f images/s), results in %s",
+                        cancelRequested ? "Cancelled after" : "Finished", processed, seconds,
+                        seconds > 0 ? processed / seconds : 0, outputFile.getFileName()));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    progressBar.setString("Failed");
+                    statusLabel.setText("Batch inference failed: " + cause.getMessage());
+                    JOptionPane.showMessageDialog(BatchInferenceDialog.this,
+                        "Batch inference failed: " + cause.getMessage(), "Inference Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        batchWorker.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                progressBar.setValue((Integer) evt.getNewValue());
+            }
+        });
+        batchWorker.execute();
+    }
+
+    private List<String> collectImages() throws IOException {
+        List<String> images = new ArrayList<>();
+        if (projectRadio.isSelected()) {
+            YoloProject project = ProjectManager.getInstance().getCurrentProject();
+            if (project != null) {
+                for (YoloImage image : project.getImages()) {
+                    if (image.getPath() != null && new File(image.getPath()).isFile()) {
+                        images.add(image.getPath());
+                    }
+                }
+            }
+            return images;
+        }
+
+        String folder = folderField.getText().trim();
+        if (folder.isEmpty() || !new File(folder).isDirectory()) {
+            return images;
+        }
+        int depth = recursiveCheckBox.isSelected() ? Integer.MAX_VALUE : 1;
+        try (Stream<Path> paths = Files.walk(new File(folder).toPath(), depth)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(path -> IMAGE_EXTENSIONS.contains(extensionOf(path.getFileName().toString())))
+                .map(path -> path.toAbsolutePath().toString())
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static Object[] toRow(JsonNode result) {
+        JsonNode detections = result.path("detections");
+        Map<String, Integer> perClass = new TreeMap<>();
+        for (JsonNode detection : detections) {
+            perClass.merge(detection.path("class_name").asText("class_" + detection.path("class_id").asInt()), 1, Integer::sum);
+        }
+        String classes = perClass.entrySet().stream()
+            .map(entry -> entry.getKey() + " x" + entry.getValue())
+            .collect(Collectors.joining(", "));
+        String status = result.hasNonNull("error") ? "Error: " + result.get("error").asText() : "OK";
+        return new Object[]{new File(result.path("image").asText()).getName(), detections.size(), classes, status};
+    }
+}
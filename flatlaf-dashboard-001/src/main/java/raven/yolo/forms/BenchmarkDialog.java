@@ -0,0 +1,385 @@
+package raven.yolo.forms;
+
+import com.formdev.flatlaf.FlatClientProperties;
+import net.miginfocom.swing.MigLayout;
+import raven.yolo.inference.ModelBenchmark;
+import raven.yolo.manager.ProjectManager;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+import raven.yolo.utils.ModelConverter;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the selected model and its exported formats on a sample of
+ * images and shows the results side by side. Results are saved next to each
+ * model, so earlier runs are shown when the dialog opens.
+ */
+public class BenchmarkDialog extends JDialog {
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp", "webp", "tif", "tiff");
+
+    private final String projectPath;
+    private final Runnable onResultsSaved;
+    private final Map<String, JCheckBox> modelCheckBoxes = new LinkedHashMap<>();
+
+    private JRadioButton folderRadio;
+    private JRadioButton projectRadio;
+    private JTextField folderField;
+    private JButton browseFolderButton;
+    private JSpinner sampleSizeSpinner;
+    private JTextField batchSizesField;
+    private JSpinner warmupSpinner;
+    private JSpinner iterationsSpinner;
+    private JTable resultsTable;
+    private DefaultTableModel resultsModel;
+    private JLabel statusLabel;
+    private JButton startButton;
+    private JButton closeButton;
+
+    private volatile boolean cancelRequested;
+    private SwingWorker<Integer, Object> benchmarkWorker;
+
+    public BenchmarkDialog(Window parent, String modelPath, String projectPath, Runnable onResultsSaved) {
+        super(parent, "Benchmark - " + new File(modelPath).getName(), ModalityType.MODELESS);
+        this.projectPath = projectPath;
+        this.onResultsSaved = onResultsSaved;
+        initComponents(modelPath);
+        setupLayout();
+        setupEventHandlers();
+        updateSourceState();
+
+        for (String path : modelCheckBoxes.keySet()) {
+            ModelBenchmark.Result stored = ModelBenchmark.load(path);
+            if (stored != null) {
+                showResult(stored);
+            }
+        }
+
+        setSize(900, 640);
+        setLocationRelativeTo(parent);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+    }
+
+    private void initComponents(String modelPath) {
+        // Exports of a model land next to it, so its siblings are the formats to compare
+        File[] siblings = new File(modelPath).getAbsoluteFile().getParentFile().listFiles(file ->
+            file.isFile() && ModelConverter.isInferenceSupported(file.getAbsolutePath()));
+        if (siblings != null) {
+            Arrays.sort(siblings);
+            for (File sibling : siblings) {
+                JCheckBox checkBox = new JCheckBox(sibling.getName(), sibling.getAbsoluteFile().equals(new File(modelPath).getAbsoluteFile()));
+                modelCheckBoxes.put(sibling.getAbsolutePath(), checkBox);
+            }
+        }
+        if (modelCheckBoxes.isEmpty()) {
+            modelCheckBoxes.put(new File(modelPath).getAbsolutePath(), new JCheckBox(new File(modelPath).getName(), true));
+        }
+
+        YoloProject project = ProjectManager.getInstance().getCurrentProject();
+        folderRadio = new JRadioButton("Folder:", project == null);
+        projectRadio = new JRadioButton("Current project images", project != null);
+        projectRadio.setEnabled(project != null);
+        ButtonGroup sourceGroup = new ButtonGroup();
+        sourceGroup.add(folderRadio);
+        sourceGroup.add(projectRadio);
+
+        folderField = new JTextField();
+        folderField.putClientProperty(FlatClientProperties.PLACEHOLDER_TEXT, "Select image folder...");
+        browseFolderButton = new JButton("Browse...");
+        sampleSizeSpinner = new JSpinner(new SpinnerNumberModel(16, 1, 1000, 1));
+        sampleSizeSpinner.setToolTipText("Images are cycled to fill batches larger than the sample");
+
+        batchSizesField = new JTextField("1,4,8");
+        batchSizesField.setToolTipText("Comma-separated batch sizes to measure throughput at");
+        warmupSpinner = new JSpinner(new SpinnerNumberModel(3, 0, 50, 1));
+        iterationsSpinner = new JSpinner(new SpinnerNumberModel(20, 1, 1000, 5));
+
+        resultsModel = new DefaultTableModel(new Object[]{
+            "Model", "Batch", "Load (ms)", "First call (ms)", "p50 (ms)", "p95 (ms)", "p99 (ms)", "Images/s", "Peak RSS (MB)"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        resultsTable = new JTable(resultsModel);
+        resultsTable.getColumnModel().getColumn(0).setPreferredWidth(180);
+
+        statusLabel = new JLabel("Each model is loaded in a fresh worker; images are decoded before timing");
+        statusLabel.putClientProperty(FlatClientProperties.STYLE, "font:-1");
+
+        startButton = new JButton("Run");
+        startButton.putClientProperty(FlatClientProperties.STYLE, "background:$Component.accentColor");
+        closeButton = new JButton("Close");
+    }
+
+    private void setupLayout() {
+        setLayout(new MigLayout("fill,insets 15", "[fill]", "[][][][fill][][]"));
+
+        JPanel modelsPanel = new JPanel(new MigLayout("insets 10,wrap 4", "[][][][]", ""));
+        modelsPanel.setBorder(BorderFactory.createTitledBorder("Models"));
+        for (JCheckBox checkBox : modelCheckBoxes.values()) {
+            modelsPanel.add(checkBox, "");
+        }
+        add(modelsPanel, "wrap 10");
+
+        JPanel sourcePanel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][fill][grow 0]", "[][]"));
+        sourcePanel.setBorder(BorderFactory.createTitledBorder("Sample Images"));
+        sourcePanel.add(folderRadio, "");
+        sourcePanel.add(folderField, "");
+        sourcePanel.add(browseFolderButton, "w 80!, wrap");
+        sourcePanel.add(projectRadio, "");
+        sourcePanel.add(new JLabel("Sample size:"), "split 2, growx 0");
+        sourcePanel.add(sampleSizeSpinner, "w 70!");
+        add(sourcePanel, "wrap 10");
+
+        JPanel optionsPanel = new JPanel(new MigLayout("insets 10", "[][]20[][]20[][]", "[]"));
+        optionsPanel.setBorder(BorderFactory.createTitledBorder("Options"));
+        optionsPanel.add(new JLabel("Batch sizes:"), "");
+        optionsPanel.add(batchSizesField, "w 100!");
+        optionsPanel.add(new JLabel("Warm-up runs:"), "");
+        optionsPanel.add(warmupSpinner, "w 60!");
+        optionsPanel.add(new JLabel("Timed runs:"), "");
+        optionsPanel.add(iterationsSpinner, "w 70!");
+        add(optionsPanel, "wrap 10");
+
+        add(new JScrollPane(resultsTable), "wrap 5");
+        add(statusLabel, "wrap 10");
+
+        JPanel buttonPanel = new JPanel(new MigLayout("insets 0", "push[][]", "[]"));
+        buttonPanel.add(startButton, "w 100!");
+        buttonPanel.add(closeButton, "w 100!");
+        add(buttonPanel, "");
+    }
+
+    private void setupEventHandlers() {
+        folderRadio.addActionListener(e -> updateSourceState());
+        projectRadio.addActionListener(e -> updateSourceState());
+        browseFolderButton.addActionListener(e -> browseFolder());
+        startButton.addActionListener(e -> startBenchmark());
+        closeButton.addActionListener(e -> closeOrCancel());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                closeOrCancel();
+            }
+        });
+    }
+
+    private void updateSourceState() {
+        boolean folder = folderRadio.isSelected();
+        folderField.setEnabled(folder);
+        browseFolderButton.setEnabled(folder);
+    }
+
+    private void browseFolder() {
+        JFileChooser chooser = new JFileChooser(folderField.getText().trim());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            folderField.setText(chooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+
+    private void closeOrCancel() {
+        if (benchmarkWorker != null && !benchmarkWorker.isDone()) {
+            cancelRequested = true;
+            closeButton.setEnabled(false);
+            statusLabel.setText("Cancelling after the current run...");
+        } else {
+            dispose();
+        }
+    }
+
+    private void startBenchmark() {
+        List<String> models = modelCheckBoxes.entrySet().stream()
+            .filter(entry -> entry.getValue().isSelected())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        if (models.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Select at least one model.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        List<Integer> batchSizes;
+        try {
+            batchSizes = parseBatchSizes(batchSizesField.getText());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Batch sizes must be positive whole numbers, e.g. 1,4,8.",
+                "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        List<String> images;
+        try {
+            images = sampleImages((Integer) sampleSizeSpinner.getValue());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Cannot list images: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (images.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No sample images found.", "No Images", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        int warmup = (Integer) warmupSpinner.getValue();
+        int iterations = (Integer) iterationsSpinner.getValue();
+
+        cancelRequested = false;
+        startButton.setEnabled(false);
+        closeButton.setText("Cancel");
+
+        benchmarkWorker = new SwingWorker<Integer, Object>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                int finished = 0;
+                for (int i = 0; i < models.size() && !cancelRequested; i++) {
+                    String modelPath = models.get(i);
+                    String name = new File(modelPath).getName();
+                    publish("Loading " + name + " (" + (i + 1) + " of " + models.size() + ")...");
+                    ModelBenchmark.Result result = ModelBenchmark.run(modelPath, images, batchSizes, warmup, iterations,
+                        projectPath,
+                        stats -> publish(String.format(Locale.ROOT, "%s: batch %d at %.1f images/s",
+                            name, stats.getBatchSize(), stats.getImagesPerSecond())),
+                        () -> cancelRequested);
+                    if (result != null) {
+                        publish(result);
+                        finished++;
+                    }
+                }
+                return finished;
+            }
+
+            @Override
+            protected void process(List<Object> chunks) {
+                for (Object chunk : chunks) {
+                    if (chunk instanceof ModelBenchmark.Result) {
+                        showResult((ModelBenchmark.Result) chunk);
+                    } else {
+                        statusLabel.setText(chunk.toString());
+                    }
+                }
+            }
+
+            @Override
+            protected void done() {
+                startButton.setEnabled(true);
+                closeButton.setEnabled(true);
+                closeButton.setText("Close");
+                try {
+                    int finished = get();
+                    statusLabel.setText((cancelRequested ? "Cancelled; " : "Done; ")
+                        + finished + " model(s) benchmarked on " + images.size() + " sample image(s)");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Benchmark failed: " + cause.getMessage());
+                    JOptionPane.showMessageDialog(BenchmarkDialog.this,
+                        "Benchmark failed: " + cause.getMessage(), "Benchmark Error", JOptionPane.ERROR_MESSAGE);
+                }
+                if (onResultsSaved != null) {
+                    onResultsSaved.run();
+                }
+            }
+        };
+        benchmarkWorker.execute();
+    }
+
+    /**
+     * Replace the rows of the result's model with one row per batch size
+     */
+    private void showResult(ModelBenchmark.Result result) {
+        for (int i = resultsModel.getRowCount() - 1; i >= 0; i--) {
+            if (result.getModelName().equals(resultsModel.getValueAt(i, 0))) {
+                resultsModel.removeRow(i);
+            }
+        }
+        String peakRss = result.getPeakRssMb() != null ? format(result.getPeakRssMb()) : "n/a";
+        for (ModelBenchmark.BatchStats stats : result.getBatches()) {
+            resultsModel.addRow(new Object[]{
+                result.getModelName(),
+                stats.getBatchSize(),
+                format(result.getLoadMs()),
+                format(stats.getFirstCallMs()),
+                format(stats.getP50Ms()),
+                format(stats.getP95Ms()),
+                format(stats.getP99Ms()),
+                format(stats.getImagesPerSecond()),
+                peakRss
+            });
+        }
+    }
+
+    private List<String> sampleImages(int sampleSize) throws IOException {
+        if (projectRadio.isSelected()) {
+            List<String> images = new ArrayList<>();
+            YoloProject project = ProjectManager.getInstance().getCurrentProject();
+            if (project != null) {
+                for (YoloImage image : project.getImages()) {
+                    if (images.size() == sampleSize) {
+                        break;
+                    }
+                    if (image.getPath() != null && new File(image.getPath()).isFile()) {
+                        images.add(image.getPath());
+                    }
+                }
+            }
+            return images;
+        }
+
+        String folder = folderField.getText().trim();
+        if (folder.isEmpty() || !new File(folder).isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.list(new File(folder).toPath())) {
+            return paths.filter(Files::isRegularFile)
+                .filter(path -> IMAGE_EXTENSIONS.contains(extensionOf(path.getFileName().toString())))
+                .map(path -> path.toAbsolutePath().toString())
+                .sorted()
+                .limit(sampleSize)
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Integer> parseBatchSizes(String text) {
+        List<Integer> sizes = new ArrayList<>();
+        for (String part : text.split("[,\\s]+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            int size = Integer.parseInt(part);
+            if (size < 1) {
+                throw new NumberFormatException(part);
+            }
+            if (!sizes.contains(size)) {
+                sizes.add(size);
+            }
+        }
+        if (sizes.isEmpty()) {
+            throw new NumberFormatException(text);
+        }
+        return sizes;
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
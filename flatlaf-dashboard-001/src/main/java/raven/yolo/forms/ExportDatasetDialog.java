@@ -3,7 +3,11 @@ package raven.yolo.forms;
 import com.formdev.flatlaf.FlatClientProperties;
 import net.miginfocom.swing.MigLayout;
 import raven.yolo.manager.ProjectManager;
+import raven.yolo.manager.WorkspaceManager;
 import raven.yolo.model.YoloProject;
+import raven.yolo.utils.DatasetCache;
+import raven.yolo.utils.DatasetSplitter;
+import raven.yolo.utils.FileMaterializer;
 
 import javax.swing.*;
 import java.awt.*;
@@ -19,8 +23,9 @@ public class ExportDatasetDialog extends JDialog {
     private JSpinner valSplitSpinner;
     private JCheckBox includeTestSplitCheckBox;
     private JSpinner testSplitSpinner;
+    private JCheckBox stratifyCheckBox;
     private JCheckBox createDataYamlCheckBox;
-    private JCheckBox copyImagesCheckBox;
+    private JComboBox<FileMaterializer.Strategy> materializationComboBox;
     private JButton exportButton;
     private JButton cancelButton;
     private JProgressBar progressBar;
@@ -56,10 +61,14 @@ public class ExportDatasetDialog extends JDialog {
         includeTestSplitCheckBox = new JCheckBox("Include Test Split");
         testSplitSpinner = new JSpinner(new SpinnerNumberModel(10, 5, 50, 5));
         testSplitSpinner.setEnabled(false);
+        stratifyCheckBox = new JCheckBox("Stratify by class");
+        stratifyCheckBox.setToolTipText("Keep each class's share roughly equal across splits");
         
         // Export options
         createDataYamlCheckBox = new JCheckBox("Create data.yaml file", true);
-        copyImagesCheckBox = new JCheckBox("Copy images to export directory", true);
+        materializationComboBox = new JComboBox<>(FileMaterializer.Strategy.values());
+        materializationComboBox.setSelectedItem(WorkspaceManager.getInstance().getMaterializationStrategy());
+        materializationComboBox.putClientProperty(FlatClientProperties.STYLE, "arc:5");
         
         // Control buttons
         exportButton = new JButton("Export Dataset");
@@ -121,7 +130,7 @@ public class ExportDatasetDialog extends JDialog {
     }
     
     private JPanel createDataSplitPanel() {
-        JPanel panel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][grow 0][grow 0][grow 0][fill]", "[][]"));
+        JPanel panel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][grow 0][grow 0][grow 0][fill]", "[][][]"));
         panel.setBorder(BorderFactory.createTitledBorder("Data Split Configuration"));
         
         panel.add(new JLabel("Train:"), "");
@@ -134,17 +143,19 @@ public class ExportDatasetDialog extends JDialog {
         panel.add(includeTestSplitCheckBox, "span 2");
         panel.add(new JLabel("Test:"), "");
         panel.add(testSplitSpinner, "w 60!");
-        panel.add(new JLabel("%"), "");
+        panel.add(new JLabel("%"), "wrap 10");
+        panel.add(stratifyCheckBox, "span");
         
         return panel;
     }
     
     private JPanel createOptionsPanel() {
-        JPanel panel = new JPanel(new MigLayout("fill,insets 10", "[fill]", "[][]"));
+        JPanel panel = new JPanel(new MigLayout("fill,insets 10", "[fill]", "[][][]"));
         panel.setBorder(BorderFactory.createTitledBorder("Export Options"));
         
         panel.add(createDataYamlCheckBox, "wrap 5");
-        panel.add(copyImagesCheckBox, "");
+        panel.add(new JLabel("Place images by:"), "split 2, growx 0");
+        panel.add(materializationComboBox, "growx 0");
         
         return panel;
     }
@@ -219,22 +230,28 @@ public class ExportDatasetDialog extends JDialog {
             return;
         }
         
+        FileMaterializer.Strategy strategy = (FileMaterializer.Strategy) materializationComboBox.getSelectedItem();
+        WorkspaceManager.getInstance().setMaterializationStrategy(strategy);
+        
         exportInProgress = true;
         exportButton.setEnabled(false);
         cancelButton.setText("Cancel");
         
         // Create export worker
         SwingWorker<Void, String> exportWorker = new SwingWorker<Void, String>() {
+            private DatasetCache.SyncReport report;
+            
             @Override
             protected Void doInBackground() throws Exception {
                 try {
                     publish("Preparing export...");
-                    Thread.sleep(500); // Simulate preparation
                     
                     // Get split ratios
                     double trainRatio = (Integer) trainSplitSpinner.getValue() / 100.0;
                     double valRatio = (Integer) valSplitSpinner.getValue() / 100.0;
                     double testRatio = includeTestSplitCheckBox.isSelected() ? (Integer) testSplitSpinner.getValue() / 100.0 : 0.0;
+                    DatasetSplitter splitter = new DatasetSplitter(trainRatio, valRatio, testRatio)
+                        .setStratify(stratifyCheckBox.isSelected());
                     
                     publish("Creating directory structure...");
                     setProgress(10);
@@ -243,13 +260,13 @@ public class ExportDatasetDialog extends JDialog {
                     File exportDir = new File(exportPath);
                     exportDir.mkdirs();
                     
-                    publish("Exporting annotations...");
-                    setProgress(50);
+                    publish("Exporting images and labels...");
                     
-                    // Use ProjectManager to export
-                    ProjectManager.getInstance().exportDataset(exportPath);
+                    // Use ProjectManager to export; unchanged images from a previous export are kept
+                    report = ProjectManager.getInstance().exportDataset(exportPath, strategy, splitter,
+                        (completed, total) -> setProgress(10 + completed * 89 / total));
                     
-                    publish("Export completed successfully!");
+                    publish("Export completed: " + report);
                     setProgress(100);
                     
                 } catch (IOException e) {
@@ -276,7 +293,8 @@ public class ExportDatasetDialog extends JDialog {
                     statusLabel.setText("Dataset exported successfully!");
                     
                     JOptionPane.showMessageDialog(ExportDatasetDialog.this, 
-                        "Dataset exported successfully to:\n" + exportPath, 
+                        "Dataset exported successfully to:\n" + exportPath + "\n\n"
+                            + report.getSplitReport().format(project.getClasses()), 
                         "Export Complete", JOptionPane.INFORMATION_MESSAGE);
                     
                 } catch (Exception e) {
@@ -6,14 +6,14 @@ import raven.yolo.manager.ProjectManager;
 import raven.yolo.manager.WorkspaceManager;
 import raven.yolo.model.YoloProject;
 import raven.yolo.model.YoloImage;
-import raven.yolo.model.YoloAnnotation;
+import raven.yolo.utils.DatasetImportPipeline;
+import raven.yolo.utils.FileMaterializer;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.List;
 
@@ -37,6 +37,8 @@ public class ImportDatasetDialog extends JDialog {
     private JButton browseButton;
     private JButton importButton;
     private JButton cancelButton;
+    private JSpinner parallelismSpinner;
+    private JComboBox<FileMaterializer.Strategy> materializationComboBox;
     
     private File selectedDatasetPath;
     private Map<String, String> detectedClasses;
@@ -83,6 +85,12 @@ public class ImportDatasetDialog extends JDialog {
         cancelButton = new JButton("Cancel");
         cancelButton.putClientProperty(FlatClientProperties.STYLE, "arc:5");
         
+        int maxParallelism = Math.max(DatasetImportPipeline.defaultParallelism(), Runtime.getRuntime().availableProcessors() * 2);
+        parallelismSpinner = new JSpinner(new SpinnerNumberModel(DatasetImportPipeline.defaultParallelism(), 1, maxParallelism, 1));
+        
+        materializationComboBox = new JComboBox<>(FileMaterializer.Strategy.values());
+        materializationComboBox.setSelectedItem(WorkspaceManager.getInstance().getMaterializationStrategy());
+        
         detectedClasses = new HashMap<>();
     }
     
@@ -104,6 +112,10 @@ public class ImportDatasetDialog extends JDialog {
         projectPanel.add(projectNameField, "wrap");
         projectPanel.add(new JLabel("Description:"), "wrap");
         projectPanel.add(new JScrollPane(projectDescriptionArea), "wrap");
+        projectPanel.add(new JLabel("Parallel workers:"), "split 2, growx 0");
+        projectPanel.add(parallelismSpinner, "growx 0, wrap");
+        projectPanel.add(new JLabel("Place images by:"), "split 2, growx 0");
+        projectPanel.add(materializationComboBox, "growx 0, wrap");
         
         add(projectPanel, "wrap, gapbottom 10");
         
@@ -583,135 +595,43 @@ public class ImportDatasetDialog extends JDialog {
             imageDirs.add(datasetRoot);
         }
         
-        logProgress("Total directories to process: " + imageDirs.size());// Process each directory
-        for (File imageDir : imageDirs) {            progress.publishProgress("Processing directory: " + imageDir.getName());
-            logProgress("Processing directory: " + imageDir.getName());
-            importFromDirectory(project, imageDir, datasetRoot, progress);
-        }
-    }
-      private void importFromDirectory(YoloProject project, File imageDir, File datasetRoot, ProgressCallback progress) throws IOException {
-        logProgress("importFromDirectory() started for: " + imageDir.getAbsolutePath());
-        
-        // Find corresponding labels directory
-        File labelsDir = new File(imageDir.getParent(), "labels");
-        if (!labelsDir.exists()) {
-            labelsDir = imageDir; // Same directory
-            logProgress("Labels directory same as images: " + labelsDir.getAbsolutePath());
-        } else {
-            logProgress("Labels directory: " + labelsDir.getAbsolutePath());
-        }
-          // Get all image files
-        logProgress("Scanning for image files in: " + imageDir.getAbsolutePath());
-        File[] imageFiles = imageDir.listFiles((d, name) -> {
-            String lower = name.toLowerCase();
-            return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || 
-                   lower.endsWith(".png") || lower.endsWith(".bmp");
-        });
-          if (imageFiles == null) {
-            logProgress("No files found in directory (null result)");
-            return;
-        }
-        
-        logProgress("Scan completed. Found " + imageFiles.length + " image files");
-        progress.publishProgress("Found " + imageFiles.length + " images in " + imageDir.getName());
-        logProgress("Found " + imageFiles.length + " images in " + imageDir.getName());
-          String projectImagesPath = project.getProjectPath() + File.separator + "images";
-        File projectImagesDir = new File(projectImagesPath);
-        projectImagesDir.mkdirs();
-        logProgress("Project images directory: " + projectImagesPath);
-        
-        logProgress("Starting to process " + imageFiles.length + " files...");
-          int processed = 0;
-        for (File imageFile : imageFiles) {
-            processed++;
-            
-            if (processed == 1) {
-                logProgress("Processing first file: " + imageFile.getName());
-            }// Only update progress every 20 files or at the end to reduce overhead
-            if (processed % 20 == 0 || processed == imageFiles.length) {
-                String progressMsg = "Processing image " + processed + "/" + imageFiles.length + " in " + imageDir.getName();
-                progress.publishProgress(progressMsg);
-                logProgress(progressMsg);
-            }
-            
-            // Generate UUID for filename to avoid special characters
-            String uuid = UUID.randomUUID().toString();
-            String extension = getFileExtension(imageFile.getName());
-            String newImageName = uuid + "." + extension;            // Copy image to project
-            File targetImageFile = new File(projectImagesDir, newImageName);
-            Files.copy(imageFile.toPath(), targetImageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            
-            // Use default dimensions for faster import - can be updated later if needed
-            int imageWidth = 640;  // Default width
-            int imageHeight = 480; // Default height
-            
-            // Skip reading actual image dimensions for faster import
-            // TODO: Add option to read actual dimensions in background thread later
-            
-            // Create YoloImage
-            YoloImage yoloImage = new YoloImage(newImageName, targetImageFile.getAbsolutePath(), imageWidth, imageHeight);
-            
-            // Look for corresponding label file
-            String baseName = getFileNameWithoutExtension(imageFile.getName());
-            File labelFile = new File(labelsDir, baseName + ".txt");
-              if (labelFile.exists()) {
-                // Parse annotations - optimized for speed
-                try {
-                    List<String> lines = Files.readAllLines(labelFile.toPath());
-                    for (String line : lines) {
-                        line = line.trim();
-                        if (line.isEmpty()) continue;
-                        
-                        String[] parts = line.split("\\s+");
-                        if (parts.length >= 5) {
-                            try {
-                                int classId = Integer.parseInt(parts[0]);
-                                double x = Double.parseDouble(parts[1]);
-                                double y = Double.parseDouble(parts[2]);
-                                double width = Double.parseDouble(parts[3]);
-                                double height = Double.parseDouble(parts[4]);
-                                
-                                // Get class name
-                                String className = detectedClasses.get(String.valueOf(classId));
-                                if (className == null) {
-                                    className = "class_" + classId;
-                                }
-                                
-                                // Create annotation
-                                YoloAnnotation annotation = new YoloAnnotation(classId, className, x, y, width, height);
-                                yoloImage.addAnnotation(annotation);
-                                
-                            } catch (NumberFormatException e) {
-                                // Skip invalid lines silently for faster processing
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    // Skip files that can't be read
-                    System.err.println("Failed to read annotation file: " + labelFile.getName());
-                }
-            }
-            
-            // Add image to project
-            project.addImage(yoloImage);
+        logProgress("Total directories to process: " + imageDirs.size());
+        
+        progress.publishProgress("Scanning " + imageDirs.size() + " director" + (imageDirs.size() == 1 ? "y" : "ies") + "...");
+        List<DatasetImportPipeline.SourceImage> sources = DatasetImportPipeline.scan(imageDirs);
+        logProgress("Scan completed. Found " + sources.size() + " image files");
+        progress.publishProgress("Found " + sources.size() + " images");
+        
+        int parallelism = (Integer) parallelismSpinner.getValue();
+        logProgress("Importing with " + parallelism + " parallel workers");
+        DatasetImportPipeline pipeline = new DatasetImportPipeline(parallelism);
+        FileMaterializer.Strategy strategy = (FileMaterializer.Strategy) materializationComboBox.getSelectedItem();
+        WorkspaceManager.getInstance().setMaterializationStrategy(strategy);
+        pipeline.setMaterializer(new FileMaterializer(strategy));
+        pipeline.setProgressListener((completed, total, imagesPerSecond, etaMillis) ->
+            progress.publishProgress(String.format("Imported %d/%d images (%.0f img/s, ETA %s)",
+                completed, total, imagesPerSecond, formatEta(etaMillis))));
+        
+        try {
+            pipeline.run(project, sources, detectedClasses);
+            logProgress("Images: " + pipeline.getMaterializer().getSummary());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted", e);
         }
     }
     
-    private String getFileExtension(String fileName) {
-        int dotIndex = fileName.lastIndexOf('.');
-        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
-            return fileName.substring(dotIndex + 1);
+    private static String formatEta(long etaMillis) {
+        if (etaMillis < 0) {
+            return "--";
         }
-        return "";
-    }
-    
-    private String getFileNameWithoutExtension(String fileName) {
-        int dotIndex = fileName.lastIndexOf('.');
-        if (dotIndex > 0) {
-            return fileName.substring(0, dotIndex);
+        long seconds = etaMillis / 1000;
+        if (seconds >= 3600) {
+            return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
         }
-        return fileName;
+        return String.format("%dm %02ds", seconds / 60, seconds % 60);
     }
+    
       // Simple progress dialog with throttled updates
     private static class JProgressDialog extends JDialog {
         private JLabel statusLabel;
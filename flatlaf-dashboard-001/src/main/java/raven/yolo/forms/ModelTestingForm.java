@@ -1,43 +1,74 @@
 package raven.yolo.forms;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.formdev.flatlaf.FlatClientProperties;
 import net.miginfocom.swing.MigLayout;
+import raven.yolo.components.DetectionView;
 import raven.yolo.utils.ModelConverter;
-import raven.yolo.utils.DetectionParserNew;
+import raven.yolo.utils.DetectionFilter;
+import raven.yolo.utils.DetectionPostProcessor;
+import raven.yolo.utils.DetectionStreamParser;
 import raven.yolo.utils.ImageRenderer;
+import raven.yolo.utils.TiledInference;
 import raven.yolo.model.DetectionResult;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import javax.imageio.ImageIO;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Form for testing trained models with uploaded images
  */
 public class ModelTestingForm extends JPanel {
     
+    /** Inference runs once at this floor; the sliders re-filter the cached result */
+    private static final double FLOOR_CONFIDENCE = 0.05;
+    private static final double RAW_IOU = 0.95;
+    private static final int RAW_MAX_DETECTIONS = 1000;
+    private static final int MAX_CACHED_INFERENCES = 16;
+    /** Longer side, in pixels, that uploaded images are decoded down to for display */
+    private static final int MAX_DISPLAY_SIZE = 2048;
+    
     private JComboBox<ModelInfo> modelComboBox;    private JButton refreshModelsButton;
     private JButton uploadImageButton;
     private JButton runInferenceButton;
     private JButton toggleDetectionsButton;
-    private JLabel imageLabel;
+    private JButton batchInferenceButton;
+    private DetectionView imageView;
     private JTextArea resultsArea;
     private JProgressBar progressBar;
     private JLabel statusLabel;
     private JSlider confidenceSlider;
-    private JLabel confidenceLabel;      private BufferedImage currentImage;
-    private BufferedImage originalImage; // Store original image without detections
+    private JLabel confidenceLabel;
+    private JSlider iouSlider;
+    private JLabel iouLabel;
+    private JComboBox<DetectionPostProcessor.Method> nmsMethodComboBox;
+    private JCheckBox classAgnosticCheckBox;
+    private JCheckBox tiledCheckBox;
+    private JSpinner tileSizeSpinner;
+    private JSpinner tileOverlapSpinner;
+    private JPanel classFilterPanel;
     private String currentImagePath;
     private List<ModelInfo> availableModels;
     private String preselectedModelPath;
     private String projectPath;
     private List<DetectionResult> lastDetections; // Store last detection results
+    private final DetectionFilter detectionFilter = new DetectionFilter();
+    private CachedInference currentInference;
+    private final Map<String, CachedInference> inferenceCache =
+        new LinkedHashMap<String, CachedInference>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInference> eldest) {
+                return size() > MAX_CACHED_INFERENCES;
+            }
+        };
       public ModelTestingForm() {
         // Auto-detect project path from current project
         String autoProjectPath = null;
@@ -87,13 +118,12 @@ public class ModelTestingForm extends JPanel {
         toggleDetectionsButton.putClientProperty(FlatClientProperties.STYLE, "background:$Component.borderColor");
         toggleDetectionsButton.setEnabled(false);
         
+        batchInferenceButton = new JButton("Batch...");
+        batchInferenceButton.setToolTipText("Run the selected model over a folder or the current project");
+        batchInferenceButton.setEnabled(false);
+        
         // Image display
-        imageLabel = new JLabel();
-        imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        imageLabel.setVerticalAlignment(SwingConstants.CENTER);
-        imageLabel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
-        imageLabel.setPreferredSize(new Dimension(400, 300));
-        imageLabel.setText("No image selected");
+        imageView = new DetectionView();
           // Results
         resultsArea = new JTextArea(10, 30);
         resultsArea.setEditable(false);
@@ -109,6 +139,25 @@ public class ModelTestingForm extends JPanel {
         confidenceSlider = new JSlider(0, 100, 50);
         confidenceLabel = new JLabel("Confidence: 0.50");
         
+        // NMS overlap threshold, applied in Java
+        iouSlider = new JSlider(5, 100, 70);
+        iouLabel = new JLabel("NMS IoU: 0.70");
+        nmsMethodComboBox = new JComboBox<>(DetectionPostProcessor.Method.values());
+        classAgnosticCheckBox = new JCheckBox("Suppress across classes");
+        
+        // Sliced inference for images much larger than the model input
+        tiledCheckBox = new JCheckBox("Tiled");
+        tiledCheckBox.setToolTipText("Run overlapping tiles plus the full image and merge detections across tile seams");
+        tileSizeSpinner = new JSpinner(new SpinnerNumberModel(TiledInference.DEFAULT_TILE_SIZE, 128, 4096, 64));
+        tileOverlapSpinner = new JSpinner(new SpinnerNumberModel(TiledInference.DEFAULT_OVERLAP, 0.0, 0.5, 0.05));
+        tileOverlapSpinner.setEditor(new JSpinner.NumberEditor(tileOverlapSpinner, "0.00"));
+        tileSizeSpinner.setEnabled(false);
+        tileOverlapSpinner.setEnabled(false);
+        
+        // One checkbox per detected class
+        classFilterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        classFilterPanel.setOpaque(false);
+        
         availableModels = new ArrayList<>();
         
         // Set background
@@ -134,20 +183,34 @@ public class ModelTestingForm extends JPanel {
         // Confidence threshold
         modelPanel.add(confidenceLabel, "span 2");
         modelPanel.add(confidenceSlider, "wrap");
+        modelPanel.add(iouLabel, "span 2");
+        modelPanel.add(iouSlider, "wrap");
+        modelPanel.add(new JLabel("NMS:"), "");
+        modelPanel.add(nmsMethodComboBox, "split 2, growx 0");
+        modelPanel.add(classAgnosticCheckBox, "wrap");
+        modelPanel.add(new JLabel("Tiling:"), "");
+        modelPanel.add(tiledCheckBox, "split 5, growx 0");
+        modelPanel.add(new JLabel("Tile size:"), "gapleft 10");
+        modelPanel.add(tileSizeSpinner, "w 80!");
+        modelPanel.add(new JLabel("Overlap:"), "gapleft 10");
+        modelPanel.add(tileOverlapSpinner, "w 70!, wrap");
+        modelPanel.add(new JLabel("Classes:"), "");
+        modelPanel.add(classFilterPanel, "span 2, growx");
         
         add(modelPanel, "wrap 10");
           // Image and controls panel
         JPanel imagePanel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][fill]", "[][fill]"));
         imagePanel.setBorder(BorderFactory.createTitledBorder("Image Testing"));
-          JPanel controlPanel = new JPanel(new MigLayout("fill,insets 0", "[]20[]20[]", "[]"));
+          JPanel controlPanel = new JPanel(new MigLayout("fill,insets 0", "[]20[]20[]20[]", "[]"));
         controlPanel.add(uploadImageButton, "");
         controlPanel.add(runInferenceButton, "");
         controlPanel.add(toggleDetectionsButton, "");
+        controlPanel.add(batchInferenceButton, "");
         
         imagePanel.add(controlPanel, "span 2, wrap 10");
         
         // Image display        
-        JScrollPane imageScrollPane = new JScrollPane(imageLabel);
+        JScrollPane imageScrollPane = new JScrollPane(imageView);
         imageScrollPane.setPreferredSize(new Dimension(450, 350));
         imagePanel.add(imageScrollPane, "");
         
@@ -171,12 +234,25 @@ public class ModelTestingForm extends JPanel {
         uploadImageButton.addActionListener(e -> uploadImage());
         runInferenceButton.addActionListener(e -> runInference());
         toggleDetectionsButton.addActionListener(e -> toggleDetections());
+        batchInferenceButton.addActionListener(e -> openBatchInference());
         
         modelComboBox.addActionListener(e -> updateRunButtonState());
         
         confidenceSlider.addChangeListener(e -> {
             double confidence = confidenceSlider.getValue() / 100.0;
             confidenceLabel.setText(String.format("Confidence: %.2f", confidence));
+            applyDetectionFilters();
+        });
+        iouSlider.addChangeListener(e -> {
+            double iou = iouSlider.getValue() / 100.0;
+            iouLabel.setText(String.format("NMS IoU: %.2f", iou));
+            applyDetectionFilters();
+        });
+        nmsMethodComboBox.addActionListener(e -> applyDetectionFilters());
+        classAgnosticCheckBox.addActionListener(e -> applyDetectionFilters());
+        tiledCheckBox.addActionListener(e -> {
+            tileSizeSpinner.setEnabled(tiledCheckBox.isSelected());
+            tileOverlapSpinner.setEnabled(tiledCheckBox.isSelected());
         });
     }
       private void refreshAvailableModels() {
@@ -295,15 +371,17 @@ public class ModelTestingForm extends JPanel {
             currentImagePath = selectedFile.getAbsolutePath();
             
             try {
-                // Store both original and current image
-                originalImage = ImageIO.read(selectedFile);
-                currentImage = originalImage;                // Clear previous detections
+                // Decoded at display resolution; detections stay in source coordinates
+                imageView.setImage(ImageRenderer.loadForDisplay(selectedFile, MAX_DISPLAY_SIZE));
+                imageView.setDetectionsVisible(true);
+                // Clear previous detections
                 lastDetections = null;
+                currentInference = null;
+                rebuildClassToggles();
                 updateToggleButtonState();
                 toggleDetectionsButton.setEnabled(false);
                 toggleDetectionsButton.setText("Show Original");
                 
-                displayImage(currentImage);
                 statusLabel.setText("Image loaded: " + selectedFile.getName());
                 updateRunButtonState();
                 
@@ -316,31 +394,10 @@ public class ModelTestingForm extends JPanel {
         }
     }
     
-    private void displayImage(BufferedImage image) {
-        if (image == null) return;
-        
-        // Calculate scaled dimensions to fit in label
-        int labelWidth = imageLabel.getWidth();
-        int labelHeight = imageLabel.getHeight();
-        
-        if (labelWidth <= 0) labelWidth = 400;
-        if (labelHeight <= 0) labelHeight = 300;
-        
-        double scaleX = (double) labelWidth / image.getWidth();
-        double scaleY = (double) labelHeight / image.getHeight();
-        double scale = Math.min(scaleX, scaleY);
-        
-        int scaledWidth = (int) (image.getWidth() * scale);
-        int scaledHeight = (int) (image.getHeight() * scale);
-        
-        Image scaledImage = image.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
-        imageLabel.setIcon(new ImageIcon(scaledImage));
-        imageLabel.setText("");
-    }
-    
     private void updateRunButtonState() {
-        boolean canRun = modelComboBox.getSelectedItem() != null && currentImage != null;
+        boolean canRun = modelComboBox.getSelectedItem() != null && imageView.hasImage();
         runInferenceButton.setEnabled(canRun);
+        batchInferenceButton.setEnabled(modelComboBox.getSelectedItem() != null);
     }
     
     private void runInference() {
@@ -351,6 +408,21 @@ public class ModelTestingForm extends JPanel {
             return;
         }
         
+        // Raw detections for this model and image are cached; only re-run below their floor
+        double confidence = confidenceSlider.getValue() / 100.0;
+        int tileSize = tiledCheckBox.isSelected() ? (Integer) tileSizeSpinner.getValue() : 0;
+        double tileOverlap = ((Number) tileOverlapSpinner.getValue()).doubleValue();
+        String cacheKey = inferenceCacheKey(selectedModel.modelPath, currentImagePath)
+            + (tileSize > 0 ? "|tiles=" + tileSize + "/" + tileOverlap : "");
+        CachedInference cached = inferenceCache.get(cacheKey);
+        if (cached != null && cached.floorConfidence <= confidence) {
+            showInference(cached);
+            statusLabel.setText("Inference completed (cached)");
+            return;
+        }
+        double floor = Math.min(FLOOR_CONFIDENCE, confidence);
+        String imagePath = currentImagePath;
+        
         // Disable UI during inference
         runInferenceButton.setEnabled(false);
         uploadImageButton.setEnabled(false);
@@ -361,16 +433,16 @@ public class ModelTestingForm extends JPanel {
         resultsArea.setText("Processing...");
         
         // Run inference in background
-        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+        SwingWorker<CachedInference, Void> worker = new SwingWorker<CachedInference, Void>() {
             @Override
-            protected String doInBackground() throws Exception {
-                return performInference(selectedModel.modelPath, currentImagePath);
+            protected CachedInference doInBackground() throws Exception {
+                return performInference(selectedModel.modelPath, imagePath, floor, tileSize, tileOverlap);
             }
             
             @Override
             protected void done() {
                 try {
-                    String results = get();
+                    CachedInference inference = get();
                     
                     // Re-enable UI
                     runInferenceButton.setEnabled(true);
@@ -378,8 +450,16 @@ public class ModelTestingForm extends JPanel {
                     modelComboBox.setEnabled(true);
                     progressBar.setVisible(false);
                     
-                    resultsArea.setText(results);
-                    statusLabel.setText("Inference completed");
+                    // A failed run, e.g. a worker timeout, is retried next time rather than cached
+                    boolean failed = inference.output != null && inference.output.hasNonNull("error");
+                    if (!failed) {
+                        inferenceCache.put(cacheKey, inference);
+                    }
+                    // The user may have picked another image meanwhile
+                    if (imagePath.equals(currentImagePath)) {
+                        showInference(inference);
+                    }
+                    statusLabel.setText(failed ? "Inference failed" : "Inference completed");
                     
                 } catch (Exception e) {
                     // Re-enable UI
@@ -400,10 +480,28 @@ public class ModelTestingForm extends JPanel {
         
         worker.execute();
     }
-      private String performInference(String modelPath, String imagePath) throws Exception {
-        double confidence = confidenceSlider.getValue() / 100.0;
-        
-        // Use ModelConverter's runInference method with proper Python environment
+    
+    /**
+     * Model and image identity, including modification times so retrained
+     * models and edited images aren't served stale results
+     */
+    private String inferenceCacheKey(String modelPath, String imagePath) {
+        return modelPath + "@" + new File(modelPath).lastModified() + "|" + imagePath + "@" + new File(imagePath).lastModified();
+    }
+    
+    private void openBatchInference() {
+        ModelInfo selectedModel = (ModelInfo) modelComboBox.getSelectedItem();
+        if (selectedModel == null) {
+            return;
+        }
+        new BatchInferenceDialog(SwingUtilities.getWindowAncestor(this), selectedModel.modelPath,
+            resolveProjectPath(selectedModel.modelPath), confidenceSlider.getValue() / 100.0).setVisible(true);
+    }
+    
+    /**
+     * Project whose Python environment runs the model
+     */
+    private String resolveProjectPath(String modelPath) {
         String currentProjectPath = projectPath;
         if (currentProjectPath == null) {
             // Extract project path from model path if not provided
@@ -420,72 +518,103 @@ public class ModelTestingForm extends JPanel {
                 currentProjectPath = System.getProperty("user.home") + File.separator + "YoloV8Workspace";
             }
         }
+        return currentProjectPath;
+    }
+    
+    /**
+     * Run the model once; a tile size above 0 selects tiled inference
+     */
+    private CachedInference performInference(String modelPath, String imagePath, double floorConfidence,
+                                             int tileSize, double tileOverlap) throws Exception {
+        String currentProjectPath = resolveProjectPath(modelPath);
         
         try {
-            // Use ModelConverter's runInference method
-            String rawOutput = ModelConverter.runInference(modelPath, imagePath, confidence, currentProjectPath);
-            return formatInferenceResults(rawOutput);
+            // Fetch near-raw candidates; thresholds and NMS are applied in Java.
+            // Tiles keep the model's NMS so that seam merging only sees one box per object per tile.
+            JsonNode output = tileSize > 0
+                ? ModelConverter.runTiledInference(modelPath, imagePath, tileSize, tileOverlap, floorConfidence, currentProjectPath)
+                : ModelConverter.runInference(modelPath, imagePath, floorConfidence,
+                    RAW_IOU, RAW_MAX_DETECTIONS, currentProjectPath);
+            
+            // Read straight from the result node; it is never serialized back to text
+            List<DetectionResult> detections = DetectionStreamParser.parse(output).getDetections();
+            System.out.println("[INFERENCE] Parsed " + detections.size() + " raw detections");
+            
+            return new CachedInference(floorConfidence, output, detections);
         } catch (Exception e) {
             throw new Exception("Inference failed: " + e.getMessage(), e);
         }
-    }    /**
-     * Format the raw inference output for display
-     */    private String formatInferenceResults(String rawOutput) {
-        try {
-            // Debug logging
-            System.out.println("=== RAW OUTPUT DEBUG ===");
-            System.out.println("Raw output length: " + rawOutput.length());
-            System.out.println("Raw output content:");
-            System.out.println(rawOutput);
-            System.out.println("=== END RAW OUTPUT ===");
-            
-            // Parse detections from output
-            List<DetectionResult> detections;
-              // Try JSON format first
-            detections = DetectionParserNew.parseDetections(rawOutput);
-            System.out.println("JSON Parser found " + detections.size() + " detections");
-            
-            // If no JSON detections found, try simple text format
-            if (detections.isEmpty()) {
-                detections = DetectionParserNew.parseSimpleFormat(rawOutput);
-                System.out.println("Simple Parser found " + detections.size() + " detections");
+    }
+    
+    private void showInference(CachedInference inference) {
+        currentInference = inference;
+        rebuildClassToggles();
+        applyDetectionFilters();
+    }
+    
+    /**
+     * Re-filter the cached raw detections with the current confidence, IoU
+     * and class settings, then re-render and summarize
+     */
+    private void applyDetectionFilters() {
+        if (currentInference == null) {
+            return;
+        }
+        double confidence = confidenceSlider.getValue() / 100.0;
+        detectionFilter.setConfidenceThreshold(confidence);
+        detectionFilter.setIouThreshold(iouSlider.getValue() / 100.0);
+        detectionFilter.setMethod((DetectionPostProcessor.Method) nmsMethodComboBox.getSelectedItem());
+        detectionFilter.setClassAgnostic(classAgnosticCheckBox.isSelected());
+        
+        List<DetectionResult> raw = currentInference.detections;
+        List<DetectionResult> detections = detectionFilter.apply(raw);
+        lastDetections = detections;
+        
+        // Only the overlay is repainted; the image itself is untouched
+        imageView.setDetections(detections);
+        updateToggleButtonState();
+        
+        if (!detections.isEmpty()) {
+            resultsArea.setText(ImageRenderer.getDetectionSummary(detections));
+        } else if (raw.isEmpty()) {
+            // Fallback to original formatting logic
+            resultsArea.setText(formatRawOutput(currentInference.output.toString()));
+        } else {
+            resultsArea.setText("No detections pass the current filters.\n\n" +
+                raw.size() + " candidate(s) were hidden by the confidence, IoU or class settings.");
+        }
+        resultsArea.setCaretPosition(0);
+        
+        if (confidence < currentInference.floorConfidence) {
+            statusLabel.setText(String.format("Showing %d of %d detections - run inference again for confidence below %.2f",
+                detections.size(), raw.size(), currentInference.floorConfidence));
+        } else {
+            statusLabel.setText("Showing " + detections.size() + " of " + raw.size() + " detections");
+        }
+    }
+    
+    /**
+     * One checkbox per class present in the raw detections
+     */
+    private void rebuildClassToggles() {
+        classFilterPanel.removeAll();
+        if (currentInference != null) {
+            Map<Integer, String> classes = new TreeMap<>();
+            for (DetectionResult detection : currentInference.detections) {
+                classes.putIfAbsent(detection.getClassId(), detection.getClassName());
             }
-            
-            // Store detections for rendering
-            lastDetections = detections;
-            final List<DetectionResult> finalDetections = detections;              // Render detections on image if we have both image and detections
-            if (originalImage != null && !detections.isEmpty()) {
-                System.out.println("Rendering " + detections.size() + " detections on image");
-                SwingUtilities.invokeLater(() -> {
-                    BufferedImage imageWithDetections = ImageRenderer.renderDetections(originalImage, finalDetections);
-                    currentImage = imageWithDetections;
-                    displayImage(currentImage);
-                    updateToggleButtonState();
-                });
-            } else {
-                System.out.println("Not rendering detections - originalImage: " + (originalImage != null) + ", detections count: " + detections.size());
-                SwingUtilities.invokeLater(() -> {
-                    updateToggleButtonState();
+            for (Map.Entry<Integer, String> entry : classes.entrySet()) {
+                int classId = entry.getKey();
+                JCheckBox checkBox = new JCheckBox(entry.getValue(), !detectionFilter.getHiddenClasses().contains(classId));
+                checkBox.addActionListener(e -> {
+                    detectionFilter.setClassVisible(classId, checkBox.isSelected());
+                    applyDetectionFilters();
                 });
+                classFilterPanel.add(checkBox);
             }
-            
-            // Return formatted text summary
-            if (!detections.isEmpty()) {
-                String summary = ImageRenderer.getDetectionSummary(detections);
-                System.out.println("Generated summary:");
-                System.out.println(summary);
-                return summary;
-            } else {
-                // Fallback to original formatting logic
-                System.out.println("No detections found, using fallback formatting");
-                return formatRawOutput(rawOutput);
-            }
-            
-        } catch (Exception e) {
-            System.err.println("Error formatting results: " + e.getMessage());
-            e.printStackTrace();
-            return formatRawOutput(rawOutput);
         }
+        classFilterPanel.revalidate();
+        classFilterPanel.repaint();
     }
     
     /**
@@ -612,6 +741,21 @@ public class ModelTestingForm extends JPanel {
         return "";
     }
     
+    /**
+     * Raw detections of one model on one image, fetched at a floor confidence
+     */
+    private static class CachedInference {
+        final double floorConfidence;
+        final JsonNode output;
+        final List<DetectionResult> detections;
+        
+        CachedInference(double floorConfidence, JsonNode output, List<DetectionResult> detections) {
+            this.floorConfidence = floorConfidence;
+            this.output = output;
+            this.detections = detections;
+        }
+    }
+    
     // Helper class for model information
     private static class ModelInfo {
         String projectId;
@@ -629,22 +773,10 @@ public class ModelTestingForm extends JPanel {
      * Toggle between showing original image and image with detections
      */
     private void toggleDetections() {
-        if (originalImage == null) return;
-        
-        if (currentImage == originalImage) {
-            // Currently showing original, switch to detections
-            if (lastDetections != null && !lastDetections.isEmpty()) {
-                BufferedImage imageWithDetections = ImageRenderer.renderDetections(originalImage, lastDetections);
-                currentImage = imageWithDetections;
-                displayImage(currentImage);
-                toggleDetectionsButton.setText("Show Original");
-            }
-        } else {
-            // Currently showing detections, switch to original
-            currentImage = originalImage;
-            displayImage(currentImage);
-            toggleDetectionsButton.setText("Show Detections");
-        }
+        if (!imageView.hasImage()) return;
+        
+        imageView.setDetectionsVisible(!imageView.isDetectionsVisible());
+        updateToggleButtonState();
     }
     
     /**
@@ -652,13 +784,13 @@ public class ModelTestingForm extends JPanel {
      */
     private void updateToggleButtonState() {
         boolean hasDetections = lastDetections != null && !lastDetections.isEmpty();
-        toggleDetectionsButton.setEnabled(hasDetections && originalImage != null);
+        toggleDetectionsButton.setEnabled(hasDetections && imageView.hasImage());
         
         if (hasDetections) {
-            if (currentImage == originalImage) {
-                toggleDetectionsButton.setText("Show Detections");
-            } else {
+            if (imageView.isDetectionsVisible()) {
                 toggleDetectionsButton.setText("Show Original");
+            } else {
+                toggleDetectionsButton.setText("Show Detections");
             }
         } else {
             toggleDetectionsButton.setText("No Detections");
@@ -26,6 +26,8 @@ public class ModelsPage extends JPanel {
     private JButton deleteModelButton;
     private JButton convertModelButton;
     private JButton testModelButton;
+    private JButton preAnnotateButton;
+    private JButton benchmarkButton;
     private JLabel statusLabel;
     
     public ModelsPage() {
@@ -60,12 +62,22 @@ public class ModelsPage extends JPanel {
         testModelButton.putClientProperty(FlatClientProperties.STYLE, "arc:5;background:$Component.accentColor");
         testModelButton.setEnabled(false);
         
+        preAnnotateButton = new JButton("Pre-annotate");
+        preAnnotateButton.putClientProperty(FlatClientProperties.STYLE, "arc:5;background:$Component.focusColor");
+        preAnnotateButton.setToolTipText("Propose annotations for the open project's unlabeled images");
+        preAnnotateButton.setEnabled(false);
+        
+        benchmarkButton = new JButton("Benchmark");
+        benchmarkButton.putClientProperty(FlatClientProperties.STYLE, "arc:5;background:$Component.focusColor");
+        benchmarkButton.setToolTipText("Measure latency, throughput and memory of this model and its exported formats");
+        benchmarkButton.setEnabled(false);
+        
         // Status label
         statusLabel = new JLabel("Ready");
         statusLabel.putClientProperty(FlatClientProperties.STYLE, "font:-1");
         
         // Table
-        String[] columnNames = {"Project ID", "Model Name", "Model Type", "File Size", "Date Created", "Training Directory"};
+        String[] columnNames = {"Project ID", "Model Name", "Model Type", "File Size", "Date Created", "Training Directory", "Benchmark"};
         tableModel = new DefaultTableModel(columnNames, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -86,6 +98,7 @@ public class ModelsPage extends JPanel {
         modelsTable.getColumnModel().getColumn(3).setPreferredWidth(80);  // File Size
         modelsTable.getColumnModel().getColumn(4).setPreferredWidth(120); // Date Created
         modelsTable.getColumnModel().getColumn(5).setPreferredWidth(200); // Training Directory
+        modelsTable.getColumnModel().getColumn(6).setPreferredWidth(160); // Benchmark
         
         // Set background
         setOpaque(false);
@@ -100,13 +113,15 @@ public class ModelsPage extends JPanel {
         titleLabel.setHorizontalAlignment(SwingConstants.CENTER);
         add(titleLabel, "wrap 15");
           // Search and control panel
-        JPanel controlPanel = new JPanel(new MigLayout("fill,insets 0", "[fill][grow 0][grow 0][grow 0][grow 0][grow 0]", "[]"));
+        JPanel controlPanel = new JPanel(new MigLayout("fill,insets 0", "[fill][grow 0][grow 0][grow 0][grow 0][grow 0][grow 0][grow 0]", "[]"));
         controlPanel.setOpaque(false);
         
         controlPanel.add(searchField, "");
         controlPanel.add(refreshButton, "w 80!");
         controlPanel.add(convertModelButton, "w 120!");
         controlPanel.add(testModelButton, "w 100!");
+        controlPanel.add(preAnnotateButton, "w 110!");
+        controlPanel.add(benchmarkButton, "w 100!");
         controlPanel.add(loadModelButton, "w 100!");
         controlPanel.add(deleteModelButton, "w 120!");
         
@@ -131,6 +146,10 @@ public class ModelsPage extends JPanel {
         
         testModelButton.addActionListener(e -> testSelectedModel());
         
+        preAnnotateButton.addActionListener(e -> preAnnotateWithSelectedModel());
+        
+        benchmarkButton.addActionListener(e -> benchmarkSelectedModel());
+        
         // Table selection listener
         modelsTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -139,6 +158,8 @@ public class ModelsPage extends JPanel {
                 deleteModelButton.setEnabled(hasSelection);
                 convertModelButton.setEnabled(hasSelection);
                 testModelButton.setEnabled(hasSelection);
+                preAnnotateButton.setEnabled(hasSelection);
+                benchmarkButton.setEnabled(hasSelection);
             }
         });
         
@@ -168,7 +189,8 @@ public class ModelsPage extends JPanel {
                         model.modelType,
                         formatFileSize(model.fileSize),
                         model.dateCreated,
-                        model.trainingDirectory
+                        model.trainingDirectory,
+                        benchmarkSummary(model)
                     };
                     tableModel.addRow(row);
                 }
@@ -477,6 +499,66 @@ public class ModelsPage extends JPanel {
         }
     }
     
+    private void preAnnotateWithSelectedModel() {
+        int selectedRow = modelsTable.getSelectedRow();
+        if (selectedRow == -1) return;
+        
+        raven.yolo.model.YoloProject project = raven.yolo.manager.ProjectManager.getInstance().getCurrentProject();
+        if (project == null) {
+            JOptionPane.showMessageDialog(this,
+                "Open the project to annotate first.",
+                "No Project", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        String projectId = (String) tableModel.getValueAt(selectedRow, 0);
+        String modelName = (String) tableModel.getValueAt(selectedRow, 1);
+        String trainingDir = (String) tableModel.getValueAt(selectedRow, 5);
+        String modelPath = trainingDir + File.separator + modelName;
+        
+        if (!raven.yolo.utils.ModelConverter.isInferenceSupported(modelPath)) {
+            JOptionPane.showMessageDialog(this,
+                "This model format is not supported for inference.",
+                "Pre-annotation Not Available",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        // The model runs in the Python environment of the project that trained it
+        new PreAnnotateDialog(SwingUtilities.getWindowAncestor(this), project, modelPath,
+            getProjectPath(projectId)).setVisible(true);
+    }
+    
+    private void benchmarkSelectedModel() {
+        int selectedRow = modelsTable.getSelectedRow();
+        if (selectedRow == -1) return;
+        
+        String projectId = (String) tableModel.getValueAt(selectedRow, 0);
+        String modelName = (String) tableModel.getValueAt(selectedRow, 1);
+        String trainingDir = (String) tableModel.getValueAt(selectedRow, 5);
+        String modelPath = trainingDir + File.separator + modelName;
+        
+        if (!raven.yolo.utils.ModelConverter.isInferenceSupported(modelPath)) {
+            JOptionPane.showMessageDialog(this,
+                "This model format is not supported for inference.",
+                "Benchmark Not Available",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        new BenchmarkDialog(SwingUtilities.getWindowAncestor(this), modelPath,
+            getProjectPath(projectId), this::refreshModels).setVisible(true);
+    }
+    
+    /**
+     * Summary of the benchmark stored next to the model, if any
+     */
+    private String benchmarkSummary(ModelInfo model) {
+        raven.yolo.inference.ModelBenchmark.Result result = raven.yolo.inference.ModelBenchmark.load(
+            model.trainingDirectory + File.separator + model.modelName);
+        return result != null ? result.getSummary() : "";
+    }
+    
     /**
      * Get project path from project ID
      */
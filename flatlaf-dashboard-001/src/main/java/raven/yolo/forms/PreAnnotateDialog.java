@@ -0,0 +1,186 @@
+package raven.yolo.forms;
+
+import com.formdev.flatlaf.FlatClientProperties;
+import net.miginfocom.swing.MigLayout;
+import raven.yolo.inference.PreAnnotationJob;
+import raven.yolo.model.YoloProject;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a model over the current project's unlabeled images and adds its
+ * detections as annotations, with pause, resume and cancel.
+ */
+public class PreAnnotateDialog extends JDialog {
+
+    private final YoloProject project;
+    private final String modelPath;
+    private final String pythonProjectPath;
+
+    private JSpinner confidenceSpinner;
+    private JSpinner batchSizeSpinner;
+    private JCheckBox addMissingClassesCheckBox;
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private JButton startButton;
+    private JButton pauseButton;
+    private JButton closeButton;
+
+    private PreAnnotationJob job;
+
+    public PreAnnotateDialog(Window parent, YoloProject project, String modelPath, String pythonProjectPath) {
+        super(parent, "Pre-annotate Project", ModalityType.MODELESS);
+        this.project = project;
+        this.modelPath = modelPath;
+        this.pythonProjectPath = pythonProjectPath;
+        initComponents();
+        setupLayout();
+        setupEventHandlers();
+
+        setSize(520, 340);
+        setLocationRelativeTo(parent);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+    }
+
+    private void initComponents() {
+        confidenceSpinner = new JSpinner(new SpinnerNumberModel(0.5, 0.05, 1.0, 0.05));
+        confidenceSpinner.setEditor(new JSpinner.NumberEditor(confidenceSpinner, "0.00"));
+        batchSizeSpinner = new JSpinner(new SpinnerNumberModel(8, 1, 64, 1));
+        addMissingClassesCheckBox = new JCheckBox("Add model classes the project doesn't have");
+        addMissingClassesCheckBox.setToolTipText("Otherwise detections of unknown classes are skipped");
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        int candidates = PreAnnotationJob.findCandidates(project).size();
+        progressBar.setString(candidates + " unlabeled image(s)");
+
+        statusLabel = new JLabel("Model classes are matched to project classes by name");
+        statusLabel.putClientProperty(FlatClientProperties.STYLE, "font:-1");
+
+        startButton = new JButton("Start");
+        startButton.putClientProperty(FlatClientProperties.STYLE, "background:$Component.accentColor");
+        startButton.setEnabled(candidates > 0);
+        pauseButton = new JButton("Pause");
+        pauseButton.setEnabled(false);
+        closeButton = new JButton("Close");
+    }
+
+    private void setupLayout() {
+        setLayout(new MigLayout("fill,insets 15", "[fill]", "[][][]push[][]"));
+
+        JLabel titleLabel = new JLabel(project.getName() + " with " + new File(modelPath).getName());
+        titleLabel.putClientProperty(FlatClientProperties.STYLE, "font:bold +2");
+        add(titleLabel, "wrap 10");
+
+        JPanel optionsPanel = new JPanel(new MigLayout("fill,insets 10", "[grow 0][grow 0]20[grow 0][grow 0][fill]", "[][]"));
+        optionsPanel.setBorder(BorderFactory.createTitledBorder("Options"));
+        optionsPanel.add(new JLabel("Confidence:"), "");
+        optionsPanel.add(confidenceSpinner, "w 70!");
+        optionsPanel.add(new JLabel("Batch size:"), "");
+        optionsPanel.add(batchSizeSpinner, "w 60!, wrap 10");
+        optionsPanel.add(addMissingClassesCheckBox, "span");
+        add(optionsPanel, "wrap 10");
+
+        add(progressBar, "wrap 5");
+        add(statusLabel, "wrap 10");
+
+        JPanel buttonPanel = new JPanel(new MigLayout("insets 0", "push[][][]", "[]"));
+        buttonPanel.add(startButton, "w 90!");
+        buttonPanel.add(pauseButton, "w 90!");
+        buttonPanel.add(closeButton, "w 90!");
+        add(buttonPanel, "");
+    }
+
+    private void setupEventHandlers() {
+        startButton.addActionListener(e -> startJob());
+        pauseButton.addActionListener(e -> togglePause());
+        closeButton.addActionListener(e -> closeOrCancel());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                closeOrCancel();
+            }
+        });
+    }
+
+    private void startJob() {
+        job = new PreAnnotationJob(project, modelPath, pythonProjectPath, new PreAnnotationJob.Listener() {
+            @Override
+            public void onProgress(int processed, int total, int annotatedImages, int boxes) {
+                progressBar.setValue(total > 0 ? processed * 100 / total : 100);
+                progressBar.setString(processed + " / " + total);
+                statusLabel.setText(boxes + " boxes proposed on " + annotatedImages + " image(s)");
+            }
+
+            @Override
+            public void onStateChanged(PreAnnotationJob.State state, String message) {
+                updateButtons(state);
+                statusLabel.setText(message);
+                if (state == PreAnnotationJob.State.FAILED) {
+                    JOptionPane.showMessageDialog(PreAnnotateDialog.this, message,
+                        "Pre-annotation Error", JOptionPane.ERROR_MESSAGE);
+                } else if (state == PreAnnotationJob.State.COMPLETED || state == PreAnnotationJob.State.CANCELLED) {
+                    showSkippedClasses();
+                }
+            }
+        });
+        job.setConfidence(((Number) confidenceSpinner.getValue()).doubleValue());
+        job.setBatchSize((Integer) batchSizeSpinner.getValue());
+        job.setAddMissingClasses(addMissingClassesCheckBox.isSelected());
+
+        confidenceSpinner.setEnabled(false);
+        batchSizeSpinner.setEnabled(false);
+        addMissingClassesCheckBox.setEnabled(false);
+        job.start();
+    }
+
+    private void togglePause() {
+        if (job == null) {
+            return;
+        }
+        if (job.getState() == PreAnnotationJob.State.PAUSED) {
+            job.resume();
+        } else {
+            job.pause();
+            pauseButton.setEnabled(false);
+            statusLabel.setText("Pausing after the current batch...");
+        }
+    }
+
+    private void closeOrCancel() {
+        if (job != null && (job.getState() == PreAnnotationJob.State.RUNNING || job.getState() == PreAnnotationJob.State.PAUSED)) {
+            job.cancel();
+            closeButton.setEnabled(false);
+            pauseButton.setEnabled(false);
+            statusLabel.setText("Cancelling after the current batch...");
+        } else {
+            dispose();
+        }
+    }
+
+    private void updateButtons(PreAnnotationJob.State state) {
+        boolean active = state == PreAnnotationJob.State.RUNNING || state == PreAnnotationJob.State.PAUSED;
+        startButton.setEnabled(false);
+        pauseButton.setEnabled(active);
+        pauseButton.setText(state == PreAnnotationJob.State.PAUSED ? "Resume" : "Pause");
+        closeButton.setEnabled(true);
+        closeButton.setText(active ? "Cancel" : "Close");
+    }
+
+    private void showSkippedClasses() {
+        Map<String, Integer> skipped = job.getSkippedClasses();
+        if (skipped.isEmpty()) {
+            return;
+        }
+        String list = skipped.entrySet().stream()
+            .map(entry -> entry.getKey() + " (" + entry.getValue() + ")")
+            .collect(Collectors.joining(", "));
+        JOptionPane.showMessageDialog(this,
+            "Detections of classes not in the project were skipped:\n" + list,
+            "Skipped Classes", JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -4,12 +4,9 @@ import com.formdev.flatlaf.FlatClientProperties;
 import net.miginfocom.swing.MigLayout;
 import raven.yolo.manager.ProjectManager;
 import raven.yolo.model.YoloProject;
-import raven.yolo.model.YoloImage;
-import raven.yolo.model.YoloAnnotation;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
 import java.util.Map;
 
 public class ProjectStatistics extends JPanel {
@@ -109,22 +106,10 @@ public class ProjectStatistics extends JPanel {
         
         // Calculate statistics
         int totalImages = project.getImages().size();
-        int labeledImages = 0;
-        int totalAnnotations = 0;
-        Map<String, Integer> classDistribution = new HashMap<>();
-        
-        for (YoloImage image : project.getImages()) {
-            if (image.isLabeled()) {
-                labeledImages++;
-            }
-            totalAnnotations += image.getAnnotations().size();
-            
-            // Count class distribution
-            for (YoloAnnotation annotation : image.getAnnotations()) {
-                String className = annotation.getClassName();
-                classDistribution.put(className, classDistribution.getOrDefault(className, 0) + 1);
-            }
-        }
+        // Counted from the image index, without reading annotations
+        int labeledImages = project.getLabeledImageCount();
+        int totalAnnotations = project.getTotalAnnotationCount();
+        Map<String, Integer> classDistribution = project.getClassDistribution();
         
         int totalClasses = project.getClasses().size();
         double completionPercentage = totalImages > 0 ? (double) labeledImages / totalImages * 100 : 0;
@@ -253,8 +253,9 @@ public class QuickStartPanel extends JPanel {
             name.toLowerCase().endsWith(".png"));
         
         if (imageFiles != null) {
-            for (File imageFile : imageFiles) {
-                ProjectManager.getInstance().addImageToProject(imageFile);
+            ProjectManager.AddImagesResult result = ProjectManager.getInstance().addImagesToProject(java.util.Arrays.asList(imageFiles), null);
+            if (!result.getFailures().isEmpty()) {
+                throw result.getFailures().values().iterator().next();
             }
         }
         
@@ -313,8 +314,7 @@ public class QuickStartPanel extends JPanel {
         
         // Stats
         int imageCount = project.getImages().size();
-        int annotatedCount = (int) project.getImages().stream()
-            .mapToLong(img -> img.getAnnotations().size()).count();
+        int annotatedCount = project.getLabeledImageCount();
         JLabel statsLabel = new JLabel(imageCount + " images, " + annotatedCount + " annotated");
         statsLabel.putClientProperty(FlatClientProperties.STYLE, 
             "font:-1;foreground:$Label.disabledForeground");
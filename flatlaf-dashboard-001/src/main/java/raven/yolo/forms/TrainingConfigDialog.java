@@ -3,6 +3,7 @@ package raven.yolo.forms;
 import com.formdev.flatlaf.FlatClientProperties;
 import net.miginfocom.swing.MigLayout;
 import raven.yolo.model.TrainingConfig;
+import raven.yolo.model.YoloImage;
 import raven.yolo.model.YoloProject;
 import raven.yolo.training.TrainingManager;
 import raven.yolo.training.PythonSetupManager;
@@ -149,7 +150,7 @@ public class TrainingConfigDialog extends JDialog implements TrainingManager.Tra
         
         // Count annotated images
         long annotatedCount = project.getImages().stream()
-            .filter(img -> !img.getAnnotations().isEmpty())
+            .filter(YoloImage::isLabeled)
             .count();
             
         if (annotatedCount == 0) {
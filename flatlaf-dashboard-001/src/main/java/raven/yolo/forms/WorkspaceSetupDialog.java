@@ -100,8 +100,9 @@ public class WorkspaceSetupDialog extends JDialog {
                 "• project-name-1/\n" +
                 "  ├── images/          (source images)\n" +
                 "  ├── labels/          (YOLO format annotations)\n" +
+                "  ├── annotations/     (annotation shards)\n" +
                 "  ├── exports/         (exported datasets)\n" +
-                "  └── project.json     (project configuration)\n" +
+                "  └── project.json     (project settings and image index)\n" +
                 "• project-name-2/\n" +
                 "• workspace-config.json (workspace settings)"
         );
@@ -5,6 +5,7 @@ import net.miginfocom.swing.MigLayout;
 import raven.yolo.component.ClassPanel;
 import raven.yolo.component.ImageListPanel;
 import raven.yolo.components.ImageViewer;
+import raven.yolo.manager.ProjectAutosave;
 import raven.yolo.manager.ProjectManager;
 import raven.yolo.model.ClassManager;
 import raven.yolo.model.YoloImage;
@@ -362,13 +363,19 @@ public class YoloAnnotationForm extends JPanel {
     }
     
     private void saveProject() {
-        try {
-            ProjectManager.getInstance().saveCurrentProject();
-            updateStatus("Project saved");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saving project: " + e.getMessage(), 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        updateStatus("Saving project...");
+        ProjectAutosave.getInstance().saveNow().whenComplete((report, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                updateStatus("Project saved: " + report);
+            } else {
+                Throwable cause = error;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                JOptionPane.showMessageDialog(this, "Error saving project: " + cause.getMessage(), 
+                                            "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
     }
     
     private void exportDataset() {
@@ -539,9 +546,7 @@ public class YoloAnnotationForm extends JPanel {
         if (projectStats != null) {
             if (project != null) {
                 int imageCount = project.getImages().size();
-                int annotatedCount = (int) project.getImages().stream()
-                    .filter(img -> !img.getAnnotations().isEmpty())
-                    .count();
+                int annotatedCount = project.getLabeledImageCount();
                 projectStats.setText(String.format(
                     "<html><b>Images:</b> %d<br><b>Annotated:</b> %d</html>", 
                     imageCount, annotatedCount));
@@ -555,7 +560,7 @@ public class YoloAnnotationForm extends JPanel {
         // Enable new project from labels button only if project has annotated images
         if (newProjectFromLabelsButton != null) {
             boolean hasAnnotatedImages = hasProject && project.getImages().stream()
-                .anyMatch(img -> !img.getAnnotations().isEmpty());
+                .anyMatch(YoloImage::isLabeled);
             newProjectFromLabelsButton.setEnabled(hasAnnotatedImages);
         }
     }
@@ -602,7 +607,7 @@ public class YoloAnnotationForm extends JPanel {
         
         // Check if we have annotations
         boolean hasAnnotations = project.getImages().stream()
-            .anyMatch(img -> !img.getAnnotations().isEmpty());
+            .anyMatch(YoloImage::isLabeled);
         
         if (!hasAnnotations) {
             JOptionPane.showMessageDialog(this, 
@@ -749,10 +754,7 @@ public class YoloAnnotationForm extends JPanel {
         }
         
         // Count total labeled objects
-        int totalLabeledObjects = 0;
-        for (YoloImage image : currentProject.getImages()) {
-            totalLabeledObjects += image.getAnnotations().size();
-        }
+        int totalLabeledObjects = currentProject.getTotalAnnotationCount();
         
         if (totalLabeledObjects == 0) {
             JOptionPane.showMessageDialog(this, 
@@ -0,0 +1,48 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a detection model on images. Implementations return one result node
+ * per image, shaped as {"image", "detections", "image_shape"}, where each
+ * detection has "class_id", "class_name", "confidence" and "bbox" as
+ * [x, y, width, height] in source image pixels, and "image_shape" is
+ * [height, width].
+ */
+public interface InferenceBackend {
+
+    String getName();
+
+    boolean supports(String modelPath);
+
+    /**
+     * Run the model; errors raised by the model itself are reported as
+     * {@link InferenceWorkerManager.InferenceException}
+     */
+    List<JsonNode> infer(String modelPath, List<String> imagePaths, double confidence,
+                         double iou, int maxDetections) throws IOException;
+
+    /**
+     * Run the model on regions of one image, given as {x, y, width, height},
+     * decoding the image once. Returns {"image_shape", "tiles"}, with one
+     * list of detections per region in region coordinates.
+     */
+    JsonNode inferTiles(String modelPath, String imagePath, List<int[]> tiles, double confidence,
+                        double iou, int maxDetections, int batchSize) throws IOException;
+
+    /**
+     * Measure the model freshly loaded: load time, then for each batch size
+     * a warm-up and timed iterations over the sample images, decoded up
+     * front. The listener receives one message per batch size, shaped as
+     * {"batch_size", "warmup_ms", "latencies_ms", "peak_rss_mb"}; the final
+     * message is returned with "load_ms" added, and "cancelled" if cancelled
+     * turned true.
+     */
+    JsonNode benchmark(String modelPath, List<String> imagePaths, List<Integer> batchSizes, int warmup,
+                       int iterations, PythonInferenceWorker.MessageListener listener,
+                       BooleanSupplier cancelled) throws IOException;
+}
@@ -0,0 +1,307 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent cache of raw detections, so re-running a model on an image it
+ * has already seen is a file read. Entries are keyed by the SHA-256 of the
+ * model file, of the image content and of the inference parameters, so a
+ * retrained model, an edited image or a different threshold never hits a
+ * stale entry, while moved or copied files still do.
+ * <p>
+ * Each entry is one gzipped JSON file of the {"detections", "image_shape"}
+ * result, fanned out over subdirectories by key prefix. Total size is capped;
+ * the least recently used entries are evicted first, with recency kept in
+ * the files' modification times so it survives restarts.
+ */
+public class InferenceResultCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String ENTRY_SUFFIX = ".json.gz";
+    private static final int KEY_CHARS = 40;
+    private static final int MAX_REMEMBERED_HASHES = 50_000;
+
+    private static InferenceResultCache instance;
+
+    private final Path cacheDir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    // Key -> entry size, in access order; loaded from disk on first use
+    private LinkedHashMap<String, Long> index;
+    private long totalBytes;
+
+    // Content hashes by path, valid while size and modification time match
+    private final Map<String, FileHash> fileHashes = new LinkedHashMap<String, FileHash>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileHash> eldest) {
+            return size() > MAX_REMEMBERED_HASHES;
+        }
+    };
+
+    private InferenceResultCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public static synchronized InferenceResultCache getInstance() {
+        if (instance == null) {
+            instance = new InferenceResultCache(
+                Paths.get(System.getProperty("user.home"), "YoloAnnotationTool", "inference-cache"));
+        }
+        return instance;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (index != null) {
+            evict();
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        loadIndex();
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        loadIndex();
+        return index.size();
+    }
+
+    /**
+     * Parameters as they enter the key; callers pass everything that changes
+     * the raw detections, including the backend, as backends differ in
+     * preprocessing and give slightly different boxes for the same model
+     */
+    public static String params(String backend, double confidence, double iou, int maxDetections) {
+        return "backend=" + backend + "|conf=" + confidence + "|iou=" + iou + "|max=" + maxDetections;
+    }
+
+    /**
+     * Cache key for a model, an image and the inference parameters, or null
+     * if either file cannot be read
+     */
+    public String key(String modelPath, String imagePath, String params) {
+        try {
+            String modelHash = contentHash(new File(modelPath));
+            String imageHash = contentHash(new File(imagePath));
+            return toHex(newDigest().digest((modelHash + "|" + imageHash + "|" + params)
+                .getBytes(StandardCharsets.UTF_8))).substring(0, KEY_CHARS);
+        } catch (IOException e) {
+            System.out.println("[CACHE] Cannot hash " + imagePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cached {"detections", "image_shape"} result, or null on a miss
+     */
+    public JsonNode get(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (this) {
+            loadIndex();
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = entryFile(key);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            JsonNode result = objectMapper.readTree(in);
+            file.toFile().setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException e) {
+            // Deleted or corrupt entries are dropped and recomputed
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store a result; results that carry an error are not cached
+     */
+    public void put(String key, JsonNode result) {
+        if (key == null || result == null || result.has("error")) {
+            return;
+        }
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.set("detections", result.path("detections"));
+        if (result.has("image_shape")) {
+            entry.set("image_shape", result.get("image_shape"));
+        }
+
+        Path file = entryFile(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                objectMapper.writeValue(out, entry);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                loadIndex();
+                Long previous = index.put(key, Files.size(file));
+                totalBytes += index.get(key) - (previous != null ? previous : 0L);
+                evict();
+            }
+        } catch (IOException e) {
+            System.out.println("[CACHE] Cannot store result: " + e.getMessage());
+        }
+    }
+
+    public synchronized void clear() {
+        loadIndex();
+        for (String key : new ArrayList<>(index.keySet())) {
+            remove(key);
+        }
+    }
+
+    private synchronized void remove(String key) {
+        loadIndex();
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(entryFile(key));
+        } catch (IOException e) {
+            System.out.println("[CACHE] Cannot delete entry " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        int evicted = 0;
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            try {
+                Files.deleteIfExists(entryFile(entry.getKey()));
+            } catch (IOException e) {
+                System.out.println("[CACHE] Cannot delete entry " + entry.getKey() + ": " + e.getMessage());
+            }
+            evicted++;
+        }
+        if (evicted > 0) {
+            System.out.println("[CACHE] Evicted " + evicted + " entries, " + totalBytes / 1024 + " KB in use");
+        }
+    }
+
+    /**
+     * Rebuild the LRU order from the entries on disk, oldest access first
+     */
+    private void loadIndex() {
+        if (index != null) {
+            return;
+        }
+        index = new LinkedHashMap<>(1024, 0.75f, true);
+        totalBytes = 0;
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            files.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                .forEach(path -> entries.add(path.toFile()));
+        } catch (IOException e) {
+            System.out.println("[CACHE] Cannot read " + cacheDir + ": " + e.getMessage());
+        }
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : entries) {
+            String name = file.getName();
+            long size = file.length();
+            index.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        System.out.println("[CACHE] " + index.size() + " cached results, " + totalBytes / 1024 + " KB");
+        evict();
+    }
+
+    private Path entryFile(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * SHA-256 of a file, recomputed only when its size or modification time
+     * changes
+     */
+    private String contentHash(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+        synchronized (fileHashes) {
+            FileHash known = fileHashes.get(path);
+            if (known != null && known.size == size && known.modified == modified) {
+                return known.hash;
+            }
+        }
+
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hash = toHex(digest.digest());
+        synchronized (fileHashes) {
+            fileHashes.put(path, new FileHash(size, modified, hash));
+        }
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static class FileHash {
+        final long size;
+        final long modified;
+        final String hash;
+
+        FileHash(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Supervises one {@link PythonInferenceWorker} per (python environment, model).
+ * Workers are started on first use, restarted after a crash or when the model
+ * file changes, and shut down after a period of inactivity or on exit.
+ */
+public class InferenceWorkerManager {
+
+    private static final long STARTUP_TIMEOUT_SECONDS = 180;
+    private static final long REQUEST_TIMEOUT_SECONDS = 180;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long BATCH_POLL_MS = 200;
+
+    /** Ultralytics defaults */
+    public static final double DEFAULT_IOU = 0.7;
+    public static final int DEFAULT_MAX_DETECTIONS = 300;
+
+    private static InferenceWorkerManager instance;
+
+    private final Map<String, PythonInferenceWorker> workers = new HashMap<>();
+    private final ScheduledExecutorService reaper;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    private InferenceWorkerManager() {
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "inference-worker-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(this::shutdownIdleWorkers, 30, 30, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownAll, "inference-worker-shutdown"));
+    }
+
+    public static synchronized InferenceWorkerManager getInstance() {
+        if (instance == null) {
+            instance = new InferenceWorkerManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a running worker for the model, starting or restarting it if needed
+     */
+    public PythonInferenceWorker getWorker(List<String> pythonCommand, String modelPath, File workingDir) throws IOException {
+        String key = workerKey(pythonCommand, modelPath);
+        PythonInferenceWorker worker;
+
+        synchronized (workers) {
+            worker = workers.get(key);
+            if (worker != null && (worker.hasExited() || (worker.isStale() && !worker.isBusy()))) {
+                System.out.println("[WORKER] Restarting worker for " + modelPath
+                    + (worker.hasExited() ? " (process exited)" : " (model file changed)"));
+                worker.shutdown();
+                workers.remove(key);
+                worker = null;
+            }
+            if (worker == null) {
+                worker = new PythonInferenceWorker(pythonCommand, modelPath, workingDir);
+                workers.put(key, worker);
+            }
+        }
+
+        // Model loading can take a while; don't hold the map lock meanwhile
+        try {
+            worker.start(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            synchronized (workers) {
+                workers.remove(key, worker);
+            }
+            throw e;
+        }
+        return worker;
+    }
+
+    /**
+     * Run the model on the given images and return one result node per image,
+     * each shaped as {"image", "detections", "image_shape"}. A worker that dies
+     * mid-request is restarted and the request retried once.
+     */
+    public List<JsonNode> infer(List<String> pythonCommand, String modelPath, File workingDir,
+                                List<String> imagePaths, double confidence) throws IOException {
+        return infer(pythonCommand, modelPath, workingDir, imagePaths, confidence, DEFAULT_IOU, DEFAULT_MAX_DETECTIONS);
+    }
+
+    /**
+     * Same as above with explicit NMS settings; a high IoU and detection cap
+     * return nearly raw candidates for post-processing on the Java side
+     */
+    public List<JsonNode> infer(List<String> pythonCommand, String modelPath, File workingDir,
+                                List<String> imagePaths, double confidence, double iou,
+                                int maxDetections) throws IOException {
+        IOException lastError = null;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            PythonInferenceWorker worker = getWorker(pythonCommand, modelPath, workingDir);
+
+            ObjectNode request = worker.newRequest("infer");
+            request.put("conf", confidence);
+            request.put("iou", iou);
+            request.put("max_det", maxDetections);
+            ArrayNode images = request.putArray("images");
+            for (String imagePath : imagePaths) {
+                images.add(imagePath);
+            }
+
+            try {
+                JsonNode response = worker.request(request, REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (response.hasNonNull("error")) {
+                    throw new InferenceException(response.get("error").asText());
+                }
+
+                List<JsonNode> results = new ArrayList<>();
+                for (JsonNode result : response.path("results")) {
+                    results.add(result);
+                }
+                return results;
+            } catch (InferenceException e) {
+                // The model itself rejected the input; retrying won't help
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("[WORKER] Inference attempt " + attempt + " failed: " + e.getMessage());
+            }
+        }
+
+        throw lastError;
+    }
+
+    /**
+     * Run the model on regions of one image, given as {x, y, width, height}.
+     * The worker decodes the image once and runs the regions batchSize at a
+     * time. Returns {"image_shape", "tiles"}, with one list of detections per
+     * region in region coordinates.
+     */
+    public JsonNode inferTiles(List<String> pythonCommand, String modelPath, File workingDir, String imagePath,
+                               List<int[]> tiles, double confidence, double iou, int maxDetections,
+                               int batchSize) throws IOException {
+        PythonInferenceWorker worker = getWorker(pythonCommand, modelPath, workingDir);
+
+        ObjectNode request = worker.newRequest("infer_tiles");
+        request.put("image", imagePath);
+        request.put("conf", confidence);
+        request.put("iou", iou);
+        request.put("max_det", maxDetections);
+        request.put("batch", Math.max(1, batchSize));
+        ArrayNode regions = request.putArray("tiles");
+        for (int[] tile : tiles) {
+            regions.addArray().add(tile[0]).add(tile[1]).add(tile[2]).add(tile[3]);
+        }
+
+        JsonNode response = worker.request(request, REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (response.hasNonNull("error")) {
+            throw new InferenceException(response.get("error").asText());
+        }
+        return response;
+    }
+
+    /**
+     * Run the model over many images, batchSize at a time, handing each
+     * chunk's results to the listener as soon as the worker sends them.
+     * Returns the number of images processed, which is less than requested
+     * if cancelled turned true. Not retried: a restart would redo the work.
+     */
+    public int inferBatch(List<String> pythonCommand, String modelPath, File workingDir,
+                          List<String> imagePaths, double confidence, int batchSize,
+                          BatchListener listener, BooleanSupplier cancelled) throws IOException {
+        PythonInferenceWorker worker = getWorker(pythonCommand, modelPath, workingDir);
+
+        ObjectNode request = worker.newRequest("infer_batch");
+        request.put("conf", confidence);
+        request.put("batch", Math.max(1, batchSize));
+        ArrayNode images = request.putArray("images");
+        for (String imagePath : imagePaths) {
+            images.add(imagePath);
+        }
+
+        AtomicLong lastMessage = new AtomicLong(System.currentTimeMillis());
+        CompletableFuture<JsonNode> future = worker.submit(request, message -> {
+            lastMessage.set(System.currentTimeMillis());
+            JsonNode results = message.path("results");
+            if (results.isArray() && listener != null) {
+                List<JsonNode> chunk = new ArrayList<>(results.size());
+                results.forEach(chunk::add);
+                listener.onResults(chunk, message.path("completed").asInt(), message.path("total").asInt(imagePaths.size()));
+            }
+        });
+        JsonNode response = awaitStreaming(worker, future, request.path("id").asLong(), lastMessage, cancelled, "Batch inference");
+        return response.path("completed").asInt();
+    }
+
+    /**
+     * Measure a model on a freshly started worker: load time, then for each
+     * batch size a warm-up and timed iterations over the sample images. The
+     * listener receives one message per batch size, shaped as
+     * {"batch_size", "warmup_ms", "latencies_ms", "peak_rss_mb"}; the final
+     * message is returned with the load time added as "load_ms".
+     */
+    public JsonNode benchmark(List<String> pythonCommand, String modelPath, File workingDir,
+                              List<String> imagePaths, List<Integer> batchSizes, int warmup, int iterations,
+                              PythonInferenceWorker.MessageListener listener, BooleanSupplier cancelled) throws IOException {
+        // A worker that already served requests would hide load time and skew peak memory
+        shutdownWorkersForModel(modelPath);
+        long loadStarted = System.nanoTime();
+        PythonInferenceWorker worker = getWorker(pythonCommand, modelPath, workingDir);
+        double loadMs = (System.nanoTime() - loadStarted) / 1_000_000.0;
+
+        ObjectNode request = worker.newRequest("benchmark");
+        request.put("warmup", warmup);
+        request.put("iterations", iterations);
+        ArrayNode sizes = request.putArray("batch_sizes");
+        batchSizes.forEach(sizes::add);
+        ArrayNode images = request.putArray("images");
+        imagePaths.forEach(images::add);
+
+        AtomicLong lastMessage = new AtomicLong(System.currentTimeMillis());
+        CompletableFuture<JsonNode> future = worker.submit(request, message -> {
+            lastMessage.set(System.currentTimeMillis());
+            if (listener != null && message.has("batch_size")) {
+                listener.onMessage(message);
+            }
+        });
+        JsonNode response = awaitStreaming(worker, future, request.path("id").asLong(), lastMessage, cancelled, "Benchmark");
+        ObjectNode result = response.deepCopy();
+        result.put("load_ms", loadMs);
+        return result;
+    }
+
+    /**
+     * Wait for the final message of a streaming request, forwarding a cancel
+     * once cancelled turns true. Each message resets the clock, so only a
+     * stuck step times out.
+     */
+    private JsonNode awaitStreaming(PythonInferenceWorker worker, CompletableFuture<JsonNode> future, long requestId,
+                                    AtomicLong lastMessage, BooleanSupplier cancelled, String what) throws IOException {
+        boolean cancelSent = false;
+        while (true) {
+            try {
+                JsonNode response = future.get(BATCH_POLL_MS, TimeUnit.MILLISECONDS);
+                if (response.hasNonNull("error")) {
+                    throw new InferenceException(response.get("error").asText());
+                }
+                return response;
+            } catch (TimeoutException e) {
+                if (!cancelSent && cancelled != null && cancelled.getAsBoolean()) {
+                    worker.cancel(requestId);
+                    cancelSent = true;
+                }
+                if (System.currentTimeMillis() - lastMessage.get() > TimeUnit.SECONDS.toMillis(REQUEST_TIMEOUT_SECONDS)) {
+                    worker.shutdown();
+                    throw new IOException(what + " stalled for " + REQUEST_TIMEOUT_SECONDS + "s");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                worker.cancel(requestId);
+                throw new IOException(what + " was interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutMs = unit.toMillis(timeout);
+    }
+
+    /**
+     * Stop the worker serving a model, e.g. before the model file is deleted
+     */
+    public void shutdownWorkersForModel(String modelPath) {
+        List<PythonInferenceWorker> stopped = new ArrayList<>();
+        synchronized (workers) {
+            workers.entrySet().removeIf(entry -> {
+                if (entry.getValue().getModelPath().equals(modelPath)) {
+                    stopped.add(entry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+        stopped.forEach(PythonInferenceWorker::shutdown);
+    }
+
+    public void shutdownAll() {
+        List<PythonInferenceWorker> stopped;
+        synchronized (workers) {
+            stopped = new ArrayList<>(workers.values());
+            workers.clear();
+        }
+        stopped.forEach(PythonInferenceWorker::shutdown);
+    }
+
+    private void shutdownIdleWorkers() {
+        long now = System.currentTimeMillis();
+        List<PythonInferenceWorker> idle = new ArrayList<>();
+        synchronized (workers) {
+            workers.entrySet().removeIf(entry -> {
+                PythonInferenceWorker worker = entry.getValue();
+                boolean expired = !worker.isBusy() && now - worker.getLastUsed() > idleTimeoutMs;
+                if (expired) {
+                    idle.add(worker);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (PythonInferenceWorker worker : idle) {
+            System.out.println("[WORKER] Shutting down idle worker: " + worker.getModelPath());
+            worker.shutdown();
+        }
+    }
+
+    private String workerKey(List<String> pythonCommand, String modelPath) {
+        String canonicalModel;
+        try {
+            canonicalModel = new File(modelPath).getCanonicalPath();
+        } catch (IOException e) {
+            canonicalModel = new File(modelPath).getAbsolutePath();
+        }
+        return String.join(" ", pythonCommand) + "|" + canonicalModel;
+    }
+
+    /**
+     * Receives batch results as each chunk completes, on the worker's reader thread
+     */
+    public interface BatchListener {
+        void onResults(List<JsonNode> results, int completed, int total);
+    }
+
+    /**
+     * Error reported by the Python side for a specific request
+     */
+    public static class InferenceException extends IOException {
+        public InferenceException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import raven.yolo.utils.ModelConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures a model's load time, warm-up, latency percentiles, throughput
+ * and peak memory on a sample image set, and keeps the result in
+ * {@code <model>.benchmark.json} next to the model so formats of the same
+ * model can be compared later.
+ * <p>
+ * Each model is freshly loaded on the backend that runs it for inference:
+ * a new Python worker, or a new ONNX Runtime session; images are decoded once
+ * before timing, so latencies cover preprocessing, the model and NMS but
+ * not disk reads.
+ */
+public class ModelBenchmark {
+
+    public static final String FILE_SUFFIX = ".benchmark.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+        .enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Called on the benchmark thread as each batch size finishes
+     */
+    public interface Listener {
+        void onBatchSize(BatchStats stats);
+    }
+
+    private ModelBenchmark() {
+    }
+
+    /**
+     * Benchmark one model and save the result next to it. Returns null if
+     * cancelled before any batch size finished.
+     */
+    public static Result run(String modelPath, List<String> imagePaths, List<Integer> batchSizes,
+                             int warmup, int iterations, String projectPath,
+                             Listener listener, BooleanSupplier cancelled) throws IOException {
+        List<BatchStats> batches = new ArrayList<>();
+        JsonNode response = ModelConverter.runBenchmark(modelPath, imagePaths, batchSizes, warmup, iterations,
+            projectPath, message -> {
+                BatchStats stats = BatchStats.from(message);
+                batches.add(stats);
+                if (listener != null) {
+                    listener.onBatchSize(stats);
+                }
+            }, cancelled);
+        if (batches.isEmpty()) {
+            return null;
+        }
+
+        Result result = new Result();
+        result.modelPath = modelPath;
+        result.modelName = new File(modelPath).getName();
+        result.timestamp = System.currentTimeMillis();
+        result.loadMs = response.path("load_ms").asDouble();
+        result.peakRssMb = response.hasNonNull("peak_rss_mb") ? response.get("peak_rss_mb").asDouble() : null;
+        result.sampleImages = imagePaths.size();
+        result.warmup = warmup;
+        result.iterations = iterations;
+        result.complete = !response.path("cancelled").asBoolean();
+        result.host = System.getProperty("os.name") + " " + System.getProperty("os.arch")
+            + ", " + Runtime.getRuntime().availableProcessors() + " CPUs";
+        result.batches = batches;
+
+        save(result);
+        System.out.println("[BENCHMARK] " + result.modelName + ": " + result.getSummary());
+        return result;
+    }
+
+    public static File resultFile(String modelPath) {
+        return new File(modelPath + FILE_SUFFIX);
+    }
+
+    public static void save(Result result) throws IOException {
+        objectMapper.writeValue(resultFile(result.modelPath), result);
+    }
+
+    /**
+     * The stored result for a model, or null if it was never benchmarked or
+     * the model changed since
+     */
+    public static Result load(String modelPath) {
+        File file = resultFile(modelPath);
+        if (!file.isFile() || file.lastModified() < new File(modelPath).lastModified()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file, Result.class);
+        } catch (IOException e) {
+            System.err.println("[BENCHMARK] Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values
+     */
+    static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Result {
+        @JsonProperty("model_path")
+        private String modelPath;
+
+        @JsonProperty("model_name")
+        private String modelName;
+
+        @JsonProperty("timestamp")
+        private long timestamp;
+
+        @JsonProperty("load_ms")
+        private double loadMs;
+
+        @JsonProperty("peak_rss_mb")
+        private Double peakRssMb;
+
+        @JsonProperty("sample_images")
+        private int sampleImages;
+
+        @JsonProperty("warmup")
+        private int warmup;
+
+        @JsonProperty("iterations")
+        private int iterations;
+
+        @JsonProperty("complete")
+        private boolean complete;
+
+        @JsonProperty("host")
+        private String host;
+
+        @JsonProperty("batches")
+        private List<BatchStats> batches = new ArrayList<>();
+
+        public String getModelPath() { return modelPath; }
+        public String getModelName() { return modelName; }
+        public long getTimestamp() { return timestamp; }
+        public double getLoadMs() { return loadMs; }
+
+        /**
+         * Peak resident memory of the process running the model, or null if the
+         * platform doesn't report it
+         */
+        public Double getPeakRssMb() { return peakRssMb; }
+        public int getSampleImages() { return sampleImages; }
+        public int getWarmup() { return warmup; }
+        public int getIterations() { return iterations; }
+
+        /**
+         * False if cancelled partway; batches then holds the sizes that finished
+         */
+        public boolean isComplete() { return complete; }
+        public String getHost() { return host; }
+        public List<BatchStats> getBatches() { return batches; }
+
+        /**
+         * Single-image latency if measured, else the smallest batch, plus the best throughput
+         */
+        @JsonIgnore
+        public String getSummary() {
+            if (batches.isEmpty()) {
+                return "";
+            }
+            BatchStats smallest = batches.get(0);
+            double bestThroughput = 0;
+            for (BatchStats stats : batches) {
+                if (stats.batchSize < smallest.batchSize) {
+                    smallest = stats;
+                }
+                bestThroughput = Math.max(bestThroughput, stats.imagesPerSecond);
+            }
+            String latency = String.format("p50 %.1f ms", smallest.p50Ms)
+                + (smallest.batchSize > 1 ? " @" + smallest.batchSize : "");
+            return latency + String.format(", %.1f img/s", bestThroughput);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class BatchStats {
+        @JsonProperty("batch_size")
+        private int batchSize;
+
+        /** Duration of the first warm-up call, which includes lazy initialization */
+        @JsonProperty("first_call_ms")
+        private double firstCallMs;
+
+        @JsonProperty("warmup_ms")
+        private double warmupMs;
+
+        @JsonProperty("mean_ms")
+        private double meanMs;
+
+        @JsonProperty("p50_ms")
+        private double p50Ms;
+
+        @JsonProperty("p95_ms")
+        private double p95Ms;
+
+        @JsonProperty("p99_ms")
+        private double p99Ms;
+
+        @JsonProperty("images_per_second")
+        private double imagesPerSecond;
+
+        static BatchStats from(JsonNode message) {
+            BatchStats stats = new BatchStats();
+            stats.batchSize = message.path("batch_size").asInt(1);
+
+            JsonNode warmup = message.path("warmup_ms");
+            for (JsonNode value : warmup) {
+                stats.warmupMs += value.asDouble();
+            }
+            stats.firstCallMs = warmup.size() > 0 ? warmup.get(0).asDouble() : 0;
+
+            JsonNode latencies = message.path("latencies_ms");
+            double[] sorted = new double[latencies.size()];
+            double total = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i).asDouble();
+                total += sorted[i];
+            }
+            Arrays.sort(sorted);
+            stats.meanMs = sorted.length > 0 ? total / sorted.length : 0;
+            stats.p50Ms = percentile(sorted, 50);
+            stats.p95Ms = percentile(sorted, 95);
+            stats.p99Ms = percentile(sorted, 99);
+            stats.imagesPerSecond = stats.meanMs > 0 ? stats.batchSize * 1000.0 / stats.meanMs : 0;
+            return stats;
+        }
+
+        public int getBatchSize() { return batchSize; }
+        public double getFirstCallMs() { return firstCallMs; }
+
+        /** Total time spent warming up */
+        public double getWarmupMs() { return warmupMs; }
+        public double getMeanMs() { return meanMs; }
+        public double getP50Ms() { return p50Ms; }
+        public double getP95Ms() { return p95Ms; }
+        public double getP99Ms() { return p99Ms; }
+        public double getImagesPerSecond() { return imagesPerSecond; }
+    }
+}
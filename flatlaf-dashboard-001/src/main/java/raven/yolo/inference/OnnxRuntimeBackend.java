@@ -0,0 +1,482 @@
+package raven.yolo.inference;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import raven.yolo.utils.DetectionArrays;
+import raven.yolo.utils.DetectionPostProcessor;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs YOLOv8 detection models exported to ONNX in-process with ONNX
+ * Runtime on the CPU, so they need neither Python nor a worker process.
+ * <p>
+ * Images are letterboxed to the model's input size the way Ultralytics
+ * does it (aspect-preserving resize, centered, padded with gray 114) and
+ * passed as RGB in [0, 1]. The raw [1, 4 + classes, anchors] output is
+ * decoded into boxes, mapped back to source pixels and reduced with
+ * class-aware NMS. Class names come from the "names" metadata Ultralytics
+ * writes into exported models.
+ * <p>
+ * Sessions stay loaded per model and are reloaded when the file changes.
+ * A replaced session is closed under its model's monitor, so it is never
+ * closed during a run; a run that finds its model closed retries on the
+ * reloaded one.
+ */
+public class OnnxRuntimeBackend implements InferenceBackend {
+
+    public static final String NAME = "ONNX Runtime (CPU)";
+
+    private static final int DEFAULT_INPUT_SIZE = 640;
+    private static final int PAD_VALUE = 114;
+    /** Ultralytics caps the candidates entering NMS */
+    private static final int MAX_NMS_CANDIDATES = 30000;
+    private static final Pattern NAME_ENTRY = Pattern.compile("(\\d+)\\s*:\\s*(['\"])(.*?)\\2");
+
+    private static OnnxRuntimeBackend instance;
+    private static Boolean available;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, LoadedModel> models = new HashMap<>();
+
+    private OnnxRuntimeBackend() {
+    }
+
+    public static synchronized OnnxRuntimeBackend getInstance() {
+        if (instance == null) {
+            instance = new OnnxRuntimeBackend();
+        }
+        return instance;
+    }
+
+    /**
+     * True if the native runtime loads on this platform
+     */
+    public static synchronized boolean isAvailable() {
+        if (available == null) {
+            try {
+                OrtEnvironment.getEnvironment();
+                available = true;
+            } catch (Throwable e) {
+                System.err.println("[INFERENCE] ONNX Runtime is not available: " + e);
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(String modelPath) {
+        return modelPath.toLowerCase().endsWith(".onnx") && isAvailable();
+    }
+
+    @Override
+    public List<JsonNode> infer(String modelPath, List<String> imagePaths, double confidence,
+                                double iou, int maxDetections) throws IOException {
+        List<JsonNode> results = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            BufferedImage source = read(imagePath);
+            results.add(withModel(modelPath, model -> {
+                ObjectNode result = objectMapper.createObjectNode();
+                result.put("image", imagePath);
+                result.set("detections", model.detect(source, (float) confidence, (float) iou, maxDetections));
+                result.putArray("image_shape").add(source.getHeight()).add(source.getWidth());
+                return result;
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * Tiles are cropped from the image decoded once and run one at a time;
+     * exported models take a single image per pass, so batchSize is not used
+     */
+    @Override
+    public JsonNode inferTiles(String modelPath, String imagePath, List<int[]> tiles, double confidence,
+                               double iou, int maxDetections, int batchSize) throws IOException {
+        BufferedImage source = read(imagePath);
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putArray("image_shape").add(source.getHeight()).add(source.getWidth());
+        ArrayNode results = response.putArray("tiles");
+        for (int[] tile : tiles) {
+            int x = Math.max(0, Math.min(tile[0], source.getWidth() - 1));
+            int y = Math.max(0, Math.min(tile[1], source.getHeight() - 1));
+            BufferedImage crop = source.getSubimage(x, y,
+                Math.min(tile[2], source.getWidth() - x), Math.min(tile[3], source.getHeight() - y));
+            ArrayNode detections = withModel(modelPath,
+                model -> model.detect(crop, (float) confidence, (float) iou, maxDetections));
+            results.add(detections);
+        }
+        return response;
+    }
+
+    /**
+     * Same measurements as the Python worker's benchmark; peak memory is the
+     * peak resident size of this process where the OS reports it
+     */
+    @Override
+    public JsonNode benchmark(String modelPath, List<String> imagePaths, List<Integer> batchSizes, int warmup,
+                              int iterations, PythonInferenceWorker.MessageListener listener,
+                              BooleanSupplier cancelled) throws IOException {
+        if (imagePaths.isEmpty()) {
+            throw new InferenceWorkerManager.InferenceException("No sample images");
+        }
+        // A session that already served requests would hide load time
+        unload(modelPath);
+        long loadStarted = System.nanoTime();
+        load(modelPath);
+        double loadMs = (System.nanoTime() - loadStarted) / 1_000_000.0;
+
+        // Decode once up front so timings cover the model, not the disk
+        List<BufferedImage> images = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            images.add(read(imagePath));
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        for (int size : batchSizes) {
+            size = Math.max(1, size);
+            List<BufferedImage> batch = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(images.get(i % images.size()));
+            }
+            ArrayNode warmupMs = objectMapper.createArrayNode();
+            for (int i = 0; i < Math.max(0, warmup); i++) {
+                warmupMs.add(timeBatch(modelPath, batch));
+            }
+            ArrayNode latencies = objectMapper.createArrayNode();
+            for (int i = 0; i < Math.max(1, iterations); i++) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    response.put("cancelled", true);
+                    putPeakRss(response);
+                    response.put("load_ms", loadMs);
+                    return response;
+                }
+                latencies.add(timeBatch(modelPath, batch));
+            }
+            ObjectNode message = objectMapper.createObjectNode();
+            message.put("batch_size", size);
+            message.set("warmup_ms", warmupMs);
+            message.set("latencies_ms", latencies);
+            putPeakRss(message);
+            if (listener != null) {
+                listener.onMessage(message);
+            }
+        }
+        putPeakRss(response);
+        response.put("load_ms", loadMs);
+        return response;
+    }
+
+    /**
+     * Release the session of a model, e.g. before the file is deleted
+     */
+    public void unload(String modelPath) {
+        LoadedModel model;
+        synchronized (models) {
+            model = models.remove(modelPath);
+        }
+        if (model != null) {
+            model.close();
+        }
+    }
+
+    /**
+     * Run a task on the model's current session
+     */
+    private <T> T withModel(String modelPath, ModelTask<T> task) throws IOException {
+        while (true) {
+            LoadedModel model = load(modelPath);
+            synchronized (model) {
+                if (!model.closed) {
+                    return task.run(model);
+                }
+            }
+            // Replaced by a concurrent reload since it was looked up
+        }
+    }
+
+    private LoadedModel load(String modelPath) throws IOException {
+        LoadedModel replaced = null;
+        try {
+            synchronized (models) {
+                LoadedModel model = models.get(modelPath);
+                if (model != null && model.lastModified == new File(modelPath).lastModified()) {
+                    return model;
+                }
+                if (model != null) {
+                    System.out.println("[INFERENCE] Reloading changed model: " + modelPath);
+                    replaced = models.remove(modelPath);
+                }
+                try {
+                    long start = System.currentTimeMillis();
+                    model = new LoadedModel(modelPath);
+                    models.put(modelPath, model);
+                    System.out.println("[INFERENCE] Loaded " + modelPath + " in ONNX Runtime ("
+                        + model.inputWidth + "x" + model.inputHeight + ", " + model.classNames.size()
+                        + " classes) in " + (System.currentTimeMillis() - start) + " ms");
+                    return model;
+                } catch (OrtException e) {
+                    throw new IOException("ONNX Runtime cannot load " + new File(modelPath).getName() + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            if (replaced != null) {
+                // Waits for a run in progress on the old session
+                replaced.close();
+            }
+        }
+    }
+
+    private double timeBatch(String modelPath, List<BufferedImage> batch) throws IOException {
+        long started = System.nanoTime();
+        for (BufferedImage image : batch) {
+            withModel(modelPath, model -> model.detect(image, 0.25f, (float) InferenceWorkerManager.DEFAULT_IOU,
+                InferenceWorkerManager.DEFAULT_MAX_DETECTIONS));
+        }
+        return (System.nanoTime() - started) / 1_000_000.0;
+    }
+
+    private static BufferedImage read(String imagePath) throws IOException {
+        BufferedImage source = ImageIO.read(new File(imagePath));
+        if (source == null) {
+            throw new InferenceWorkerManager.InferenceException("Cannot read image: " + imagePath);
+        }
+        return source;
+    }
+
+    /**
+     * Peak resident set of this process from /proc on Linux; left null
+     * elsewhere, as the Python worker does when it can't tell
+     */
+    private static void putPeakRss(ObjectNode message) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    message.put("peak_rss_mb", Long.parseLong(line.replaceAll("\\D", "")) / 1024.0);
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux
+        }
+        message.putNull("peak_rss_mb");
+    }
+
+    private interface ModelTask<T> {
+        T run(LoadedModel model) throws IOException;
+    }
+
+    /**
+     * Parse Ultralytics' "names" metadata, a Python dict literal such as
+     * {0: 'person', 1: 'bicycle'}
+     */
+    static Map<Integer, String> parseClassNames(String names) {
+        Map<Integer, String> classNames = new HashMap<>();
+        if (names != null) {
+            Matcher matcher = NAME_ENTRY.matcher(names);
+            while (matcher.find()) {
+                classNames.put(Integer.parseInt(matcher.group(1)), matcher.group(3));
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * One session plus reusable buffers; runs are serialized per model, and
+     * the session is closed under the same monitor
+     */
+    private class LoadedModel {
+        final long lastModified;
+        final OrtSession session;
+        final String inputName;
+        final int inputWidth;
+        final int inputHeight;
+        final Map<Integer, String> classNames;
+
+        final BufferedImage canvas;
+        final FloatBuffer input;
+        final DetectionArrays candidates = new DetectionArrays(256);
+        final DetectionPostProcessor postProcessor = new DetectionPostProcessor().setTopK(MAX_NMS_CANDIDATES);
+        boolean closed;
+
+        LoadedModel(String modelPath) throws OrtException {
+            lastModified = new File(modelPath).lastModified();
+            OrtEnvironment environment = OrtEnvironment.getEnvironment();
+            try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+                options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+                session = environment.createSession(modelPath, options);
+            }
+
+            Map.Entry<String, NodeInfo> inputInfo = session.getInputInfo().entrySet().iterator().next();
+            inputName = inputInfo.getKey();
+            long[] shape = ((TensorInfo) inputInfo.getValue().getInfo()).getShape();
+            // Dynamic axes are reported as -1
+            inputHeight = shape.length == 4 && shape[2] > 0 ? (int) shape[2] : DEFAULT_INPUT_SIZE;
+            inputWidth = shape.length == 4 && shape[3] > 0 ? (int) shape[3] : DEFAULT_INPUT_SIZE;
+            classNames = parseClassNames(session.getMetadata().getCustomMetadata().get("names"));
+
+            canvas = new BufferedImage(inputWidth, inputHeight, BufferedImage.TYPE_INT_RGB);
+            input = ByteBuffer.allocateDirect(3 * inputWidth * inputHeight * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+
+        synchronized ArrayNode detect(BufferedImage source, float confidence, float iou, int maxDetections) throws IOException {
+            int width = source.getWidth();
+            int height = source.getHeight();
+
+            // Letterbox into the reused canvas
+            float ratio = Math.min((float) inputWidth / width, (float) inputHeight / height);
+            int scaledWidth = Math.round(width * ratio);
+            int scaledHeight = Math.round(height * ratio);
+            int padX = (inputWidth - scaledWidth) / 2;
+            int padY = (inputHeight - scaledHeight) / 2;
+            Graphics2D g2d = canvas.createGraphics();
+            g2d.setColor(new Color(PAD_VALUE, PAD_VALUE, PAD_VALUE));
+            g2d.fillRect(0, 0, inputWidth, inputHeight);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(source, padX, padY, scaledWidth, scaledHeight, null);
+            g2d.dispose();
+
+            // Packed RGB pixels to planar float RGB in [0, 1]
+            int[] pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+            int plane = inputWidth * inputHeight;
+            input.clear();
+            for (int i = 0; i < plane; i++) {
+                int pixel = pixels[i];
+                input.put(i, ((pixel >> 16) & 0xFF) / 255f);
+                input.put(plane + i, ((pixel >> 8) & 0xFF) / 255f);
+                input.put(2 * plane + i, (pixel & 0xFF) / 255f);
+            }
+
+            candidates.clear();
+            OrtEnvironment environment = OrtEnvironment.getEnvironment();
+            try (OnnxTensor tensor = OnnxTensor.createTensor(environment, input, new long[]{1, 3, inputHeight, inputWidth});
+                 OrtSession.Result output = session.run(Map.of(inputName, tensor))) {
+                OnnxTensor prediction = (OnnxTensor) output.get(0);
+                decode(prediction.getFloatBuffer(), prediction.getInfo().getShape(), confidence,
+                    ratio, padX, padY, width, height);
+            } catch (OrtException e) {
+                throw new InferenceWorkerManager.InferenceException("ONNX Runtime: " + e.getMessage());
+            }
+
+            int kept = postProcessor.setConfidenceThreshold(confidence)
+                .setIouThreshold(iou)
+                .setMaxDetections(maxDetections)
+                .process(candidates);
+            return toDetections(kept);
+        }
+
+        /**
+         * YOLOv8 heads output [1, 4 + classes, anchors] with boxes as center
+         * and size; some exports transpose the last two axes
+         */
+        private void decode(FloatBuffer data, long[] shape, float confidence,
+                            float ratio, int padX, int padY, int width, int height) {
+            if (shape.length != 3) {
+                throw new IllegalStateException("Unexpected output shape " + Arrays.toString(shape));
+            }
+            boolean channelsFirst = shape[1] < shape[2];
+            int channels = (int) (channelsFirst ? shape[1] : shape[2]);
+            int anchors = (int) (channelsFirst ? shape[2] : shape[1]);
+            int classes = channels - 4;
+            int channelStride = channelsFirst ? anchors : 1;
+            int anchorStride = channelsFirst ? 1 : channels;
+
+            for (int a = 0; a < anchors; a++) {
+                int base = a * anchorStride;
+                int bestClass = -1;
+                float bestScore = confidence;
+                for (int c = 0; c < classes; c++) {
+                    float score = data.get(base + (4 + c) * channelStride);
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        bestClass = c;
+                    }
+                }
+                if (bestClass < 0) {
+                    continue;
+                }
+
+                float cx = data.get(base);
+                float cy = data.get(base + channelStride);
+                float w = data.get(base + 2 * channelStride);
+                float h = data.get(base + 3 * channelStride);
+                float x1 = clamp((cx - w / 2 - padX) / ratio, width);
+                float y1 = clamp((cy - h / 2 - padY) / ratio, height);
+                float x2 = clamp((cx + w / 2 - padX) / ratio, width);
+                float y2 = clamp((cy + h / 2 - padY) / ratio, height);
+                candidates.add(bestClass, classNames.getOrDefault(bestClass, "class_" + bestClass), bestScore,
+                    x1, y1, x2 - x1, y2 - y1);
+            }
+        }
+
+        private ArrayNode toDetections(int kept) {
+            ArrayNode detections = objectMapper.createArrayNode();
+            int[] indices = postProcessor.getKeptIndices();
+            float[] x1 = candidates.getX1();
+            float[] y1 = candidates.getY1();
+            float[] x2 = candidates.getX2();
+            float[] y2 = candidates.getY2();
+            for (int k = 0; k < kept; k++) {
+                int i = indices[k];
+                int classId = candidates.getClassIds()[i];
+                ObjectNode detection = detections.addObject();
+                detection.put("class_id", classId);
+                detection.put("class_name", candidates.getClassName(classId));
+                detection.put("confidence", candidates.getScores()[i]);
+                detection.putArray("bbox").add(x1[i]).add(y1[i]).add(x2[i] - x1[i]).add(y2[i] - y1[i]);
+            }
+            return detections;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                session.close();
+            } catch (OrtException e) {
+                System.err.println("[INFERENCE] Error closing ONNX session: " + e.getMessage());
+            }
+        }
+    }
+
+    private static float clamp(float value, int max) {
+        return Math.max(0f, Math.min(max, value));
+    }
+}
@@ -0,0 +1,357 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import raven.yolo.manager.ProjectAutosave;
+import raven.yolo.manager.ProjectManager;
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+import raven.yolo.utils.ModelConverter;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Proposes annotations for a project's unlabeled images by running a model
+ * over them in batches. Detections are mapped onto project classes by name
+ * and attached in memory as each batch arrives. The proposals of each
+ * window are saved in the background once the window is done, so a crash
+ * loses at most one window, and the project is saved again when the job
+ * pauses, is cancelled or finishes. Images the model finds nothing in stay
+ * unlabeled.
+ * <p>
+ * Project changes and listener calls happen on the event dispatch thread.
+ */
+public class PreAnnotationJob {
+
+    public enum State { IDLE, RUNNING, PAUSED, CANCELLED, COMPLETED, FAILED }
+
+    /**
+     * Called on the event dispatch thread
+     */
+    public interface Listener {
+        void onProgress(int processed, int total, int annotatedImages, int boxes);
+        void onStateChanged(State state, String message);
+    }
+
+    /** Images per worker request; pause and cancel take effect between batches within it */
+    private static final int WINDOW_SIZE = 64;
+
+    private final YoloProject project;
+    private final String modelPath;
+    private final String pythonProjectPath;
+    private final Listener listener;
+
+    private double confidence = 0.25;
+    private int batchSize = 8;
+    private boolean addMissingClasses;
+
+    private final Object pauseLock = new Object();
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+    private volatile State state = State.IDLE;
+
+    private final List<YoloImage> pending = new ArrayList<>();
+    private final Set<String> processedPaths = ConcurrentHashMap.newKeySet();
+    private int total;
+    private int processed;
+    private int annotatedImages;
+    private int boxes;
+    // Images given proposals since the last save; event dispatch thread only
+    private int unsavedImages;
+    private final Map<String, Integer> skippedClasses = new HashMap<>();
+
+    public PreAnnotationJob(YoloProject project, String modelPath, String pythonProjectPath, Listener listener) {
+        this.project = project;
+        this.modelPath = modelPath;
+        this.pythonProjectPath = pythonProjectPath;
+        this.listener = listener;
+    }
+
+    public void setConfidence(double confidence) { this.confidence = confidence; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    /**
+     * Add model classes the project doesn't have, instead of skipping their detections
+     */
+    public void setAddMissingClasses(boolean addMissingClasses) { this.addMissingClasses = addMissingClasses; }
+
+    public State getState() { return state; }
+
+    /**
+     * Classes the model detected that the project doesn't have, with counts
+     */
+    public Map<String, Integer> getSkippedClasses() { return skippedClasses; }
+
+    /**
+     * Unlabeled images whose files exist; call on the event dispatch thread
+     */
+    public static List<YoloImage> findCandidates(YoloProject project) {
+        List<YoloImage> candidates = new ArrayList<>();
+        for (YoloImage image : project.getImages()) {
+            if (!image.isLabeled() && image.getPath() != null && new File(image.getPath()).isFile()) {
+                candidates.add(image);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Start on a background thread; call on the event dispatch thread
+     */
+    public void start() {
+        if (state != State.IDLE) {
+            throw new IllegalStateException("Job already started");
+        }
+        pending.addAll(findCandidates(project));
+        total = pending.size();
+        setState(State.RUNNING, "Loading model...");
+
+        Thread thread = new Thread(this::run, "pre-annotation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop after the current batch and save what was proposed so far
+     */
+    public void pause() {
+        if (state == State.RUNNING) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stop after the current batch; proposals made so far are kept and saved
+     */
+    public void cancel() {
+        synchronized (pauseLock) {
+            cancelled = true;
+            pauseLock.notifyAll();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!cancelled) {
+                pending.removeIf(image -> processedPaths.contains(image.getPath()));
+                if (pending.isEmpty()) {
+                    break;
+                }
+                if (paused) {
+                    commit(State.PAUSED, "Paused - " + processed + " of " + total + " images done");
+                    waitWhilePaused();
+                    if (cancelled) {
+                        break;
+                    }
+                    onEdt(() -> setState(State.RUNNING, "Resuming..."));
+                }
+
+                List<String> window = new ArrayList<>();
+                for (int i = 0; i < pending.size() && window.size() < WINDOW_SIZE; i++) {
+                    window.add(pending.get(i).getPath());
+                }
+                ModelConverter.runBatchInference(modelPath, window, confidence, batchSize, pythonProjectPath,
+                    (results, completed, windowTotal) -> {
+                        for (JsonNode result : results) {
+                            processedPaths.add(result.path("image").asText());
+                        }
+                        SwingUtilities.invokeLater(() -> applyResults(results));
+                    },
+                    () -> cancelled || paused);
+                if (!cancelled && !paused) {
+                    // A window that ran to the end is done even if the model skipped an image
+                    processedPaths.addAll(window);
+                    // Queued behind the window's results
+                    SwingUtilities.invokeLater(this::saveWindow);
+                }
+            }
+
+            if (cancelled) {
+                commit(State.CANCELLED, "Cancelled - proposals for " + annotatedImages + " images kept");
+            } else {
+                commit(State.COMPLETED, "Done - " + boxes + " boxes proposed on " + annotatedImages + " of " + total + " images");
+            }
+        } catch (IOException e) {
+            System.err.println("[PRE-ANNOTATE] " + e.getMessage());
+            commit(State.FAILED, "Failed: " + e.getMessage());
+        }
+    }
+
+    private void waitWhilePaused() {
+        synchronized (pauseLock) {
+            while (paused && !cancelled) {
+                try {
+                    pauseLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert one batch of results to annotations; runs on the event dispatch thread
+     */
+    private void applyResults(List<JsonNode> results) {
+        if (ProjectManager.getInstance().getCurrentProject() != project) {
+            cancelled = true;
+            return;
+        }
+
+        Map<String, Integer> classIndex = new HashMap<>();
+        List<String> classes = project.getClasses();
+        for (int i = 0; i < classes.size(); i++) {
+            classIndex.putIfAbsent(normalizeClassName(classes.get(i)), i);
+        }
+
+        for (JsonNode result : results) {
+            processed++;
+            YoloImage image = project.findImageByPath(result.path("image").asText());
+            if (image == null || image.isLabeled() || result.hasNonNull("error")) {
+                // Removed, labeled by hand meanwhile, or unreadable
+                continue;
+            }
+
+            JsonNode shape = result.path("image_shape");
+            double imageHeight = shape.size() > 1 ? shape.get(0).asDouble() : image.getHeight();
+            double imageWidth = shape.size() > 1 ? shape.get(1).asDouble() : image.getWidth();
+            if (imageWidth <= 0 || imageHeight <= 0) {
+                continue;
+            }
+
+            int added = 0;
+            for (JsonNode detection : result.path("detections")) {
+                String className = detection.path("class_name").asText("class_" + detection.path("class_id").asInt());
+                Integer classId = classIndex.get(normalizeClassName(className));
+                if (classId == null) {
+                    if (!addMissingClasses) {
+                        skippedClasses.merge(className, 1, Integer::sum);
+                        continue;
+                    }
+                    project.addClass(className);
+                    classId = project.getClasses().size() - 1;
+                    classIndex.put(normalizeClassName(className), classId);
+                }
+
+                JsonNode bbox = detection.path("bbox");
+                if (bbox.size() < 4) {
+                    continue;
+                }
+                double x = clamp(bbox.get(0).asDouble() / imageWidth);
+                double y = clamp(bbox.get(1).asDouble() / imageHeight);
+                double right = clamp((bbox.get(0).asDouble() + bbox.get(2).asDouble()) / imageWidth);
+                double bottom = clamp((bbox.get(1).asDouble() + bbox.get(3).asDouble()) / imageHeight);
+                if (right <= x || bottom <= y) {
+                    continue;
+                }
+                image.addAnnotation(new YoloAnnotation(classId, project.getClasses().get(classId),
+                    (x + right) / 2, (y + bottom) / 2, right - x, bottom - y));
+                added++;
+            }
+            if (added > 0) {
+                annotatedImages++;
+                unsavedImages++;
+                boxes += added;
+            }
+        }
+        listener.onProgress(processed, total, annotatedImages, boxes);
+    }
+
+    /**
+     * Save the proposals of a finished window in the background; runs on the
+     * event dispatch thread
+     */
+    private void saveWindow() {
+        if (unsavedImages == 0 || ProjectManager.getInstance().getCurrentProject() != project) {
+            return;
+        }
+        int images = unsavedImages;
+        unsavedImages = 0;
+        ProjectAutosave.getInstance().saveNow().thenAccept(report ->
+            System.out.println("[PRE-ANNOTATE] Saved proposals for " + images + " images (" + report + ")"));
+    }
+
+    /**
+     * Save everything proposed so far in one pass, then report the new state.
+     * Runs on the job's thread, which waits for the write so that states
+     * are reported in order; the event dispatch thread only takes the
+     * snapshot.
+     */
+    private void commit(State newState, String message) {
+        AtomicReference<CompletableFuture<ProjectManager.SaveReport>> save = new AtomicReference<>();
+        onEdt(() -> {
+            if (ProjectManager.getInstance().getCurrentProject() == project) {
+                unsavedImages = 0;
+                save.set(ProjectManager.getInstance().commitAnnotationChanges());
+            }
+        });
+
+        String status = message;
+        if (save.get() == null) {
+            if (newState != State.FAILED) {
+                status = "Project was closed; unsaved proposals were discarded";
+            }
+        } else {
+            try {
+                System.out.println("[PRE-ANNOTATE] " + message + " (" + save.get().join() + ")");
+            } catch (CompletionException e) {
+                Throwable cause = e;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                System.err.println("[PRE-ANNOTATE] Could not save proposals: " + cause.getMessage());
+                status = message + " - save failed: " + cause.getMessage();
+            }
+        }
+        String finalStatus = status;
+        onEdt(() -> setState(newState, finalStatus));
+    }
+
+    private void setState(State newState, String message) {
+        state = newState;
+        listener.onStateChanged(newState, message);
+    }
+
+    private static void onEdt(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            System.err.println("[PRE-ANNOTATE] " + e.getCause());
+        }
+    }
+
+    private static String normalizeClassName(String name) {
+        return name.trim().toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
@@ -0,0 +1,59 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs any Ultralytics-loadable model in a persistent Python worker of the
+ * given environment
+ */
+public class PythonInferenceBackend implements InferenceBackend {
+
+    public static final String NAME = "Python (Ultralytics)";
+
+    private final List<String> pythonCommand;
+    private final File workingDir;
+
+    public PythonInferenceBackend(List<String> pythonCommand, File workingDir) {
+        this.pythonCommand = pythonCommand;
+        this.workingDir = workingDir;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(String modelPath) {
+        String lower = modelPath.toLowerCase();
+        return lower.endsWith(".pt") || lower.endsWith(".onnx")
+            || lower.endsWith(".engine") || lower.endsWith(".torchscript");
+    }
+
+    @Override
+    public List<JsonNode> infer(String modelPath, List<String> imagePaths, double confidence,
+                                double iou, int maxDetections) throws IOException {
+        return InferenceWorkerManager.getInstance().infer(pythonCommand, modelPath, workingDir,
+            imagePaths, confidence, iou, maxDetections);
+    }
+
+    @Override
+    public JsonNode inferTiles(String modelPath, String imagePath, List<int[]> tiles, double confidence,
+                               double iou, int maxDetections, int batchSize) throws IOException {
+        return InferenceWorkerManager.getInstance().inferTiles(pythonCommand, modelPath, workingDir,
+            imagePath, tiles, confidence, iou, maxDetections, batchSize);
+    }
+
+    @Override
+    public JsonNode benchmark(String modelPath, List<String> imagePaths, List<Integer> batchSizes, int warmup,
+                              int iterations, PythonInferenceWorker.MessageListener listener,
+                              BooleanSupplier cancelled) throws IOException {
+        return InferenceWorkerManager.getInstance().benchmark(pythonCommand, modelPath, workingDir,
+            imagePaths, batchSizes, warmup, iterations, listener, cancelled);
+    }
+}
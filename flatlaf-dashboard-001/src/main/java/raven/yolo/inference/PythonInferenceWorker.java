@@ -0,0 +1,553 @@
+package raven.yolo.inference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived Python process that keeps one YOLO model resident and answers
+ * line-delimited JSON requests over stdin/stdout.
+ *
+ * Every request carries an "id"; the worker answers with one or more lines
+ * carrying the same id, the last of which has "done": true.
+ */
+public class PythonInferenceWorker {
+
+    /**
+     * Receives every message the worker sends for a request, including the final one
+     */
+    public interface MessageListener {
+        void onMessage(JsonNode message);
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<String> pythonCommand;
+    private final String modelPath;
+    private final File workingDir;
+    private final long modelLastModified;
+
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    private final CompletableFuture<JsonNode> readyFuture = new CompletableFuture<>();
+
+    private volatile Process process;
+    private BufferedWriter stdin;
+    // Set once by shutdown(); a stopped worker is not started again
+    private boolean stopped;
+    private File scriptFile;
+    private volatile long lastUsed;
+    private volatile JsonNode modelInfo;
+
+    public PythonInferenceWorker(List<String> pythonCommand, String modelPath, File workingDir) {
+        this.pythonCommand = new ArrayList<>(pythonCommand);
+        this.modelPath = modelPath;
+        this.workingDir = workingDir;
+        this.modelLastModified = new File(modelPath).lastModified();
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Start the worker process and block until the model is loaded. The
+     * wait happens outside the lock, so {@link #shutdown()} is not held up
+     * by a slow model load.
+     */
+    public void start(long timeout, TimeUnit unit) throws IOException {
+        boolean launched;
+        synchronized (this) {
+            if (stopped) {
+                throw new IOException("Inference worker was shut down");
+            }
+            launched = process == null;
+            if (launched) {
+                launch();
+            }
+        }
+
+        try {
+            modelInfo = readyFuture.get(timeout, unit);
+            if (launched) {
+                System.out.println("[WORKER] Model loaded: " + modelPath);
+            }
+        } catch (TimeoutException e) {
+            shutdown();
+            throw new IOException("Inference worker did not become ready within " + unit.toSeconds(timeout) + "s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdown();
+            throw new IOException("Interrupted while starting inference worker", e);
+        } catch (ExecutionException e) {
+            shutdown();
+            throw new IOException("Inference worker failed to start: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void launch() throws IOException {
+        scriptFile = File.createTempFile("yolo_worker_", ".py");
+        scriptFile.deleteOnExit();
+        java.nio.file.Files.writeString(scriptFile.toPath(), WORKER_SCRIPT, StandardCharsets.UTF_8);
+
+        List<String> command = new ArrayList<>(pythonCommand);
+        command.add("-u");
+        command.add(scriptFile.getAbsolutePath());
+        command.add(modelPath);
+
+        System.out.println("[WORKER] Starting inference worker: " + command);
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        if (workingDir != null && workingDir.isDirectory()) {
+            pb.directory(workingDir);
+        }
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        process = pb.start();
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+        Thread stdoutThread = new Thread(this::readMessages, "inference-worker-stdout");
+        stdoutThread.setDaemon(true);
+        stdoutThread.start();
+
+        Thread stderrThread = new Thread(this::drainLog, "inference-worker-stderr");
+        stderrThread.setDaemon(true);
+        stderrThread.start();
+    }
+
+    /**
+     * Send a request and return the future of its final message. The listener,
+     * if given, receives every intermediate message as it arrives.
+     */
+    public CompletableFuture<JsonNode> submit(ObjectNode request, MessageListener listener) throws IOException {
+        long id = nextRequestId.getAndIncrement();
+        request.put("id", id);
+
+        PendingRequest pendingRequest = new PendingRequest(listener);
+        pending.put(id, pendingRequest);
+        lastUsed = System.currentTimeMillis();
+
+        try {
+            String line = objectMapper.writeValueAsString(request);
+            synchronized (this) {
+                if (process == null || !process.isAlive()) {
+                    throw new IOException("Inference worker is not running");
+                }
+                stdin.write(line);
+                stdin.write('\n');
+                stdin.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            throw e;
+        }
+
+        return pendingRequest.future;
+    }
+
+    /**
+     * Send a request and wait for its final message
+     */
+    public JsonNode request(ObjectNode request, long timeout, TimeUnit unit) throws IOException {
+        CompletableFuture<JsonNode> future = submit(request, null);
+        try {
+            return future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            // A hung worker cannot be trusted with the next request either
+            shutdown();
+            throw new IOException("Inference request timed out after " + unit.toSeconds(timeout) + "s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Inference request was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Ask the worker to stop a streaming request after its current chunk;
+     * the request still completes with a final "done" message
+     */
+    public void cancel(long requestId) throws IOException {
+        synchronized (this) {
+            if (process == null || !process.isAlive()) {
+                return;
+            }
+            stdin.write("{\"cmd\":\"cancel\",\"target\":" + requestId + "}\n");
+            stdin.flush();
+        }
+    }
+
+    public ObjectNode newRequest(String cmd) {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("cmd", cmd);
+        return request;
+    }
+
+    public boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * True once a started process has died, as opposed to not started yet
+     */
+    public boolean hasExited() {
+        return process != null && !process.isAlive();
+    }
+
+    /**
+     * True if the model file changed on disk since this worker loaded it
+     */
+    public boolean isStale() {
+        return new File(modelPath).lastModified() != modelLastModified;
+    }
+
+    public boolean isBusy() {
+        return !pending.isEmpty();
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    /**
+     * Model metadata reported by the worker on startup (class names)
+     */
+    public JsonNode getModelInfo() {
+        return modelInfo;
+    }
+
+    /**
+     * Ask the worker to exit, then kill it if it does not go quietly
+     */
+    public synchronized void shutdown() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        // Wakes a start() still waiting for the model
+        boolean loading = readyFuture.completeExceptionally(new IOException("Inference worker was shut down"));
+        if (process == null) {
+            return;
+        }
+        try {
+            if (process.isAlive() && loading) {
+                // The script only reads commands once the model is loaded
+                process.destroyForcibly();
+            } else if (process.isAlive()) {
+                stdin.write("{\"cmd\":\"shutdown\",\"id\":0}\n");
+                stdin.flush();
+                if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        } catch (IOException e) {
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        } finally {
+            failPending(new IOException("Inference worker was shut down"));
+            if (scriptFile != null) {
+                scriptFile.delete();
+            }
+            System.out.println("[WORKER] Inference worker stopped: " + modelPath);
+        }
+    }
+
+    private void readMessages() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                JsonNode message;
+                try {
+                    message = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    System.out.println("[WORKER] " + line);
+                    continue;
+                }
+                dispatch(message);
+            }
+        } catch (IOException e) {
+            System.err.println("[WORKER] Error reading worker output: " + e.getMessage());
+        }
+
+        IOException exited = new IOException("Inference worker exited unexpectedly");
+        readyFuture.completeExceptionally(exited);
+        failPending(exited);
+    }
+
+    private void dispatch(JsonNode message) {
+        String event = message.path("event").asText(null);
+        if ("ready".equals(event)) {
+            readyFuture.complete(message);
+            return;
+        }
+        if ("error".equals(event)) {
+            readyFuture.completeExceptionally(new IOException(message.path("error").asText("Unknown worker error")));
+            return;
+        }
+
+        long id = message.path("id").asLong(-1);
+        PendingRequest request = pending.get(id);
+        if (request == null) {
+            return;
+        }
+        if (request.listener != null) {
+            request.listener.onMessage(message);
+        }
+        if (message.path("done").asBoolean(false)) {
+            pending.remove(id);
+            request.future.complete(message);
+        }
+    }
+
+    private void drainLog() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("[WORKER] " + line);
+            }
+        } catch (IOException e) {
+            // Process closed its stderr
+        }
+    }
+
+    private void failPending(IOException error) {
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            PendingRequest request = pending.remove(id);
+            if (request != null) {
+                request.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static class PendingRequest {
+        final MessageListener listener;
+        final CompletableFuture<JsonNode> future = new CompletableFuture<>();
+
+        PendingRequest(MessageListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    // Protocol lines go to the real stdout; anything ultralytics prints is redirected to stderr
+    private static final String WORKER_SCRIPT =
+        "import sys\n" +
+        "import json\n" +
+        "import ssl\n" +
+        "import queue\n" +
+        "import threading\n" +
+        "import traceback\n" +
+        "\n" +
+        "out = sys.stdout\n" +
+        "sys.stdout = sys.stderr\n" +
+        "\n" +
+        "def send(message):\n" +
+        "    out.write(json.dumps(message) + '\\n')\n" +
+        "    out.flush()\n" +
+        "\n" +
+        "try:\n" +
+        "    ssl._create_default_https_context = ssl._create_unverified_context\n" +
+        "    from ultralytics import YOLO\n" +
+        "    model = YOLO(sys.argv[1])\n" +
+        "    names = model.names if hasattr(model, 'names') else {}\n" +
+        "except Exception as e:\n" +
+        "    traceback.print_exc()\n" +
+        "    send({'event': 'error', 'error': str(e)})\n" +
+        "    sys.exit(1)\n" +
+        "\n" +
+        "def class_name(class_id):\n" +
+        "    return names.get(class_id, f'class_{class_id}') if isinstance(names, dict) else f'class_{class_id}'\n" +
+        "\n" +
+        "def convert(image, r):\n" +
+        "    detections = []\n" +
+        "    if hasattr(r, 'boxes') and r.boxes is not None and len(r.boxes) > 0:\n" +
+        "        xyxy = r.boxes.xyxy.tolist()\n" +
+        "        cls = r.boxes.cls.tolist()\n" +
+        "        conf = r.boxes.conf.tolist()\n" +
+        "        for (x1, y1, x2, y2), c, p in zip(xyxy, cls, conf):\n" +
+        "            detections.append({'class_id': int(c), 'class_name': class_name(int(c)),\n" +
+        "                               'confidence': float(p), 'bbox': [x1, y1, x2 - x1, y2 - y1]})\n" +
+        "    return {'image': image, 'detections': detections, 'image_shape': list(r.orig_shape)}\n" +
+        "\n" +
+        "def predict(req, images):\n" +
+        "    return model(images, conf=float(req.get('conf', 0.25)), iou=float(req.get('iou', 0.7)),\n" +
+        "                 imgsz=int(req.get('imgsz', 640)), max_det=int(req.get('max_det', 300)),\n" +
+        "                 batch=len(images), verbose=False)\n" +
+        "\n" +
+        "# Requests are queued by a reader thread so a cancel can arrive while a batch runs\n" +
+        "requests = queue.Queue()\n" +
+        "cancelled = set()\n" +
+        "\n" +
+        "def read_requests():\n" +
+        "    for line in sys.stdin:\n" +
+        "        line = line.strip()\n" +
+        "        if not line:\n" +
+        "            continue\n" +
+        "        try:\n" +
+        "            req = json.loads(line)\n" +
+        "        except Exception:\n" +
+        "            traceback.print_exc()\n" +
+        "            continue\n" +
+        "        if req.get('cmd') == 'cancel':\n" +
+        "            cancelled.add(req.get('target'))\n" +
+        "        else:\n" +
+        "            requests.put(req)\n" +
+        "    requests.put({'cmd': 'shutdown'})\n" +
+        "\n" +
+        "def infer_batch(req, rid):\n" +
+        "    images = req.get('images', [])\n" +
+        "    size = max(1, int(req.get('batch', 8)))\n" +
+        "    completed = 0\n" +
+        "    for start in range(0, len(images), size):\n" +
+        "        if rid in cancelled:\n" +
+        "            cancelled.discard(rid)\n" +
+        "            send({'id': rid, 'done': True, 'cancelled': True, 'completed': completed, 'total': len(images)})\n" +
+        "            return\n" +
+        "        chunk = images[start:start + size]\n" +
+        "        try:\n" +
+        "            results = [convert(i, r) for i, r in zip(chunk, predict(req, chunk))]\n" +
+        "        except Exception:\n" +
+        "            # One unreadable image shouldn't fail the whole chunk\n" +
+        "            results = []\n" +
+        "            for image in chunk:\n" +
+        "                try:\n" +
+        "                    results.extend(convert(image, r) for r in predict(req, [image]))\n" +
+        "                except Exception as e:\n" +
+        "                    results.append({'image': image, 'error': str(e), 'detections': []})\n" +
+        "        completed += len(chunk)\n" +
+        "        send({'id': rid, 'results': results, 'completed': completed, 'total': len(images)})\n" +
+        "    cancelled.discard(rid)\n" +
+        "    send({'id': rid, 'done': True, 'completed': completed, 'total': len(images)})\n" +
+        "\n" +
+        "def load_image(path):\n" +
+        "    try:\n" +
+        "        import cv2\n" +
+        "        image = cv2.imread(path)\n" +
+        "        if image is not None:\n" +
+        "            return image\n" +
+        "    except ImportError:\n" +
+        "        pass\n" +
+        "    import numpy as np\n" +
+        "    from PIL import Image\n" +
+        "    return np.ascontiguousarray(np.asarray(Image.open(path).convert('RGB'))[:, :, ::-1])\n" +
+        "\n" +
+        "def infer_tiles(req, rid):\n" +
+        "    # Decode the large image once; tiles are views into it, not copies\n" +
+        "    image = load_image(req['image'])\n" +
+        "    crops = [image[y:y + h, x:x + w] for x, y, w, h in req.get('tiles', [])]\n" +
+        "    size = max(1, int(req.get('batch', 8)))\n" +
+        "    tiles = []\n" +
+        "    for start in range(0, len(crops), size):\n" +
+        "        tiles.extend(convert(None, r)['detections'] for r in predict(req, crops[start:start + size]))\n" +
+        "    send({'id': rid, 'done': True, 'image_shape': list(image.shape[:2]), 'tiles': tiles})\n" +
+        "\n" +
+        "def peak_rss_mb():\n" +
+        "    try:\n" +
+        "        import resource\n" +
+        "        peak = resource.getrusage(resource.RUSAGE_SELF).ru_maxrss\n" +
+        "        # Kilobytes on Linux, bytes on macOS\n" +
+        "        return peak / 1048576.0 if sys.platform == 'darwin' else peak / 1024.0\n" +
+        "    except Exception:\n" +
+        "        pass\n" +
+        "    try:\n" +
+        "        import psutil\n" +
+        "        info = psutil.Process().memory_info()\n" +
+        "        return getattr(info, 'peak_wset', info.rss) / 1048576.0\n" +
+        "    except Exception:\n" +
+        "        return None\n" +
+        "\n" +
+        "def benchmark(req, rid):\n" +
+        "    import time\n" +
+        "    images = req.get('images', [])\n" +
+        "    if not images:\n" +
+        "        send({'id': rid, 'done': True, 'error': 'No sample images'})\n" +
+        "        return\n" +
+        "    # Decode once up front so timings cover the model, not the disk\n" +
+        "    try:\n" +
+        "        import cv2\n" +
+        "        decoded = [cv2.imread(i) for i in images]\n" +
+        "        if all(d is not None for d in decoded):\n" +
+        "            images = decoded\n" +
+        "    except Exception:\n" +
+        "        pass\n" +
+        "    warmup = max(0, int(req.get('warmup', 3)))\n" +
+        "    iterations = max(1, int(req.get('iterations', 20)))\n" +
+        "    for size in req.get('batch_sizes', [1]):\n" +
+        "        size = max(1, int(size))\n" +
+        "        batch = [images[i % len(images)] for i in range(size)]\n" +
+        "        warmup_ms = []\n" +
+        "        for _ in range(warmup):\n" +
+        "            started = time.perf_counter()\n" +
+        "            predict(req, batch)\n" +
+        "            warmup_ms.append((time.perf_counter() - started) * 1000.0)\n" +
+        "        latencies = []\n" +
+        "        for _ in range(iterations):\n" +
+        "            if rid in cancelled:\n" +
+        "                cancelled.discard(rid)\n" +
+        "                send({'id': rid, 'done': True, 'cancelled': True, 'peak_rss_mb': peak_rss_mb()})\n" +
+        "                return\n" +
+        "            started = time.perf_counter()\n" +
+        "            predict(req, batch)\n" +
+        "            latencies.append((time.perf_counter() - started) * 1000.0)\n" +
+        "        send({'id': rid, 'batch_size': size, 'warmup_ms': warmup_ms, 'latencies_ms': latencies,\n" +
+        "              'peak_rss_mb': peak_rss_mb()})\n" +
+        "    cancelled.discard(rid)\n" +
+        "    send({'id': rid, 'done': True, 'peak_rss_mb': peak_rss_mb()})\n" +
+        "\n" +
+        "send({'event': 'ready', 'names': {str(k): v for k, v in names.items()} if isinstance(names, dict) else {}})\n" +
+        "threading.Thread(target=read_requests, daemon=True).start()\n" +
+        "\n" +
+        "while True:\n" +
+        "    req = requests.get()\n" +
+        "    rid = None\n" +
+        "    try:\n" +
+        "        rid = req.get('id')\n" +
+        "        cmd = req.get('cmd', 'infer')\n" +
+        "        if cmd == 'shutdown':\n" +
+        "            break\n" +
+        "        elif cmd == 'ping':\n" +
+        "            send({'id': rid, 'done': True})\n" +
+        "        elif cmd == 'infer':\n" +
+        "            images = req.get('images', [])\n" +
+        "            results = predict(req, images) if images else []\n" +
+        "            send({'id': rid, 'done': True, 'results': [convert(i, r) for i, r in zip(images, results)]})\n" +
+        "        elif cmd == 'infer_batch':\n" +
+        "            infer_batch(req, rid)\n" +
+        "        elif cmd == 'infer_tiles':\n" +
+        "            infer_tiles(req, rid)\n" +
+        "        elif cmd == 'benchmark':\n" +
+        "            benchmark(req, rid)\n" +
+        "        else:\n" +
+        "            send({'id': rid, 'done': True, 'error': 'Unknown command: ' + str(cmd)})\n" +
+        "    except Exception as e:\n" +
+        "        traceback.print_exc()\n" +
+        "        send({'id': rid, 'done': True, 'error': str(e)})\n";
+}
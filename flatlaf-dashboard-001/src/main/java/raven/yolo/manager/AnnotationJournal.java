@@ -0,0 +1,203 @@
+package raven.yolo.manager;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of annotation edits, kept next to project.json. Each edit
+ * is one line holding the image's complete annotation list, synced to disk
+ * before the call returns, so an edit survives a crash as soon as it is
+ * journaled. Label files, shards and the index catch up when the project is
+ * saved, after which the journal is emptied. Records are whole states, so
+ * replaying a journal that was already partly saved is harmless; a torn
+ * last line from a crash mid-append is ignored.
+ */
+public class AnnotationJournal implements Closeable {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private FileChannel channel;
+    private boolean closed;
+    private int recordCount;
+
+    public AnnotationJournal(File file, ObjectMapper objectMapper) {
+        this.file = file.toPath();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Apply the journaled edits left by a session that ended without saving
+     * and return how many were applied; the images are marked dirty so the
+     * next save writes them out
+     */
+    public synchronized int replay(YoloProject project) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int applied = 0;
+        int lineNumber = 0;
+        Map<String, YoloImage> images = ProjectStorage.imagesByKey(project);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record;
+                try {
+                    record = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    System.err.println("[JOURNAL] Ignoring torn record at line " + lineNumber);
+                    break;
+                }
+                recordCount++;
+                String key = record.path("image").asText(null);
+                YoloImage image = images.get(key);
+                if (image == null) {
+                    // Journals written before images were keyed by path name them by filename
+                    image = project.findImageByFilename(key);
+                }
+                if (image == null) {
+                    continue;
+                }
+                image.setAnnotations(ProjectStorage.readAnnotations(record.path("annotations")));
+                image.setLabeled(record.path("labeled").asBoolean(!image.getAnnotations().isEmpty()));
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            System.out.println("[JOURNAL] Replayed " + applied + " annotation edit(s) from " + file);
+        }
+        return applied;
+    }
+
+    /**
+     * Durably record an image's current annotations
+     */
+    public void append(YoloProject project, YoloImage image) throws IOException {
+        append(List.of(Edit.of(project, image)));
+    }
+
+    /**
+     * Durably record edits copied earlier, with one sync for all of them.
+     * A journal closed meanwhile, because its project was closed, is
+     * reopened for the write so the edits are replayed on its next load.
+     */
+    public synchronized void append(List<Edit> edits) throws IOException {
+        if (edits.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * edits.size());
+        for (Edit edit : edits) {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeStringField("image", edit.key);
+                generator.writeBooleanField("labeled", edit.labeled);
+                generator.writeFieldName("annotations");
+                ProjectStorage.writeAnnotations(generator, edit.annotations);
+                generator.writeEndObject();
+            }
+            out.write('\n');
+        }
+
+        boolean reopened = channel == null && closed;
+        FileChannel channel = channel();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            recordCount += edits.size();
+        } finally {
+            if (reopened) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Records written since the journal was last emptied
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Empty the journal once everything it holds is saved elsewhere
+     */
+    public synchronized void reset() throws IOException {
+        if (recordCount == 0 && channel == null && !Files.exists(file)) {
+            return;
+        }
+        boolean reopened = channel == null && closed;
+        FileChannel channel = channel();
+        try {
+            channel.truncate(0);
+            channel.force(true);
+            recordCount = 0;
+        } finally {
+            if (reopened) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * An image's annotations copied at the time of the edit, so they can be
+     * journaled from another thread
+     */
+    public static class Edit {
+        // Image's storage key; see YoloProject#getStorageKey
+        private final String key;
+        private final boolean labeled;
+        private final List<YoloAnnotation> annotations;
+
+        private Edit(String key, boolean labeled, List<YoloAnnotation> annotations) {
+            this.key = key;
+            this.labeled = labeled;
+            this.annotations = annotations;
+        }
+
+        public static Edit of(YoloProject project, YoloImage image) {
+            return new Edit(project.getStorageKey(image), image.isLabeled(),
+                ProjectStorage.copyOf(image.getAnnotations()));
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
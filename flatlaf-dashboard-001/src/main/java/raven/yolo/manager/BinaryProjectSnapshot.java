@@ -0,0 +1,140 @@
+package raven.yolo.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary copy of project.json, written next to it whenever the index is
+ * written, so opening a large project reads flat records instead of parsing
+ * JSON. The copy records the length and CRC-32 of the project.json it was
+ * made from and is used only if both still match, so a project.json edited
+ * by hand or restored from a backup is always parsed instead. A CRC-32 of
+ * the copy's own contents catches a truncated or damaged file.
+ */
+final class BinaryProjectSnapshot {
+
+    static final String FILE_NAME = "project.snapshot";
+
+    private static final int MAGIC = 0x59505331; // "YPS1"
+    private static final int FORMAT_VERSION = 2;
+    private static final int LABELED = 1;
+    private static final int CUSTOM_PATH = 2;
+    // Class ids are written as ints rather than shorts
+    private static final int WIDE_CLASS_IDS = 4;
+
+    private BinaryProjectSnapshot() {
+    }
+
+    /**
+     * Project metadata as JSON, and the image index
+     */
+    static class Contents {
+        final byte[] metadataJson;
+        final List<ProjectStorage.IndexEntry> index;
+
+        Contents(byte[] metadataJson, List<ProjectStorage.IndexEntry> index) {
+            this.metadataJson = metadataJson;
+            this.index = index;
+        }
+    }
+
+    static byte[] encode(byte[] projectJson, byte[] metadataJson, List<ProjectStorage.IndexEntry> index)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + metadataJson.length + index.size() * 24);
+        CRC32 payloadCrc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(bytes, payloadCrc));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(projectJson.length);
+        out.writeLong(crc(projectJson, 0, projectJson.length));
+        out.writeInt(metadataJson.length);
+        out.write(metadataJson);
+        out.writeInt(index.size());
+        for (ProjectStorage.IndexEntry entry : index) {
+            out.writeUTF(entry.filename);
+            out.writeInt(entry.width);
+            out.writeInt(entry.height);
+            boolean wide = false;
+            for (int classId : entry.classIds) {
+                wide |= classId > Short.MAX_VALUE;
+            }
+            out.writeByte((entry.labeled ? LABELED : 0) | (entry.path != null ? CUSTOM_PATH : 0)
+                | (wide ? WIDE_CLASS_IDS : 0));
+            out.writeInt(entry.classIds.length);
+            for (int classId : entry.classIds) {
+                if (wide) {
+                    out.writeInt(classId);
+                } else {
+                    out.writeShort(classId);
+                }
+            }
+            if (entry.path != null) {
+                out.writeUTF(entry.path);
+            }
+        }
+        out.flush();
+        new DataOutputStream(bytes).writeLong(payloadCrc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Contents of a snapshot made from exactly this project.json, or null
+     * if the snapshot is stale or damaged
+     */
+    static Contents decode(byte[] snapshot, byte[] projectJson) {
+        if (snapshot.length < 36) {
+            return null;
+        }
+        int payload = snapshot.length - 8;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (in.readLong() != projectJson.length || in.readLong() != crc(projectJson, 0, projectJson.length)) {
+                System.out.println("[STORAGE] Binary snapshot is out of date; reading project.json");
+                return null;
+            }
+            DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(snapshot, payload, 8));
+            if (trailer.readLong() != crc(snapshot, 0, payload)) {
+                System.out.println("[STORAGE] Binary snapshot is damaged; reading project.json");
+                return null;
+            }
+
+            byte[] metadataJson = new byte[in.readInt()];
+            in.readFully(metadataJson);
+            int count = in.readInt();
+            List<ProjectStorage.IndexEntry> index = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String filename = in.readUTF();
+                int width = in.readInt();
+                int height = in.readInt();
+                int flags = in.readByte();
+                int[] classIds = new int[in.readInt()];
+                for (int c = 0; c < classIds.length; c++) {
+                    classIds[c] = (flags & WIDE_CLASS_IDS) != 0 ? in.readInt() : in.readShort();
+                }
+                String path = (flags & CUSTOM_PATH) != 0 ? in.readUTF() : null;
+                index.add(new ProjectStorage.IndexEntry(filename, width, height, (flags & LABELED) != 0,
+                    classIds, path));
+            }
+            return new Contents(metadataJson, index);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[STORAGE] Cannot read binary snapshot: " + e);
+            return null;
+        }
+    }
+
+    private static long crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+}
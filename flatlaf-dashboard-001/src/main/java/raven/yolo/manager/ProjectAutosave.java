@@ -0,0 +1,283 @@
+package raven.yolo.manager;
+
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps disk I/O off the event dispatch thread while annotations are edited.
+ * Each edit copies the image's annotations on the EDT and is journaled on the
+ * save thread once the edits have been quiet for the debounce delay, or after
+ * the maximum delay during a long burst, so dragging a box writes once rather
+ * than on every mouse release. Explicit saves copy the changed state on the
+ * EDT and write it in the background. Pending edits are journaled on exit.
+ */
+public class ProjectAutosave {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 400;
+    public static final long DEFAULT_MAX_DELAY_MS = 2000;
+    private static final long EXIT_FLUSH_TIMEOUT_MS = 5000;
+
+    private static ProjectAutosave instance;
+
+    private final ScheduledExecutorService scheduler;
+    private volatile long debounceMs = DEFAULT_DEBOUNCE_MS;
+    private volatile long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+
+    // Latest copy of each edited image not yet handed to the save thread
+    private final Map<YoloImage, PendingEdit> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private long firstPendingAt;
+    private final AtomicBoolean compactionRequested = new AtomicBoolean();
+
+    // Metrics, guarded by this
+    private long editsRequested;
+    private long editsJournaled;
+    private int writesInFlight;
+    private long saves;
+    private long lastSaveLatencyMs;
+    private long maxSaveLatencyMs;
+    private long totalSaveLatencyMs;
+    private long lastJournalLatencyMs;
+    private long maxJournalLatencyMs;
+    private String lastError;
+
+    private ProjectAutosave() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "project-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnExit, "project-autosave-shutdown"));
+    }
+
+    public static synchronized ProjectAutosave getInstance() {
+        if (instance == null) {
+            instance = new ProjectAutosave();
+        }
+        return instance;
+    }
+
+    public void setDelays(long debounceMs, long maxDelayMs) {
+        this.debounceMs = debounceMs;
+        this.maxDelayMs = Math.max(debounceMs, maxDelayMs);
+    }
+
+    /**
+     * Record that an image's annotations changed; call on the EDT after the
+     * edit is applied
+     */
+    public void annotationsChanged(YoloImage image) {
+        if (image == null) return;
+
+        image.markAnnotationsDirty();
+        ProjectManager manager = ProjectManager.getInstance();
+        AnnotationJournal journal = manager.getJournal();
+        YoloProject project = manager.getCurrentProject();
+        if (journal == null || project == null) {
+            // No project open; nothing to journal into
+            return;
+        }
+        PendingEdit edit = new PendingEdit(AnnotationJournal.Edit.of(project, image), journal);
+
+        synchronized (this) {
+            editsRequested++;
+            if (pending.isEmpty()) {
+                firstPendingAt = edit.requestedAt;
+            }
+            pending.remove(image);
+            pending.put(image, edit);
+
+            long delay = Math.min(debounceMs, firstPendingAt + maxDelayMs - edit.requestedAt);
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+            }
+            scheduledFlush = scheduler.schedule(this::flush, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Save the current project in the background; call on the EDT. Pending
+     * edits to the current project are part of the save and are not
+     * journaled separately.
+     */
+    public CompletableFuture<ProjectManager.SaveReport> saveNow() {
+        ProjectManager manager = ProjectManager.getInstance();
+        AnnotationJournal journal = manager.getJournal();
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            pending.values().removeIf(edit -> edit.journal == journal);
+            writesInFlight++;
+        }
+
+        CompletableFuture<ProjectManager.SaveReport> save = manager.saveCurrentProjectAsync();
+        return save.whenComplete((report, error) -> {
+            long latency = System.currentTimeMillis() - start;
+            synchronized (this) {
+                writesInFlight--;
+                if (error == null) {
+                    saves++;
+                    lastSaveLatencyMs = latency;
+                    maxSaveLatencyMs = Math.max(maxSaveLatencyMs, latency);
+                    totalSaveLatencyMs += latency;
+                } else {
+                    lastError = rootMessage(error);
+                }
+            }
+            if (error != null) {
+                System.err.println("[AUTOSAVE] Save failed: " + rootMessage(error));
+            }
+        });
+    }
+
+    /**
+     * Hand all pending edits to the save thread now
+     */
+    public void flush() {
+        Map<AnnotationJournal, List<AnnotationJournal.Edit>> byJournal = new IdentityHashMap<>();
+        long oldest;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            oldest = firstPendingAt;
+            for (PendingEdit edit : pending.values()) {
+                byJournal.computeIfAbsent(edit.journal, j -> new ArrayList<>()).add(edit.edit);
+            }
+            pending.clear();
+        }
+
+        ProjectManager manager = ProjectManager.getInstance();
+        for (Map.Entry<AnnotationJournal, List<AnnotationJournal.Edit>> entry : byJournal.entrySet()) {
+            int count = entry.getValue().size();
+            synchronized (this) {
+                writesInFlight++;
+            }
+            manager.journalEdits(entry.getKey(), entry.getValue()).whenComplete((ignored, error) -> {
+                long latency = System.currentTimeMillis() - oldest;
+                synchronized (this) {
+                    writesInFlight--;
+                    if (error == null) {
+                        editsJournaled += count;
+                        lastJournalLatencyMs = latency;
+                        maxJournalLatencyMs = Math.max(maxJournalLatencyMs, latency);
+                    } else {
+                        lastError = rootMessage(error);
+                    }
+                }
+                if (error != null) {
+                    System.err.println("[AUTOSAVE] Cannot journal " + count + " edit(s): " + rootMessage(error));
+                } else if (manager.isJournalCompactionDue() && compactionRequested.compareAndSet(false, true)) {
+                    // Fold the journal into the project files; snapshots are taken on the EDT
+                    SwingUtilities.invokeLater(() -> saveNow()
+                        .whenComplete((report, saveError) -> compactionRequested.set(false)));
+                }
+            });
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(editsRequested, editsJournaled, pending.size(), writesInFlight, saves,
+            lastSaveLatencyMs, saves > 0 ? totalSaveLatencyMs / saves : 0, maxSaveLatencyMs,
+            lastJournalLatencyMs, maxJournalLatencyMs, lastError);
+    }
+
+    private void flushOnExit() {
+        flush();
+        try {
+            ProjectManager.getInstance().awaitPendingWrites(EXIT_FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("[AUTOSAVE] " + getStats());
+    }
+
+    private static String rootMessage(Throwable error) {
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getMessage();
+    }
+
+    private static class PendingEdit {
+        final AnnotationJournal.Edit edit;
+        final AnnotationJournal journal;
+        final long requestedAt = System.currentTimeMillis();
+
+        PendingEdit(AnnotationJournal.Edit edit, AnnotationJournal journal) {
+            this.edit = edit;
+            this.journal = journal;
+        }
+    }
+
+    /**
+     * Counters and latencies since startup. Journal latency runs from the
+     * oldest edit in a flush until it is on disk.
+     */
+    public static class Stats {
+        private final long editsRequested;
+        private final long editsJournaled;
+        private final int pendingEdits;
+        private final int writesInFlight;
+        private final long saves;
+        private final long lastSaveLatencyMs;
+        private final long averageSaveLatencyMs;
+        private final long maxSaveLatencyMs;
+        private final long lastJournalLatencyMs;
+        private final long maxJournalLatencyMs;
+        private final String lastError;
+
+        Stats(long editsRequested, long editsJournaled, int pendingEdits, int writesInFlight, long saves,
+              long lastSaveLatencyMs, long averageSaveLatencyMs, long maxSaveLatencyMs,
+              long lastJournalLatencyMs, long maxJournalLatencyMs, String lastError) {
+            this.editsRequested = editsRequested;
+            this.editsJournaled = editsJournaled;
+            this.pendingEdits = pendingEdits;
+            this.writesInFlight = writesInFlight;
+            this.saves = saves;
+            this.lastSaveLatencyMs = lastSaveLatencyMs;
+            this.averageSaveLatencyMs = averageSaveLatencyMs;
+            this.maxSaveLatencyMs = maxSaveLatencyMs;
+            this.lastJournalLatencyMs = lastJournalLatencyMs;
+            this.maxJournalLatencyMs = maxJournalLatencyMs;
+            this.lastError = lastError;
+        }
+
+        public long getEditsRequested() { return editsRequested; }
+        public long getEditsJournaled() { return editsJournaled; }
+        public int getPendingEdits() { return pendingEdits; }
+        public int getWritesInFlight() { return writesInFlight; }
+        public long getSaves() { return saves; }
+        public long getLastSaveLatencyMs() { return lastSaveLatencyMs; }
+        public long getAverageSaveLatencyMs() { return averageSaveLatencyMs; }
+        public long getMaxSaveLatencyMs() { return maxSaveLatencyMs; }
+        public long getLastJournalLatencyMs() { return lastJournalLatencyMs; }
+        public long getMaxJournalLatencyMs() { return maxJournalLatencyMs; }
+        public String getLastError() { return lastError; }
+
+        @Override
+        public String toString() {
+            return String.format("%d edit(s), %d journaled, %d pending, %d write(s) in flight; "
+                    + "journal latency %d ms (max %d); %d save(s), latency %d ms (avg %d, max %d)%s",
+                editsRequested, editsJournaled, pendingEdits, writesInFlight,
+                lastJournalLatencyMs, maxJournalLatencyMs, saves, lastSaveLatencyMs, averageSaveLatencyMs,
+                maxSaveLatencyMs, lastError != null ? "; last error: " + lastError : "");
+        }
+    }
+}
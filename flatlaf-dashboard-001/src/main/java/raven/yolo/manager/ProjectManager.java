@@ -2,25 +2,62 @@ package raven.yolo.manager;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import raven.yolo.model.YoloAnnotation;
 import raven.yolo.model.YoloProject;
 import raven.yolo.model.YoloImage;
+import raven.yolo.utils.DatasetCache;
+import raven.yolo.utils.DatasetSplitter;
+import raven.yolo.utils.FileMaterializer;
+import raven.yolo.utils.ImageDimensionProbe;
 
+import javax.swing.SwingUtilities;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProjectManager {
     
     private static ProjectManager instance;
     private final ObjectMapper objectMapper;
+    private final ProjectStorage storage;
     private YoloProject currentProject;
+    private AnnotationJournal journal;
     private final List<ProjectListener> listeners;
     
+    // Writes saves and journal records one at a time, in the order requested
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "project-save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int COPY_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    
+    /** Journaled edits after which the project is saved and the journal emptied */
+    private static final int JOURNAL_COMPACT_RECORDS = 256;
+    
+    private boolean labelFilesVerified = true;
+    private SaveReport lastSaveReport;
+    
     private ProjectManager() {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
+        this.storage = new ProjectStorage(objectMapper);
         this.listeners = new ArrayList<>();
     }
     
@@ -50,115 +87,526 @@ public class ProjectManager {
         // Add to recent projects
         workspaceManager.addRecentProject(name, projectPath);
         
-        this.currentProject = project;
+        attachProject(project);
         notifyProjectChanged();
         
         return project;
     }
-      public YoloProject loadProject(String projectPath) throws IOException {
-        File projectFile = new File(projectPath, "project.json");
-        if (!projectFile.exists()) {
-            throw new FileNotFoundException("Project file not found: " + projectFile.getAbsolutePath());
-        }
-        
-        YoloProject project = objectMapper.readValue(projectFile, YoloProject.class);
-        project.setProjectPath(projectPath);
+    /**
+     * Open a project; only the image index is read here, annotations are
+     * loaded as they are accessed. Single-file projects are migrated first,
+     * and edits journaled by a session that crashed are replayed and saved.
+     */
+    public YoloProject loadProject(String projectPath) throws IOException {
+        storage.setAnnotationStore(WorkspaceManager.getInstance().getAnnotationStore());
+        YoloProject project = storage.load(projectPath);
+        labelFilesVerified = false;
         
         // Add to recent projects
         WorkspaceManager.getInstance().addRecentProject(project.getName(), projectPath);
         
-        this.currentProject = project;
+        attachProject(project);
         notifyProjectChanged();
+        backfillImageDimensions(project);
         
         return project;
     }
     
+    /**
+     * Write a whole project: every annotation shard and the index
+     */
     public void saveProject(YoloProject project) throws IOException {
         if (project == null) return;
         
-        File projectFile = project.getProjectFile();
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(projectFile, project);
+        storage.saveAll(project);
     }
-      public void saveCurrentProject() throws IOException {
-        if (currentProject != null) {
-            saveProject(currentProject);
-            // Also save all image annotations to label files
-            saveAllAnnotationsToFiles();
+    
+    /**
+     * Save the current project, writing project.json only if the project or
+     * its image index changed, and annotation shards and label files only for
+     * images whose annotations changed. Waits for the write to finish.
+     */
+    public SaveReport saveCurrentProject() throws IOException {
+        return await(saveCurrentProjectAsync());
+    }
+    
+    /**
+     * Save the current project in the background. Changed state is copied
+     * on the calling thread, which must be the one editing the project, and
+     * written on the save thread; saves and journal writes run in the order
+     * they were requested. If writing fails the copied state is marked
+     * unsaved again on the event dispatch thread.
+     */
+    public CompletableFuture<SaveReport> saveCurrentProjectAsync() {
+        if (currentProject == null) {
+            return CompletableFuture.completedFuture(new SaveReport());
         }
+        SaveSnapshot snapshot = snapshotCurrentProject();
+        return CompletableFuture.supplyAsync(() -> writeSnapshot(snapshot), saveExecutor);
+    }
+    
+    public SaveReport getLastSaveReport() {
+        return lastSaveReport;
+    }
+    
+    /**
+     * How the current project was opened: from the binary snapshot or from
+     * project.json, and how long it took
+     */
+    public ProjectStorage.OpenReport getLastOpenReport() {
+        return storage.getLastOpenReport();
     }
     
+    /**
+     * Record an edit to one image's annotations. The edit is durable once it
+     * is in the journal; label files, shards and the index are written when
+     * the project is saved, or after enough edits have piled up.
+     */
     public void saveImageAnnotations(YoloImage image) throws IOException {
         if (currentProject == null || image == null) return;
         
-        // Create label file
-        File labelFile = new File(currentProject.getLabelsDir(), image.getFilenameWithoutExtension() + ".txt");
-        
-        // Ensure labels directory exists
-        if (!currentProject.getLabelsDir().exists()) {
-            currentProject.getLabelsDir().mkdirs();
+        image.markAnnotationsDirty();
+        await(journalEdits(journal, List.of(AnnotationJournal.Edit.of(currentProject, image))));
+        if (isJournalCompactionDue()) {
+            saveCurrentProjectAsync();
         }
-        
-        try (PrintWriter writer = new PrintWriter(new FileWriter(labelFile))) {
-            for (var annotation : image.getAnnotations()) {
-                writer.println(annotation.toYoloFormat());
+    }
+    
+    /**
+     * Append edits, copied earlier, to a project's journal on the save thread
+     */
+    CompletableFuture<Void> journalEdits(AnnotationJournal target, List<AnnotationJournal.Edit> edits) {
+        if (target == null || edits.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                target.append(edits);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }, saveExecutor);
+    }
+    
+    /**
+     * Journal of the current project, or null if no project is open
+     */
+    AnnotationJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * True once enough edits are journaled that the project should be saved
+     */
+    public boolean isJournalCompactionDue() {
+        AnnotationJournal current = journal;
+        return current != null && current.getRecordCount() >= JOURNAL_COMPACT_RECORDS;
+    }
+    
+    /**
+     * Wait for saves and journal writes requested so far, e.g. before exit
+     */
+    public void awaitPendingWrites(long timeoutMs) throws InterruptedException {
+        try {
+            CompletableFuture.runAsync(() -> { }, saveExecutor).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Pending project writes did not finish: " + e);
         }
     }
     
-    private void saveAllAnnotationsToFiles() throws IOException {
-        if (currentProject == null) return;
+    /**
+     * Copy the unsaved state of the current project and mark it saved
+     */
+    private SaveSnapshot snapshotCurrentProject() {
+        long start = System.currentTimeMillis();
+        
+        SaveSnapshot snapshot = new SaveSnapshot(currentProject, journal);
+        if (!labelFilesVerified) {
+            // Projects created by import are saved without label files; the save
+            // thread looks for missing ones once per load
+            snapshot.verifyLabels = new ArrayList<>(currentProject.getImages());
+            labelFilesVerified = true;
+        }
+        for (YoloImage image : currentProject.getDirtyImages()) {
+            List<YoloAnnotation> annotations = image.getAnnotations();
+            if (!image.isAnnotationsLoaded()) {
+                // Its shard cannot be read; keep the label file until it can
+                continue;
+            }
+            snapshot.labels.add(new LabelWrite(image, getLabelFile(image), ProjectStorage.copyOf(annotations)));
+            image.markAnnotationsClean();
+        }
+        // Everything journaled so far is covered by this snapshot
+        snapshot.storage = storage.snapshot(currentProject);
+        snapshot.snapshotMs = System.currentTimeMillis() - start;
+        return snapshot;
+    }
+    
+    /**
+     * Write a snapshot on the save thread
+     */
+    private SaveReport writeSnapshot(SaveSnapshot snapshot) {
+        long start = System.currentTimeMillis();
+        SaveReport report = new SaveReport();
+        report.snapshotMs = snapshot.snapshotMs;
+        try {
+            if (!snapshot.labels.isEmpty()) {
+                snapshot.project.getLabelsDir().mkdirs();
+            }
+            for (LabelWrite label : snapshot.labels) {
+                report.bytesWritten += ProjectStorage.writeAtomically(label.file, labelBytes(label.annotations));
+                report.labelFilesWritten++;
+            }
+            report.bytesWritten += storage.write(snapshot.storage);
+            report.shardFilesWritten = snapshot.storage.getShardCount();
+            report.projectFileWritten = snapshot.storage.hasIndex();
+            if (snapshot.journal != null && snapshot.storage.isComplete()) {
+                snapshot.journal.reset();
+            }
+            if (snapshot.verifyLabels != null) {
+                queueMissingLabelFiles(snapshot);
+            }
+        } catch (IOException e) {
+            SwingUtilities.invokeLater(() -> {
+                for (LabelWrite label : snapshot.labels) {
+                    label.image.markAnnotationsDirty();
+                }
+                storage.restore(snapshot.storage);
+            });
+            throw new UncheckedIOException(e);
+        }
         
-        for (YoloImage image : currentProject.getImages()) {
-            saveImageAnnotations(image);
+        report.elapsedMs = System.currentTimeMillis() - start;
+        lastSaveReport = report;
+        System.out.println("Project saved: " + report);
+        return report;
+    }
+    
+    /**
+     * Mark images without a label file dirty and save again
+     */
+    private void queueMissingLabelFiles(SaveSnapshot snapshot) {
+        List<YoloImage> missing = new ArrayList<>();
+        for (YoloImage image : snapshot.verifyLabels) {
+            File labelFile = new File(snapshot.project.getLabelsDir(), image.getFilenameWithoutExtension() + ".txt");
+            if (!labelFile.exists()) {
+                missing.add(image);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        System.out.println("Writing " + missing.size() + " missing label file(s)");
+        SwingUtilities.invokeLater(() -> {
+            if (currentProject != snapshot.project) return;
+            for (YoloImage image : missing) {
+                image.markAnnotationsDirty();
+            }
+            saveCurrentProjectAsync();
+        });
+    }
+    
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause.getMessage(), cause);
         }
     }
     
+    private File getLabelFile(YoloImage image) {
+        return new File(currentProject.getLabelsDir(), image.getFilenameWithoutExtension() + ".txt");
+    }
+    
+    private static byte[] labelBytes(List<YoloAnnotation> annotations) {
+        StringBuilder content = new StringBuilder();
+        for (YoloAnnotation annotation : annotations) {
+            content.append(annotation.toYoloFormat()).append(System.lineSeparator());
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
     public YoloProject getCurrentProject() {
         return currentProject;
     }
     
     public void setCurrentProject(YoloProject project) {
-        this.currentProject = project;
+        this.labelFilesVerified = false;
+        try {
+            attachProject(project);
+        } catch (IOException e) {
+            System.err.println("Failed to open annotation journal: " + e.getMessage());
+        }
         notifyProjectChanged();
     }
     
+    /**
+     * Make a project current with its edit journal open, replaying edits
+     * left unsaved by a previous session
+     */
+    private void attachProject(YoloProject project) throws IOException {
+        closeJournal();
+        currentProject = project;
+        if (project == null || project.getProjectPath() == null) {
+            return;
+        }
+        journal = new AnnotationJournal(project.getJournalFile(), objectMapper);
+        if (journal.replay(project) > 0) {
+            saveCurrentProject();
+        } else {
+            // Drops a torn record so new edits don't append to it
+            journal.reset();
+        }
+    }
+    
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close annotation journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+    
     public void addImageToProject(File imageFile) throws IOException {
+        AddImagesResult result = addImagesToProject(List.of(imageFile), null);
+        if (!result.getFailures().isEmpty()) {
+            throw result.getFailures().values().iterator().next();
+        }
+    }
+    
+    /**
+     * Add many images at once and wait for the project to be saved; call on
+     * the EDT. Dialogs that copy in the background use
+     * {@link #copyImagesToProject} and {@link #addCopiedImages} instead.
+     */
+    public AddImagesResult addImagesToProject(Collection<File> imageFiles, BatchProgressListener progressListener) throws IOException {
         if (currentProject == null) {
             throw new IllegalStateException("No project is currently open");
         }
+        AddImagesResult result = copyImagesToProject(currentProject, getImageFilenames(), imageFiles, progressListener);
+        await(addCopiedImages(result));
+        return result;
+    }
+    
+    /**
+     * Filenames of the current project's images; take them on the EDT and
+     * pass them to {@link #copyImagesToProject}
+     */
+    public Set<String> getImageFilenames() {
+        Set<String> filenames = new HashSet<>();
+        if (currentProject != null) {
+            for (YoloImage image : currentProject.getImages()) {
+                filenames.add(image.getFilename());
+            }
+        }
+        return filenames;
+    }
+    
+    /**
+     * Copy image files into a project's images folder in parallel and read
+     * their dimensions. The project itself is not changed, so this may run on
+     * a worker thread; hand the result to {@link #addCopiedImages} on the EDT.
+     * Files that fail to copy are reported in the result instead of aborting
+     * the batch.
+     */
+    public AddImagesResult copyImagesToProject(YoloProject project, Set<String> existingFilenames,
+                                               Collection<File> imageFiles, BatchProgressListener progressListener) throws IOException {
+        File imagesDir = project.getImagesDir();
+        imagesDir.mkdirs();
+        
+        AddImagesResult result = new AddImagesResult(project);
+        List<File> toCopy = new ArrayList<>();
+        Set<String> targetNames = new HashSet<>();
+        for (File imageFile : imageFiles) {
+            // Copying over an existing project image would orphan its annotations
+            if (existingFilenames.contains(imageFile.getName())) {
+                result.failures.put(imageFile, new IOException("Image already in project: " + imageFile.getName()));
+            } else if (targetNames.add(imageFile.getName())) {
+                toCopy.add(imageFile);
+            } else {
+                // Two sources with the same name would overwrite each other's copy
+                result.failures.put(imageFile, new IOException("Duplicate file name in selection: " + imageFile.getName()));
+            }
+        }
         
-        // Copy image to project images directory
-        File imagesDir = currentProject.getImagesDir();
-        File targetFile = new File(imagesDir, imageFile.getName());
-        Files.copy(imageFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        
-        // Read image dimensions (simplified - you might want to use BufferedImage for real dimensions)
-        // For now, we'll set default dimensions
-        YoloImage yoloImage = new YoloImage(imageFile.getName(), targetFile.getAbsolutePath(), 640, 480);
-        
-        currentProject.addImage(yoloImage);
-        saveCurrentProject();
+        int total = toCopy.size();
+        int threads = Math.max(1, Math.min(COPY_THREADS, total));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<YoloImage>> futures = new ArrayList<>(total);
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            for (File imageFile : toCopy) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        File targetFile = new File(imagesDir, imageFile.getName());
+                        Files.copy(imageFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        
+                        int[] dimensions = ImageDimensionProbe.probeOrUnknown(targetFile);
+                        return new YoloImage(imageFile.getName(), targetFile.getAbsolutePath(), dimensions[0], dimensions[1]);
+                    } finally {
+                        int done = completed.incrementAndGet();
+                        if (progressListener != null) {
+                            progressListener.onProgress(done, total);
+                        }
+                    }
+                }));
+            }
+            
+            // Collect in selection order so the image list stays predictable
+            for (int i = 0; i < total; i++) {
+                try {
+                    result.added.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    result.failures.put(toCopy.get(i), cause instanceof IOException
+                        ? (IOException) cause : new IOException(cause.getMessage(), cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Adding images was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+    
+    /**
+     * Add images copied by {@link #copyImagesToProject} to their project,
+     * save it in the background and notify listeners once; call on the EDT.
+     * Nothing is added if that project was closed meanwhile.
+     */
+    public CompletableFuture<SaveReport> addCopiedImages(AddImagesResult result) {
+        if (result.added.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (result.project != currentProject) {
+            System.err.println("Project closed while adding images; " + result.added.size() + " copied image(s) not added");
+            return CompletableFuture.completedFuture(null);
+        }
+        for (YoloImage image : result.added) {
+            currentProject.addImage(image);
+        }
+        CompletableFuture<SaveReport> save = saveCurrentProjectAsync();
         notifyProjectChanged();
+        return save;
     }
     
-    public void removeImageFromProject(YoloImage image) throws IOException {
-        if (currentProject == null) return;
-        
-        // Remove image file
-        File imageFile = new File(image.getPath());
-        if (imageFile.exists()) {
-            imageFile.delete();
+    /**
+     * Replace placeholder dimensions with the real ones read from the image
+     * headers. Probing runs in the background; results are applied and saved
+     * on the event dispatch thread if the project is still open.
+     */
+    public void backfillImageDimensions(YoloProject project) {
+        boolean legacyPlaceholders = !project.isDimensionsProbed();
+        List<YoloImage> candidates = new ArrayList<>();
+        for (YoloImage image : project.getImages()) {
+            if (ImageDimensionProbe.needsProbe(image, legacyPlaceholders)) {
+                candidates.add(image);
+            }
+        }
+        if (candidates.isEmpty()) {
+            if (legacyPlaceholders) {
+                // Saved with the next change
+                project.setDimensionsProbed(true);
+            }
+            return;
         }
         
-        // Remove label file
-        File labelFile = new File(currentProject.getLabelsDir(), image.getFilenameWithoutExtension() + ".txt");
-        if (labelFile.exists()) {
-            labelFile.delete();
+        Thread thread = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                Map<YoloImage, int[]> changed = ImageDimensionProbe.probeAll(candidates, COPY_THREADS);
+                System.out.println("[DIMENSIONS] Probed " + candidates.size() + " image(s), " + changed.size()
+                    + " updated in " + (System.currentTimeMillis() - start) + " ms");
+                if (!changed.isEmpty() || legacyPlaceholders) {
+                    SwingUtilities.invokeLater(() -> applyImageDimensions(project, changed));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "dimension-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void applyImageDimensions(YoloProject project, Map<YoloImage, int[]> dimensions) {
+        if (project != currentProject) {
+            // Project was closed meanwhile; it will be probed again on next load
+            return;
+        }
+        for (Map.Entry<YoloImage, int[]> entry : dimensions.entrySet()) {
+            entry.getKey().setWidth(entry.getValue()[0]);
+            entry.getKey().setHeight(entry.getValue()[1]);
+        }
+        // Placeholder-sized images that really are 640x480 are not probed again
+        project.setDimensionsProbed(true);
+        project.markDirty();
+        saveCurrentProjectAsync().whenComplete((report, error) -> {
+            if (error != null) {
+                System.err.println("Failed to save probed image dimensions: " + error.getMessage());
+            }
+        });
+    }
+    
+    public void removeImageFromProject(YoloImage image) throws IOException {
+        await(removeImagesFromProject(List.of(image)));
+    }
+    
+    /**
+     * Remove images from the current project, save it in the background and
+     * notify listeners once; call on the EDT. Image and label files are
+     * deleted on the save thread after the saves queued before them, so a
+     * label write still pending for a removed image cannot recreate its file.
+     */
+    public CompletableFuture<SaveReport> removeImagesFromProject(List<YoloImage> images) {
+        if (currentProject == null || images.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
         
-        currentProject.removeImage(image);
-        saveCurrentProject();
+        List<File> files = new ArrayList<>();
+        for (YoloImage image : images) {
+            files.add(new File(image.getPath()));
+            files.add(getLabelFile(image));
+            currentProject.removeImage(image);
+        }
+        CompletableFuture<SaveReport> save = saveCurrentProjectAsync();
+        CompletableFuture<Void> deletes = CompletableFuture.runAsync(() -> {
+            for (File file : files) {
+                if (file.exists() && !file.delete()) {
+                    System.err.println("Failed to delete " + file);
+                }
+            }
+        }, saveExecutor);
         notifyProjectChanged();
+        return save.thenCombine(deletes, (report, ignored) -> report);
+    }
+    
+    /**
+     * Save once after many in-memory annotation changes (e.g. model proposals)
+     * and notify listeners once. Call on the event dispatch thread; the
+     * project is written in the background and listeners are notified on the
+     * event dispatch thread before the returned future completes.
+     */
+    public CompletableFuture<SaveReport> commitAnnotationChanges() {
+        YoloProject project = currentProject;
+        return ProjectAutosave.getInstance().saveNow().whenComplete((report, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (currentProject == project) {
+                    notifyProjectChanged();
+                }
+            }));
     }
     
     public void addClass(String className) throws IOException {
@@ -177,7 +625,18 @@ public class ProjectManager {
         notifyProjectChanged();
     }
     
-    public void exportDataset(String exportPath) throws IOException {
+    public DatasetCache.SyncReport exportDataset(String exportPath) throws IOException {
+        return exportDataset(exportPath, WorkspaceManager.getInstance().getMaterializationStrategy(),
+            DatasetSplitter.defaultSplit(), null);
+    }
+    
+    /**
+     * Export the project as a YOLO dataset (train/images, train/labels, ...).
+     * Re-exporting into the same directory only writes images and labels that
+     * changed since the last export and removes images no longer in the project.
+     */
+    public DatasetCache.SyncReport exportDataset(String exportPath, FileMaterializer.Strategy strategy,
+                                                 DatasetSplitter splitter, BatchProgressListener progressListener) throws IOException {
         if (currentProject == null) {
             throw new IllegalStateException("No project is currently open");
         }
@@ -187,58 +646,26 @@ public class ProjectManager {
             exportDir.mkdirs();
         }
         
-        // Create train/val directories
-        File trainDir = new File(exportDir, "train");
-        File valDir = new File(exportDir, "val");
-        File trainImagesDir = new File(trainDir, "images");
-        File trainLabelsDir = new File(trainDir, "labels");
-        File valImagesDir = new File(valDir, "images");
-        File valLabelsDir = new File(valDir, "labels");
-        
-        trainImagesDir.mkdirs();
-        trainLabelsDir.mkdirs();
-        valImagesDir.mkdirs();
-        valLabelsDir.mkdirs();
-          // Split images (80% train, 20% val) with random shuffle
-        List<YoloImage> images = currentProject.getImages();
-        java.util.Collections.shuffle(images, new java.util.Random(42)); // Fixed seed for reproducibility
-        int trainCount = (int) (images.size() * 0.8);
-          for (int i = 0; i < images.size(); i++) {
-            YoloImage image = images.get(i);
-            boolean isTrain = i < trainCount;
-            
-            File targetImagesDir = isTrain ? trainImagesDir : valImagesDir;
-            File targetLabelsDir = isTrain ? trainLabelsDir : valLabelsDir;
-            
-            // Generate UUID-based filename to avoid special characters and spaces
-            String uuid = java.util.UUID.randomUUID().toString();
-            String originalFilename = image.getFilename();
-            String fileExtension = getFileExtension(originalFilename);
-            String safeFilename = uuid + "." + fileExtension;
-            String safeLabelFilename = uuid + ".txt";
-            
-            // Copy image with safe name
-            File sourceImage = new File(image.getPath());
-            File targetImage = new File(targetImagesDir, safeFilename);
-            Files.copy(sourceImage.toPath(), targetImage.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            
-            // Create label file with safe name
-            File labelFile = new File(targetLabelsDir, safeLabelFilename);
-            try (PrintWriter writer = new PrintWriter(new FileWriter(labelFile))) {
-                for (var annotation : image.getAnnotations()) {
-                    writer.println(annotation.toYoloFormat());
-                }
-            }
-            
-            System.out.println("Exported: " + originalFilename + " -> " + safeFilename);
+        FileMaterializer materializer = new FileMaterializer(strategy);
+        DatasetCache cache = new DatasetCache(exportDir.toPath(), DatasetCache.Layout.SPLIT_FIRST, materializer);
+        cache.setIncludeUnlabeled(true);
+        cache.setSplitter(splitter);
+        if (progressListener != null) {
+            cache.setProgressListener(progressListener::onProgress);
         }
         
+        // Work on a copy; the project's own image order is left alone
+        DatasetCache.SyncReport report = cache.sync(new ArrayList<>(currentProject.getImages()));
+        
         // Create data.yaml file
         File dataYaml = new File(exportDir, "data.yaml");
         try (PrintWriter writer = new PrintWriter(new FileWriter(dataYaml))) {
             writer.println("path: " + exportDir.getAbsolutePath());
             writer.println("train: train/images");
             writer.println("val: val/images");
+            if (splitter != null && splitter.getSplits().contains(DatasetSplitter.TEST)) {
+                writer.println("test: test/images");
+            }
             writer.println("nc: " + currentProject.getClasses().size());
             writer.print("names: [");
             for (int i = 0; i < currentProject.getClasses().size(); i++) {
@@ -247,6 +674,10 @@ public class ProjectManager {
             }
             writer.println("]");
         }
+        
+        System.out.println("[EXPORT] " + report + " (" + materializer.getSummary() + ")");
+        System.out.print(report.getSplitReport().format(currentProject.getClasses()));
+        return report;
     }
     
     public void renameProject(String oldProjectPath, String newProjectName) throws IOException {
@@ -276,11 +707,11 @@ public class ProjectManager {
             throw new IOException("A project with name '" + newProjectName + "' already exists");
         }
         
-        // Load current project data
-        YoloProject project = null;
-        File projectFile = new File(oldProjectDir, "project.json");
-        if (projectFile.exists()) {
-            project = objectMapper.readValue(projectFile, YoloProject.class);
+        boolean hasProjectFile = new File(oldProjectDir, "project.json").exists();
+        boolean isCurrent = currentProject != null && currentProject.getProjectPath().equals(oldProjectPath);
+        if (isCurrent) {
+            // The journal is reopened, and replayed, at the new location
+            closeJournal();
         }
         
         // Rename/move directory
@@ -289,18 +720,15 @@ public class ProjectManager {
             throw new IOException("Failed to rename project directory");
         }
         
-        // Update project data if it exists
-        if (project != null) {
+        // Update project data if it exists; image paths inside the project follow the directory
+        if (hasProjectFile) {
+            YoloProject project = storage.load(newProjectPath);
             project.setName(newProjectName.trim());
-            project.setProjectPath(newProjectPath);
-            
-            // Save updated project file
-            File newProjectFile = new File(newProjectDir, "project.json");
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(newProjectFile, project);
+            storage.writeIndex(project);
             
             // If this is the current project, update it
-            if (currentProject != null && currentProject.getProjectPath().equals(oldProjectPath)) {
-                currentProject = project;
+            if (isCurrent) {
+                attachProject(project);
                 notifyProjectChanged();
             }
         }
@@ -312,6 +740,9 @@ public class ProjectManager {
     }
     
     public void deleteProject(String projectPath) throws IOException {
+        if (currentProject != null && currentProject.getProjectPath().equals(projectPath)) {
+            closeJournal();
+        }
         File projectDir = new File(projectPath);
         if (projectDir.exists()) {
             deleteDirectory(projectDir);
@@ -367,13 +798,80 @@ public class ProjectManager {
     }
     
     /**
-     * Get file extension from filename
+     * Progress of a batch operation; may be called from worker threads
+     */
+    public interface BatchProgressListener {
+        void onProgress(int completed, int total);
+    }
+    
+    /**
+     * Outcome of addImagesToProject
+     */
+    public static class AddImagesResult {
+        private final YoloProject project;
+        private final List<YoloImage> added = new ArrayList<>();
+        private final Map<File, IOException> failures = new LinkedHashMap<>();
+        
+        AddImagesResult(YoloProject project) {
+            this.project = project;
+        }
+        
+        public List<YoloImage> getAdded() { return added; }
+        public Map<File, IOException> getFailures() { return failures; }
+    }
+    
+    /**
+     * Unsaved state copied for one save
+     */
+    private static class SaveSnapshot {
+        final YoloProject project;
+        final AnnotationJournal journal;
+        final List<LabelWrite> labels = new ArrayList<>();
+        List<YoloImage> verifyLabels;
+        ProjectStorage.Snapshot storage;
+        long snapshotMs;
+        
+        SaveSnapshot(YoloProject project, AnnotationJournal journal) {
+            this.project = project;
+            this.journal = journal;
+        }
+    }
+    
+    private static class LabelWrite {
+        final YoloImage image;
+        final File file;
+        final List<YoloAnnotation> annotations;
+        
+        LabelWrite(YoloImage image, File file, List<YoloAnnotation> annotations) {
+            this.image = image;
+            this.file = file;
+            this.annotations = annotations;
+        }
+    }
+    
+    /**
+     * What a call to saveCurrentProject actually wrote
      */
-    private String getFileExtension(String filename) {
-        int lastDotIndex = filename.lastIndexOf('.');
-        if (lastDotIndex > 0 && lastDotIndex < filename.length() - 1) {
-            return filename.substring(lastDotIndex + 1).toLowerCase();
+    public static class SaveReport {
+        private int labelFilesWritten;
+        private int shardFilesWritten;
+        private boolean projectFileWritten;
+        private long bytesWritten;
+        private long snapshotMs;
+        private long elapsedMs;
+        
+        public int getLabelFilesWritten() { return labelFilesWritten; }
+        public int getShardFilesWritten() { return shardFilesWritten; }
+        public boolean isProjectFileWritten() { return projectFileWritten; }
+        public long getBytesWritten() { return bytesWritten; }
+        public long getSnapshotMs() { return snapshotMs; }
+        public long getElapsedMs() { return elapsedMs; }
+        
+        @Override
+        public String toString() {
+            return String.format("%d label file(s), %d annotation shard(s)%s, %d bytes in %d ms (copied in %d ms)",
+                labelFilesWritten, shardFilesWritten, projectFileWritten ? " + project.json" : "", bytesWritten,
+                elapsedMs, snapshotMs);
         }
-        return "jpg"; // default extension
     }
 }
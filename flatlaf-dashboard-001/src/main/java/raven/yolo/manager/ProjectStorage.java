@@ -0,0 +1,873 @@
+package raven.yolo.manager;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import raven.yolo.model.CompactAnnotationList;
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * On-disk layout of a project. project.json holds the project metadata and
+ * a compact image index of [filename, width, height, labeled, class ids]
+ * entries, plus the path for images stored outside the project's images
+ * folder; the class id of every box is enough for counts and statistics
+ * without reading annotations. Annotations live in
+ * annotations/shard-NNNN.json, keyed and assigned to shards by the image's
+ * path relative to the images folder; a shard is read the first time one of
+ * its images' annotations is accessed, and only shards with changes are
+ * rewritten.
+ * <p>
+ * Every write of project.json also writes project.snapshot, a binary copy
+ * that opens without JSON parsing; see {@link BinaryProjectSnapshot}.
+ * <p>
+ * Projects in the original single-file layout, with every annotation inside
+ * project.json, are migrated when loaded; the original file is kept as
+ * project.json.v1.bak.
+ * <p>
+ * Annotations of large projects are read into {@link CompactAnnotationList}s
+ * rather than one object per box; see {@link AnnotationStore}.
+ */
+public class ProjectStorage {
+
+    public static final int STORAGE_VERSION = 3;
+
+    /** First sharded layout: shards keyed by bare filename, no box classes in the index */
+    private static final int FILENAME_KEYED_VERSION = 2;
+    public static final String LEGACY_BACKUP_SUFFIX = ".v1.bak";
+
+    /** Shards are sized for about this many images */
+    private static final int IMAGES_PER_SHARD = 512;
+
+    /** Projects that grew past this many images per shard are resharded on save */
+    private static final int MAX_IMAGES_PER_SHARD = 4 * IMAGES_PER_SHARD;
+
+    /** Projects with at least this many images use the compact store in AUTO mode */
+    public static final int COMPACT_STORE_MIN_IMAGES = 20_000;
+
+    /**
+     * How loaded annotations are held in memory
+     */
+    public enum AnnotationStore {
+        AUTO("Automatic"),
+        OBJECTS("One object per box"),
+        COMPACT("Compact arrays");
+
+        private final String displayName;
+
+        AnnotationStore(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+
+        /**
+         * Parse a stored setting, defaulting to automatic
+         */
+        public static AnnotationStore fromName(String name) {
+            if (name != null) {
+                for (AnnotationStore store : values()) {
+                    if (store.name().equalsIgnoreCase(name)) {
+                        return store;
+                    }
+                }
+            }
+            return AUTO;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    // Writes project metadata without the legacy image list
+    private final ObjectMapper indexMapper;
+
+    private volatile AnnotationStore annotationStore = AnnotationStore.AUTO;
+    private volatile OpenReport lastOpenReport;
+
+    public ProjectStorage(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.indexMapper = objectMapper.copy().addMixIn(YoloProject.class, IndexView.class);
+    }
+
+    public AnnotationStore getAnnotationStore() {
+        return annotationStore;
+    }
+
+    /**
+     * Applies to projects loaded afterwards
+     */
+    public void setAnnotationStore(AnnotationStore annotationStore) {
+        this.annotationStore = annotationStore;
+    }
+
+    private boolean useCompactStore(int imageCount) {
+        return annotationStore == AnnotationStore.COMPACT
+            || (annotationStore == AnnotationStore.AUTO && imageCount >= COMPACT_STORE_MIN_IMAGES);
+    }
+
+    public OpenReport getLastOpenReport() {
+        return lastOpenReport;
+    }
+
+    /**
+     * Read a project's index, leaving annotations to be loaded on demand.
+     * The binary snapshot is used when it matches project.json; otherwise
+     * project.json is parsed and the snapshot rewritten. Older projects are
+     * migrated to the sharded layout first.
+     */
+    public YoloProject load(String projectPath) throws IOException {
+        File projectFile = new File(projectPath, "project.json");
+        if (!projectFile.exists()) {
+            throw new FileNotFoundException("Project file not found: " + projectFile.getAbsolutePath());
+        }
+
+        long start = System.currentTimeMillis();
+        OpenReport report = new OpenReport();
+        byte[] json = Files.readAllBytes(projectFile.toPath());
+        File snapshotFile = new File(projectPath, BinaryProjectSnapshot.FILE_NAME);
+        BinaryProjectSnapshot.Contents contents = snapshotFile.exists()
+            ? BinaryProjectSnapshot.decode(Files.readAllBytes(snapshotFile.toPath()), json) : null;
+
+        YoloProject project;
+        List<IndexEntry> index;
+        if (contents != null) {
+            project = objectMapper.readValue(contents.metadataJson, YoloProject.class);
+            index = contents.index;
+            report.source = OpenReport.Source.SNAPSHOT;
+        } else {
+            JsonNode root = objectMapper.readTree(json);
+            int version = root.path("storage_version").asInt();
+            if (version < FILENAME_KEYED_VERSION) {
+                return migrate(projectPath, root);
+            }
+            JsonNode indexNode = ((ObjectNode) root).remove("image_index");
+            project = objectMapper.treeToValue(root, YoloProject.class);
+            index = readIndex(indexNode, version);
+            report.source = OpenReport.Source.JSON;
+            if (version >= STORAGE_VERSION) {
+                // Projects saved before snapshots existed, or changed outside the app
+                writeBinarySnapshot(snapshotFile, json, objectMapper.writeValueAsBytes(root), index);
+            }
+        }
+        report.indexMs = System.currentTimeMillis() - start;
+        project.setProjectPath(projectPath);
+
+        File imagesDir = project.getImagesDir();
+        List<YoloImage> images = new ArrayList<>(index.size());
+        for (IndexEntry entry : index) {
+            String path = entry.path != null ? entry.path : new File(imagesDir, entry.filename).getAbsolutePath();
+            YoloImage image = new YoloImage(entry.filename, path, entry.width, entry.height);
+            image.setLabeled(entry.labeled);
+            image.setIndexedClassIds(entry.classIds);
+            images.add(image);
+        }
+        boolean filenameKeys = project.getStorageVersion() < STORAGE_VERSION;
+        ShardLoader loader = new ShardLoader(project, images, useCompactStore(index.size()), filenameKeys);
+        for (YoloImage image : images) {
+            image.setAnnotationLoader(loader);
+        }
+        project.setImages(images);
+        project.markSaved();
+        if (filenameKeys) {
+            return upgrade(projectPath, project, start);
+        }
+
+        report.imageCount = images.size();
+        report.totalMs = System.currentTimeMillis() - start;
+        lastOpenReport = report;
+        System.out.println("[STORAGE] Opened " + report + (loader.compact ? ", compact annotations" : ""));
+        return project;
+    }
+
+    /**
+     * Index entries are [filename, width, height, labeled, [class ids], path?];
+     * version 2 entries have no class ids
+     */
+    private static List<IndexEntry> readIndex(JsonNode index, int version) {
+        List<IndexEntry> entries = new ArrayList<>(index != null ? index.size() : 0);
+        if (index == null) {
+            return entries;
+        }
+        int pathField = version > FILENAME_KEYED_VERSION ? 5 : 4;
+        for (JsonNode entry : index) {
+            int[] classIds = null;
+            if (version > FILENAME_KEYED_VERSION) {
+                JsonNode ids = entry.path(4);
+                classIds = new int[ids.size()];
+                for (int i = 0; i < classIds.length; i++) {
+                    classIds[i] = ids.get(i).asInt();
+                }
+            }
+            entries.add(new IndexEntry(entry.path(0).asText(), entry.path(1).asInt(), entry.path(2).asInt(),
+                entry.path(3).asInt() != 0, classIds,
+                entry.path(pathField).isTextual() ? entry.get(pathField).asText() : null));
+        }
+        return entries;
+    }
+
+    /**
+     * Rewrite a version 2 project, whose shards are keyed by bare filename
+     * and whose index holds no box classes, in the current layout, then open
+     * it again so annotations are loaded lazily
+     */
+    private YoloProject upgrade(String projectPath, YoloProject project, long start) throws IOException {
+        long bytes = saveAll(project);
+        System.out.println("[STORAGE] Upgraded " + project.getImages().size() + " images to storage version "
+            + STORAGE_VERSION + " (" + bytes + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+        return load(projectPath);
+    }
+
+    /**
+     * Convert a single-file project: annotations are split into shards and
+     * project.json is rewritten as an index
+     */
+    private YoloProject migrate(String projectPath, JsonNode root) throws IOException {
+        long start = System.currentTimeMillis();
+        YoloProject project = objectMapper.treeToValue(root, YoloProject.class);
+        project.setProjectPath(projectPath);
+
+        Path projectFile = project.getProjectFile().toPath();
+        Files.copy(projectFile, projectFile.resolveSibling(projectFile.getFileName() + LEGACY_BACKUP_SUFFIX),
+            StandardCopyOption.REPLACE_EXISTING);
+        long bytes = saveAll(project);
+        project.markSaved();
+
+        OpenReport report = new OpenReport();
+        report.source = OpenReport.Source.MIGRATED;
+        report.imageCount = project.getImages().size();
+        report.totalMs = System.currentTimeMillis() - start;
+        lastOpenReport = report;
+        if (useCompactStore(project.getImages().size())) {
+            // Reopen from the new layout rather than keep every annotation as an object
+            project = load(projectPath);
+        }
+
+        System.out.println("[STORAGE] Migrated " + project.getImages().size() + " images to "
+            + project.getAnnotationShards() + " annotation shards (" + bytes + " bytes) in "
+            + (System.currentTimeMillis() - start) + " ms");
+        return project;
+    }
+
+    /**
+     * Write every shard and the index, e.g. for a new or migrated project.
+     * Returns the number of bytes written.
+     */
+    public long saveAll(YoloProject project) throws IOException {
+        return write(snapshotAll(project));
+    }
+
+    /**
+     * Rewrite project.json alone, e.g. after a rename
+     */
+    public long writeIndex(YoloProject project) throws IOException {
+        Snapshot snapshot = new Snapshot(project);
+        snapshotIndex(project, snapshot);
+        return write(snapshot);
+    }
+
+    /**
+     * True if the project has outgrown its shard count, or was never sharded
+     */
+    public boolean needsFullSave(YoloProject project) {
+        return project.getStorageVersion() < STORAGE_VERSION || project.getAnnotationShards() <= 0
+            || project.getImages().size() > (long) project.getAnnotationShards() * MAX_IMAGES_PER_SHARD;
+    }
+
+    /**
+     * Copy what changed since the last save: shards holding changed or removed
+     * images, and the index if an entry or the metadata changed.
+     * Call on the thread that edits the project; the snapshot can then be
+     * written from any thread while editing goes on. The copied state is
+     * marked saved; see {@link #restore} if writing fails.
+     */
+    public Snapshot snapshot(YoloProject project) {
+        if (needsFullSave(project)) {
+            return snapshotAll(project);
+        }
+        int shardCount = project.getAnnotationShards();
+        String imagesDirPrefix = project.getImagesDirPrefix();
+        Set<Integer> shards = new TreeSet<>();
+        for (YoloImage image : project.getImages()) {
+            if (image.isStoredAnnotationsDirty()) {
+                shards.add(shardOf(YoloProject.storageKey(imagesDirPrefix, image), shardCount));
+            }
+        }
+        for (String key : project.getRemovedAnnotationKeys()) {
+            shards.add(shardOf(key, shardCount));
+        }
+
+        Snapshot snapshot = new Snapshot(project);
+        snapshotShards(project, shards, snapshot);
+        if (project.isIndexDirty()) {
+            snapshotIndex(project, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copy every shard and the index, resharding for the current image count
+     */
+    public Snapshot snapshotAll(YoloProject project) {
+        // Everything must be in memory before shard assignments can change
+        for (YoloImage image : project.getImages()) {
+            image.getAnnotations();
+            if (!image.isAnnotationsLoaded()) {
+                System.err.println("[STORAGE] Full save postponed: annotations of " + image.getFilename()
+                    + " cannot be read");
+                Snapshot postponed = new Snapshot(project);
+                postponed.complete = false;
+                return postponed;
+            }
+        }
+        project.setAnnotationShards(shardCountFor(project.getImages().size()));
+
+        Set<Integer> shards = new TreeSet<>();
+        for (int shard = 0; shard < project.getAnnotationShards(); shard++) {
+            shards.add(shard);
+        }
+        Snapshot snapshot = new Snapshot(project);
+        snapshotShards(project, shards, snapshot);
+        snapshot.deleteShardsFrom = project.getAnnotationShards();
+        snapshotIndex(project, snapshot);
+        return snapshot;
+    }
+
+    private void snapshotShards(YoloProject project, Set<Integer> shards, Snapshot snapshot) {
+        int shardCount = project.getAnnotationShards();
+        for (int shard : shards) {
+            snapshot.shards.put(shard, new ArrayList<>());
+        }
+        String imagesDirPrefix = project.getImagesDirPrefix();
+        Map<YoloImage, String> members = new LinkedHashMap<>();
+        if (!shards.isEmpty()) {
+            for (YoloImage image : project.getImages()) {
+                String key = YoloProject.storageKey(imagesDirPrefix, image);
+                if (shards.contains(shardOf(key, shardCount))) {
+                    members.put(image, key);
+                }
+            }
+        }
+        // Reads each unloaded shard once, through its first image, before it is overwritten
+        Set<Integer> unreadable = new TreeSet<>();
+        for (Map.Entry<YoloImage, String> member : members.entrySet()) {
+            int shard = shardOf(member.getValue(), shardCount);
+            if (!unreadable.contains(shard)) {
+                member.getKey().getAnnotations();
+                if (!member.getKey().isAnnotationsLoaded()) {
+                    unreadable.add(shard);
+                }
+            }
+        }
+        for (Map.Entry<YoloImage, String> member : members.entrySet()) {
+            YoloImage image = member.getKey();
+            int shard = shardOf(member.getValue(), shardCount);
+            if (unreadable.contains(shard)) {
+                continue;
+            }
+            List<YoloAnnotation> annotations = image.getAnnotations();
+            if (!annotations.isEmpty()) {
+                snapshot.shards.get(shard).add(new StoredImage(member.getValue(), copyOf(annotations)));
+            }
+            if (image.isStoredAnnotationsDirty()) {
+                image.markStoredAnnotationsClean();
+                snapshot.savedImages.add(image);
+            }
+        }
+        if (!unreadable.isEmpty()) {
+            // Left as they are on disk, and saved again next time
+            System.err.println("[STORAGE] Not rewriting unreadable annotation shard(s) " + unreadable);
+            snapshot.shards.keySet().removeAll(unreadable);
+            snapshot.complete = false;
+        }
+        project.getRemovedAnnotationKeys().removeIf(key -> {
+            if (unreadable.contains(shardOf(key, shardCount))) {
+                return false;
+            }
+            snapshot.removedKeys.add(key);
+            return true;
+        });
+    }
+
+    private void snapshotIndex(YoloProject project, Snapshot snapshot) {
+        project.setStorageVersion(STORAGE_VERSION);
+        snapshot.metadata = indexMapper.valueToTree(project);
+        String imagesDir = project.getImagesDir().getAbsolutePath();
+        snapshot.index = new ArrayList<>(project.getImages().size());
+        for (YoloImage image : project.getImages()) {
+            String path = image.getPath();
+            boolean defaultPath = path == null || path.equals(new File(imagesDir, image.getFilename()).getAbsolutePath());
+            snapshot.index.add(new IndexEntry(image.getFilename(), image.getWidth(), image.getHeight(),
+                image.isLabeled(), image.getAnnotationClassIds(), defaultPath ? null : path));
+        }
+        project.markProjectFileSaved();
+    }
+
+    /**
+     * Mark a snapshot's state unsaved again after writing it failed; call on
+     * the thread that edits the project
+     */
+    public void restore(Snapshot snapshot) {
+        for (YoloImage image : snapshot.savedImages) {
+            image.markAnnotationsDirty();
+        }
+        // Their shards still hold the removed images' entries
+        snapshot.project.getRemovedAnnotationKeys().addAll(snapshot.removedKeys);
+        if (snapshot.deleteShardsFrom >= 0) {
+            // A failed full save may leave shards of both layouts; the next save redoes it
+            snapshot.project.setAnnotationShards(0);
+        }
+        if (snapshot.index != null) {
+            snapshot.project.markDirty();
+        }
+    }
+
+    /**
+     * Write a snapshot and return the number of bytes written
+     */
+    public long write(Snapshot snapshot) throws IOException {
+        long bytes = 0;
+        if (!snapshot.shards.isEmpty()) {
+            snapshot.annotationsDir.mkdirs();
+            for (Map.Entry<Integer, List<StoredImage>> shard : snapshot.shards.entrySet()) {
+                bytes += writeAtomically(shardFile(snapshot.annotationsDir, shard.getKey()), shardBytes(shard.getValue()));
+            }
+        }
+        if (snapshot.deleteShardsFrom >= 0) {
+            deleteShardsFrom(snapshot.annotationsDir, snapshot.deleteShardsFrom);
+        }
+        if (snapshot.index != null) {
+            byte[] json = indexBytes(snapshot.metadata, snapshot.index);
+            bytes += writeAtomically(snapshot.projectFile, json);
+            bytes += writeBinarySnapshot(snapshot.snapshotFile, json, objectMapper.writeValueAsBytes(snapshot.metadata),
+                snapshot.index);
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the binary copy of a project.json just written or read. Failing
+     * is not an error: a missing or stale copy only makes the next open
+     * parse project.json.
+     */
+    private long writeBinarySnapshot(File target, byte[] projectJson, byte[] metadataJson, List<IndexEntry> index) {
+        try {
+            return writeAtomically(target, BinaryProjectSnapshot.encode(projectJson, metadataJson, index));
+        } catch (IOException e) {
+            System.err.println("[STORAGE] Cannot write binary snapshot: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private byte[] indexBytes(ObjectNode metadata, List<IndexEntry> index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + index.size() * 48);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            Iterator<Map.Entry<String, JsonNode>> fields = metadata.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+            generator.writeArrayFieldStart("image_index");
+            for (IndexEntry entry : index) {
+                generator.writeStartArray();
+                generator.writeString(entry.filename);
+                generator.writeNumber(entry.width);
+                generator.writeNumber(entry.height);
+                generator.writeNumber(entry.labeled ? 1 : 0);
+                generator.writeArray(entry.classIds, 0, entry.classIds.length);
+                if (entry.path != null) {
+                    generator.writeString(entry.path);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] shardBytes(List<StoredImage> images) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("images");
+            for (StoredImage image : images) {
+                generator.writeFieldName(image.key);
+                writeAnnotations(generator, image.annotations);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a shard's annotations, packed into compact lists if compactFor is
+     * the project they belong to
+     */
+    private Map<String, List<YoloAnnotation>> readShard(File annotationsDir, int shard, YoloProject compactFor)
+            throws IOException {
+        File file = shardFile(annotationsDir, shard);
+        Map<String, List<YoloAnnotation>> entries = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        Iterator<Map.Entry<String, JsonNode>> images = objectMapper.readTree(file).path("images").fields();
+        while (images.hasNext()) {
+            Map.Entry<String, JsonNode> entry = images.next();
+            entries.put(entry.getKey(), readAnnotations(entry.getValue(), compactFor));
+        }
+        return entries;
+    }
+
+    /**
+     * Annotations as compact [class_id, class_name, x_center, y_center,
+     * width, height] arrays, as stored in shards
+     */
+    static void writeAnnotations(JsonGenerator generator, List<YoloAnnotation> annotations) throws IOException {
+        generator.writeStartArray();
+        for (YoloAnnotation annotation : annotations) {
+            generator.writeStartArray();
+            generator.writeNumber(annotation.getClassId());
+            generator.writeString(annotation.getClassName());
+            generator.writeNumber(annotation.getXCenter());
+            generator.writeNumber(annotation.getYCenter());
+            generator.writeNumber(annotation.getWidth());
+            generator.writeNumber(annotation.getHeight());
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Detached copy, safe to serialize while the originals are edited
+     */
+    static List<YoloAnnotation> copyOf(List<YoloAnnotation> annotations) {
+        if (annotations instanceof CompactAnnotationList) {
+            return ((CompactAnnotationList) annotations).copy();
+        }
+        List<YoloAnnotation> copy = new ArrayList<>(annotations.size());
+        for (YoloAnnotation a : annotations) {
+            copy.add(new YoloAnnotation(a.getClassId(), a.getClassName(), a.getXCenter(), a.getYCenter(),
+                a.getWidth(), a.getHeight()));
+        }
+        return copy;
+    }
+
+    static List<YoloAnnotation> readAnnotations(JsonNode array) {
+        return readAnnotations(array, null);
+    }
+
+    static List<YoloAnnotation> readAnnotations(JsonNode array, YoloProject compactFor) {
+        if (compactFor != null) {
+            CompactAnnotationList annotations = new CompactAnnotationList(compactFor, array.size());
+            for (JsonNode a : array) {
+                annotations.add(a.path(0).asInt(), a.path(2).asDouble(), a.path(3).asDouble(),
+                    a.path(4).asDouble(), a.path(5).asDouble());
+            }
+            return annotations;
+        }
+        List<YoloAnnotation> annotations = new ArrayList<>(array.size());
+        for (JsonNode a : array) {
+            annotations.add(new YoloAnnotation(a.path(0).asInt(), a.path(1).asText(null),
+                a.path(2).asDouble(), a.path(3).asDouble(), a.path(4).asDouble(), a.path(5).asDouble()));
+        }
+        return annotations;
+    }
+
+    private void deleteShardsFrom(File annotationsDir, int firstUnused) {
+        File[] files = annotationsDir.listFiles((dir, name) -> name.startsWith("shard-") && name.endsWith(".json"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try {
+                int shard = Integer.parseInt(file.getName().substring(6, file.getName().length() - 5));
+                if (shard >= firstUnused) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } catch (NumberFormatException | IOException e) {
+                System.err.println("[STORAGE] Cannot remove unused shard " + file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replace a file so that a crash leaves either the old or the new
+     * content: the bytes go to a synced temp file that is renamed over the
+     * target. Returns the number of bytes written.
+     */
+    static long writeAtomically(File target, byte[] bytes) throws IOException {
+        Path temp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return bytes.length;
+    }
+
+    private static File shardFile(File annotationsDir, int shard) {
+        return new File(annotationsDir, String.format("shard-%04d.json", shard));
+    }
+
+    static int shardOf(String filename, int shardCount) {
+        return shardCount <= 1 || filename == null ? 0 : Math.floorMod(filename.hashCode(), shardCount);
+    }
+
+    /**
+     * Smallest power of two that keeps shards near IMAGES_PER_SHARD images
+     */
+    static int shardCountFor(int imageCount) {
+        int shards = 1;
+        while ((long) shards * IMAGES_PER_SHARD < imageCount) {
+            shards <<= 1;
+        }
+        return shards;
+    }
+
+    /**
+     * Images by the key their annotations are stored under
+     */
+    static Map<String, YoloImage> imagesByKey(YoloProject project) {
+        String imagesDirPrefix = project.getImagesDirPrefix();
+        Map<String, YoloImage> images = new HashMap<>(project.getImages().size() * 2);
+        for (YoloImage image : project.getImages()) {
+            images.put(YoloProject.storageKey(imagesDirPrefix, image), image);
+        }
+        return images;
+    }
+
+    /**
+     * Reads a whole shard when one of its images is first accessed and
+     * hands every image in it its annotations. Images are looked up in a map
+     * built when the project is opened and owned by the loader, so shards can
+     * be read from any thread without touching the project's own indexes;
+     * images added later are created with their annotations loaded.
+     */
+    private class ShardLoader implements YoloImage.AnnotationLoader {
+        private final File annotationsDir;
+        private final int shardCount;
+        private final YoloProject compactFor;
+        private final boolean compact;
+        private final boolean filenameKeys;
+        private final String imagesDirPrefix;
+        private final Map<String, YoloImage> imagesByKey;
+
+        // Shards already read; their images without an entry have no annotations
+        private final Set<Integer> loadedShards = new HashSet<>();
+
+        ShardLoader(YoloProject project, List<YoloImage> images, boolean compact, boolean filenameKeys) {
+            this.annotationsDir = project.getAnnotationsDir();
+            this.shardCount = project.getAnnotationShards();
+            this.compactFor = compact ? project : null;
+            this.compact = compact;
+            this.filenameKeys = filenameKeys;
+            this.imagesDirPrefix = project.getImagesDirPrefix();
+            this.imagesByKey = new HashMap<>(images.size() * 2);
+            for (YoloImage image : images) {
+                // Version 2 projects keep the first of several images with one filename, as they always did
+                imagesByKey.putIfAbsent(keyOf(image), image);
+            }
+        }
+
+        @Override
+        public synchronized List<YoloAnnotation> load(YoloImage image) {
+            if (image.isAnnotationsLoaded()) {
+                return image.getAnnotations();
+            }
+            String key = keyOf(image);
+            if (imagesByKey.get(key) != image) {
+                // Path changed since the project was opened; annotations are stored under the old key
+                key = null;
+                for (Map.Entry<String, YoloImage> entry : imagesByKey.entrySet()) {
+                    if (entry.getValue() == image) {
+                        key = entry.getKey();
+                        break;
+                    }
+                }
+                if (key == null) {
+                    return new ArrayList<>();
+                }
+            }
+            int shard = shardOf(key, shardCount);
+            if (loadedShards.contains(shard)) {
+                return new ArrayList<>();
+            }
+            Map<String, List<YoloAnnotation>> entries;
+            try {
+                entries = readShard(annotationsDir, shard, compactFor);
+            } catch (IOException e) {
+                // The shard's images stay unloaded, so a save never overwrites it with empty lists
+                System.err.println("[STORAGE] Cannot read annotation shard " + shard + ": " + e.getMessage());
+                return null;
+            }
+            loadedShards.add(shard);
+            List<YoloAnnotation> own = entries.remove(key);
+            for (Map.Entry<String, List<YoloAnnotation>> entry : entries.entrySet()) {
+                YoloImage other = imagesByKey.get(entry.getKey());
+                if (other != null) {
+                    other.setLoadedAnnotations(entry.getValue());
+                }
+            }
+            return own != null ? own : new ArrayList<>();
+        }
+
+        private String keyOf(YoloImage image) {
+            return filenameKeys ? image.getFilename() : YoloProject.storageKey(imagesDirPrefix, image);
+        }
+    }
+
+    /**
+     * State copied for a save; written by {@link #write}
+     */
+    public static class Snapshot {
+        private final YoloProject project;
+        private final File projectFile;
+        private final File snapshotFile;
+        private final File annotationsDir;
+        private final Map<Integer, List<StoredImage>> shards = new TreeMap<>();
+        private final List<YoloImage> savedImages = new ArrayList<>();
+        private final List<String> removedKeys = new ArrayList<>();
+        private int deleteShardsFrom = -1;
+        private ObjectNode metadata;
+        private List<IndexEntry> index;
+        // False if unreadable shards were left out and their images are still unsaved
+        private boolean complete = true;
+
+        private Snapshot(YoloProject project) {
+            this.project = project;
+            this.projectFile = project.getProjectFile();
+            this.snapshotFile = project.getSnapshotFile();
+            this.annotationsDir = project.getAnnotationsDir();
+        }
+
+        public int getShardCount() {
+            return shards.size();
+        }
+
+        public boolean hasIndex() {
+            return index != null;
+        }
+
+        public boolean isEmpty() {
+            return shards.isEmpty() && index == null && deleteShardsFrom < 0;
+        }
+
+        /**
+         * True if everything unsaved when the snapshot was taken is in it
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * How the last project was opened and how long it took
+     */
+    public static class OpenReport {
+        public enum Source {
+            SNAPSHOT("binary snapshot"),
+            JSON("project.json"),
+            MIGRATED("migrated single-file project.json");
+
+            private final String displayName;
+
+            Source(String displayName) {
+                this.displayName = displayName;
+            }
+
+            @Override
+            public String toString() {
+                return displayName;
+            }
+        }
+
+        private Source source;
+        private int imageCount;
+        private long indexMs;
+        private long totalMs;
+
+        public Source getSource() { return source; }
+        public int getImageCount() { return imageCount; }
+        /** Time spent reading and decoding the index, before images are built */
+        public long getIndexMs() { return indexMs; }
+        public long getTotalMs() { return totalMs; }
+
+        @Override
+        public String toString() {
+            return String.format("%d images from %s in %d ms (index read in %d ms)",
+                imageCount, source, totalMs, indexMs);
+        }
+    }
+
+    private static class StoredImage {
+        final String key;
+        final List<YoloAnnotation> annotations;
+
+        StoredImage(String key, List<YoloAnnotation> annotations) {
+            this.key = key;
+            this.annotations = annotations;
+        }
+    }
+
+    static class IndexEntry {
+        final String filename;
+        final int width;
+        final int height;
+        final boolean labeled;
+        // Class id of each box; null if the index predates them
+        final int[] classIds;
+        final String path;
+
+        IndexEntry(String filename, int width, int height, boolean labeled, int[] classIds, String path) {
+            this.filename = filename;
+            this.width = width;
+            this.height = height;
+            this.labeled = labeled;
+            this.classIds = classIds;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Leaves the legacy image list and the derived folder paths out of
+     * project.json; images are written as the index instead
+     */
+    @JsonIgnoreProperties(value = {"images", "imagesDir", "labelsDir", "projectFile", "annotationsDir", "journalFile",
+        "snapshotFile"}, allowSetters = true)
+    private abstract static class IndexView {
+    }
+}
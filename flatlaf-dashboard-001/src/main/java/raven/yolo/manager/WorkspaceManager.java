@@ -3,6 +3,7 @@ package raven.yolo.manager;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import raven.yolo.model.WorkspaceConfig;
+import raven.yolo.utils.FileMaterializer;
 
 import javax.swing.filechooser.FileSystemView;
 import java.io.File;
@@ -206,6 +207,36 @@ public class WorkspaceManager {
         }
     }
     
+    /**
+     * Strategy used to place image files into imports, exports and training datasets
+     */
+    public FileMaterializer.Strategy getMaterializationStrategy() {
+        return FileMaterializer.Strategy.fromName(getSettings().getFileMaterialization());
+    }
+    
+    public void setMaterializationStrategy(FileMaterializer.Strategy strategy) {
+        WorkspaceConfig.WorkspaceSettings settings = getSettings();
+        if (!strategy.name().equals(settings.getFileMaterialization())) {
+            settings.setFileMaterialization(strategy.name());
+            updateSettings(settings);
+        }
+    }
+    
+    /**
+     * How annotations of projects opened from now on are held in memory
+     */
+    public ProjectStorage.AnnotationStore getAnnotationStore() {
+        return ProjectStorage.AnnotationStore.fromName(getSettings().getAnnotationStore());
+    }
+    
+    public void setAnnotationStore(ProjectStorage.AnnotationStore store) {
+        WorkspaceConfig.WorkspaceSettings settings = getSettings();
+        if (!store.name().equals(settings.getAnnotationStore())) {
+            settings.setAnnotationStore(store.name());
+            updateSettings(settings);
+        }
+    }
+    
     /**
      * Check if project exists in workspace
      */
@@ -0,0 +1,212 @@
+package raven.yolo.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An image's annotations packed into primitive arrays: four float
+ * coordinates and a short class id per box, about 18 bytes against roughly
+ * 150 for a YoloAnnotation holding its own class name. Class names are
+ * resolved through the project's class list.
+ * <p>
+ * Elements are returned as fresh YoloAnnotation copies, so changing one does
+ * not change the list; replace a box with {@link #set} instead. For the same
+ * reason boxes are looked up by value rather than identity.
+ */
+public class CompactAnnotationList extends AbstractList<YoloAnnotation> implements RandomAccess {
+
+    private static final float[] NO_BOXES = new float[0];
+    private static final short[] NO_CLASSES = new short[0];
+
+    private final YoloProject project;
+    private float[] boxes;
+    private short[] classIds;
+    private int size;
+
+    public CompactAnnotationList(YoloProject project) {
+        this(project, 0);
+    }
+
+    public CompactAnnotationList(YoloProject project, int capacity) {
+        this.project = project;
+        this.boxes = capacity > 0 ? new float[capacity * 4] : NO_BOXES;
+        this.classIds = capacity > 0 ? new short[capacity] : NO_CLASSES;
+    }
+
+    public CompactAnnotationList(YoloProject project, Collection<? extends YoloAnnotation> annotations) {
+        this(project, annotations.size());
+        addAll(annotations);
+    }
+
+    @Override
+    public YoloAnnotation get(int index) {
+        checkIndex(index);
+        int box = index * 4;
+        int classId = classIds[index];
+        return new YoloAnnotation(classId, getClassName(classId),
+            unpack(boxes[box]), unpack(boxes[box + 1]), unpack(boxes[box + 2]), unpack(boxes[box + 3]));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public YoloAnnotation set(int index, YoloAnnotation annotation) {
+        YoloAnnotation previous = get(index);
+        store(index, annotation.getClassId(), annotation.getXCenter(), annotation.getYCenter(),
+            annotation.getWidth(), annotation.getHeight());
+        return previous;
+    }
+
+    @Override
+    public void add(int index, YoloAnnotation annotation) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        insert(index, annotation.getClassId(), annotation.getXCenter(), annotation.getYCenter(),
+            annotation.getWidth(), annotation.getHeight());
+    }
+
+    /**
+     * Append a box without going through a YoloAnnotation
+     */
+    public void add(int classId, double xCenter, double yCenter, double width, double height) {
+        insert(size, classId, xCenter, yCenter, width, height);
+    }
+
+    @Override
+    public YoloAnnotation remove(int index) {
+        YoloAnnotation removed = get(index);
+        int moved = size - index - 1;
+        System.arraycopy(classIds, index + 1, classIds, index, moved);
+        System.arraycopy(boxes, (index + 1) * 4, boxes, index * 4, moved * 4);
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof YoloAnnotation)) {
+            return -1;
+        }
+        YoloAnnotation annotation = (YoloAnnotation) o;
+        for (int i = 0; i < size; i++) {
+            int box = i * 4;
+            if (classIds[i] == annotation.getClassId()
+                    && boxes[box] == pack(annotation.getXCenter())
+                    && boxes[box + 1] == pack(annotation.getYCenter())
+                    && boxes[box + 2] == pack(annotation.getWidth())
+                    && boxes[box + 3] == pack(annotation.getHeight())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        boxes = NO_BOXES;
+        classIds = NO_CLASSES;
+        size = 0;
+        modCount++;
+    }
+
+    public int getClassId(int index) {
+        checkIndex(index);
+        return classIds[index];
+    }
+
+    /**
+     * Independent copy, trimmed to size
+     */
+    public CompactAnnotationList copy() {
+        CompactAnnotationList copy = new CompactAnnotationList(project, 0);
+        copy.boxes = size > 0 ? Arrays.copyOf(boxes, size * 4) : NO_BOXES;
+        copy.classIds = size > 0 ? Arrays.copyOf(classIds, size) : NO_CLASSES;
+        copy.size = size;
+        return copy;
+    }
+
+    public void trimToSize() {
+        if (classIds.length > size) {
+            boxes = size > 0 ? Arrays.copyOf(boxes, size * 4) : NO_BOXES;
+            classIds = size > 0 ? Arrays.copyOf(classIds, size) : NO_CLASSES;
+        }
+    }
+
+    private String getClassName(int classId) {
+        List<String> classes = project.getClasses();
+        return classId < classes.size() ? classes.get(classId) : "class_" + classId;
+    }
+
+    /**
+     * Coordinates keep the six decimals of a label file. A float holds a
+     * six-decimal value closely enough for it to be recovered exactly, so 0.4
+     * comes back as 0.4 rather than 0.40000000596.
+     */
+    private static float pack(double value) {
+        return (float) (Math.round(value * 1e6d) / 1e6d);
+    }
+
+    private static double unpack(float value) {
+        return Math.round(value * 1e6d) / 1e6d;
+    }
+
+    private void insert(int index, int classId, double xCenter, double yCenter, double width, double height) {
+        checkClassId(classId);
+        if (size == classIds.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            classIds = Arrays.copyOf(classIds, capacity);
+            boxes = Arrays.copyOf(boxes, capacity * 4);
+        }
+        int moved = size - index;
+        System.arraycopy(classIds, index, classIds, index + 1, moved);
+        System.arraycopy(boxes, index * 4, boxes, (index + 1) * 4, moved * 4);
+        size++;
+        modCount++;
+        store(index, classId, xCenter, yCenter, width, height);
+    }
+
+    private void store(int index, int classId, double xCenter, double yCenter, double width, double height) {
+        checkClassId(classId);
+        int box = index * 4;
+        classIds[index] = (short) classId;
+        boxes[box] = pack(xCenter);
+        boxes[box + 1] = pack(yCenter);
+        boxes[box + 2] = pack(width);
+        boxes[box + 3] = pack(height);
+    }
+
+    private static void checkClassId(int classId) {
+        if (classId < 0 || classId > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Class id out of range: " + classId);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -158,6 +158,14 @@ public class WorkspaceConfig {
         @JsonProperty("theme")
         private String theme = "system";
         
+        // How images are placed into imported projects, exports and training datasets
+        @JsonProperty("file_materialization")
+        private String fileMaterialization = "COPY";
+        
+        // How loaded annotations are held in memory; AUTO packs them for large projects
+        @JsonProperty("annotation_store")
+        private String annotationStore = "AUTO";
+        
         public WorkspaceSettings() {}        
         // Getters and Setters
         public String getDefaultImageFormat() {
@@ -191,5 +199,21 @@ public class WorkspaceConfig {
         public void setTheme(String theme) {
             this.theme = theme;
         }
+        
+        public String getFileMaterialization() {
+            return fileMaterialization;
+        }
+        
+        public void setFileMaterialization(String fileMaterialization) {
+            this.fileMaterialization = fileMaterialization;
+        }
+        
+        public String getAnnotationStore() {
+            return annotationStore;
+        }
+        
+        public void setAnnotationStore(String annotationStore) {
+            this.annotationStore = annotationStore;
+        }
     }
 }
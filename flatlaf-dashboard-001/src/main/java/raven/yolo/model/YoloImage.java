@@ -1,5 +1,6 @@
 package raven.yolo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -27,6 +28,26 @@ public class YoloImage {
     @JsonProperty("labeled")
     private boolean labeled;
     
+    // True while the label file on disk lags behind the in-memory annotations
+    @JsonIgnore
+    private boolean annotationsDirty;
+    
+    // True while the project's annotation shard lags behind the in-memory annotations
+    @JsonIgnore
+    private boolean storedAnnotationsDirty;
+    
+    // Labeled flag as last written to the project index
+    @JsonIgnore
+    private boolean indexedLabeled;
+    
+    // Class id of each box as last written to the project index; null if unknown
+    @JsonIgnore
+    private int[] indexedClassIds;
+    
+    // Fetches annotations on first access; null annotations mean not loaded yet
+    @JsonIgnore
+    private AnnotationLoader annotationLoader;
+    
     public YoloImage() {
         this.annotations = new ArrayList<>();
         this.labeled = false;
@@ -38,6 +59,8 @@ public class YoloImage {
         this.path = path;
         this.width = width;
         this.height = height;
+        this.annotationsDirty = true;
+        this.storedAnnotationsDirty = true;
     }
     
     // Getters and Setters
@@ -74,11 +97,83 @@ public class YoloImage {
     }
     
     public List<YoloAnnotation> getAnnotations() {
+        if (annotations == null) {
+            AnnotationLoader loader = annotationLoader;
+            List<YoloAnnotation> loaded = loader != null ? loader.load(this) : null;
+            if (annotations == null) {
+                if (loaded == null && loader != null) {
+                    // Storage could not be read; stay unloaded and try again on the next access
+                    return new ArrayList<>();
+                }
+                annotations = loaded != null ? loaded : new ArrayList<>();
+            }
+        }
         return annotations;
     }
     
     public void setAnnotations(List<YoloAnnotation> annotations) {
         this.annotations = annotations;
+        this.annotationsDirty = true;
+        this.storedAnnotationsDirty = true;
+    }
+    
+    /**
+     * Leave annotations unloaded until first accessed, then fetch them
+     * through the loader
+     */
+    public void setAnnotationLoader(AnnotationLoader annotationLoader) {
+        this.annotationLoader = annotationLoader;
+        this.annotations = null;
+    }
+    
+    /**
+     * Fill in annotations read from storage, without marking anything dirty;
+     * ignored if the annotations are already loaded
+     */
+    public void setLoadedAnnotations(List<YoloAnnotation> annotations) {
+        if (this.annotations == null) {
+            this.annotations = annotations;
+        }
+    }
+    
+    @JsonIgnore
+    public boolean isAnnotationsLoaded() {
+        return annotations != null;
+    }
+    
+    /**
+     * Number of boxes, taken from the project index while the annotations
+     * are not loaded
+     */
+    @JsonIgnore
+    public int getAnnotationCount() {
+        List<YoloAnnotation> current = annotations;
+        if (current != null) {
+            return current.size();
+        }
+        int[] indexed = indexedClassIds;
+        return indexed != null ? indexed.length : getAnnotations().size();
+    }
+    
+    /**
+     * Class id of each box, taken from the project index while the
+     * annotations are not loaded; the array must not be modified
+     */
+    @JsonIgnore
+    public int[] getAnnotationClassIds() {
+        List<YoloAnnotation> current = annotations;
+        if (current == null && indexedClassIds != null) {
+            return indexedClassIds;
+        }
+        return classIdsOf(current != null ? current : getAnnotations());
+    }
+    
+    /**
+     * Class ids read from the project index, used until the annotations are
+     * loaded
+     */
+    public void setIndexedClassIds(int[] classIds) {
+        this.indexedClassIds = classIds;
     }
     
     public boolean isLabeled() {
@@ -91,18 +186,103 @@ public class YoloImage {
     
     // Utility methods
     public void addAnnotation(YoloAnnotation annotation) {
-        annotations.add(annotation);
+        getAnnotations().add(annotation);
         labeled = true;
+        annotationsDirty = true;
+        storedAnnotationsDirty = true;
     }
     
     public void removeAnnotation(YoloAnnotation annotation) {
-        annotations.remove(annotation);
+        getAnnotations().remove(annotation);
         labeled = !annotations.isEmpty();
+        annotationsDirty = true;
+        storedAnnotationsDirty = true;
     }
     
     public void clearAnnotations() {
-        annotations.clear();
+        getAnnotations().clear();
         labeled = false;
+        annotationsDirty = true;
+        storedAnnotationsDirty = true;
+    }
+    
+    /**
+     * Flag the label file and annotation shard as stale, e.g. after editing
+     * the annotation list in place
+     */
+    public void markAnnotationsDirty() {
+        annotationsDirty = true;
+        storedAnnotationsDirty = true;
+    }
+    
+    public void markAnnotationsClean() {
+        annotationsDirty = false;
+    }
+    
+    @JsonIgnore
+    public boolean isAnnotationsDirty() {
+        return annotationsDirty;
+    }
+    
+    public void markStoredAnnotationsClean() {
+        storedAnnotationsDirty = false;
+    }
+    
+    @JsonIgnore
+    public boolean isStoredAnnotationsDirty() {
+        return storedAnnotationsDirty;
+    }
+    
+    /**
+     * Remember the labeled flag as written to the project index
+     */
+    public void markIndexed() {
+        indexedLabeled = labeled;
+        List<YoloAnnotation> current = annotations;
+        if (current != null && !sameClassIds(indexedClassIds, current)) {
+            indexedClassIds = classIdsOf(current);
+        }
+    }
+    
+    /**
+     * True if the project index needs rewriting for this image
+     */
+    @JsonIgnore
+    public boolean isIndexStale() {
+        List<YoloAnnotation> current = annotations;
+        return indexedLabeled != labeled || (current != null && !sameClassIds(indexedClassIds, current));
+    }
+    
+    private static int[] classIdsOf(List<YoloAnnotation> annotations) {
+        int[] classIds = new int[annotations.size()];
+        if (annotations instanceof CompactAnnotationList) {
+            CompactAnnotationList compact = (CompactAnnotationList) annotations;
+            for (int i = 0; i < classIds.length; i++) {
+                classIds[i] = compact.getClassId(i);
+            }
+        } else {
+            for (int i = 0; i < classIds.length; i++) {
+                classIds[i] = annotations.get(i).getClassId();
+            }
+        }
+        return classIds;
+    }
+    
+    private static boolean sameClassIds(int[] classIds, List<YoloAnnotation> annotations) {
+        if (classIds == null || classIds.length != annotations.size()) {
+            return false;
+        }
+        if (annotations instanceof CompactAnnotationList) {
+            CompactAnnotationList compact = (CompactAnnotationList) annotations;
+            for (int i = 0; i < classIds.length; i++) {
+                if (classIds[i] != compact.getClassId(i)) return false;
+            }
+        } else {
+            for (int i = 0; i < classIds.length; i++) {
+                if (classIds[i] != annotations.get(i).getClassId()) return false;
+            }
+        }
+        return true;
     }
     
     public String getFilenameWithoutExtension() {
@@ -110,4 +290,13 @@ public class YoloImage {
         int dotIndex = filename.lastIndexOf('.');
         return dotIndex > 0 ? filename.substring(0, dotIndex) : filename;
     }
+    
+    /**
+     * Source of annotations for images whose annotations are stored apart
+     * from the project index; may be called from any thread. Returns null
+     * if the annotations cannot be read, leaving the image unloaded.
+     */
+    public interface AnnotationLoader {
+        List<YoloAnnotation> load(YoloImage image);
+    }
 }
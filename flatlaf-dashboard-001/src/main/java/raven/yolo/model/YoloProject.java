@@ -1,12 +1,18 @@
 package raven.yolo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.File;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class YoloProject {
@@ -29,8 +35,41 @@ public class YoloProject {
     @JsonProperty("classes")
     private List<String> classes;
     
+    // Only present in single-file projects; see ProjectStorage
     @JsonProperty("images")
     private List<YoloImage> images;
+    
+    @JsonProperty("storage_version")
+    private int storageVersion;
+    
+    @JsonProperty("annotation_shards")
+    private int annotationShards;
+    
+    // False for projects saved before image headers were read, whose
+    // 640x480 images may carry placeholder dimensions
+    @JsonProperty("dimensions_probed")
+    private boolean dimensionsProbed;
+    
+    // Storage keys whose stored annotations must be dropped from their shard
+    @JsonIgnore
+    private final Set<String> removedAnnotationKeys = new HashSet<>();
+    
+    // True while project.json lags behind the in-memory project
+    @JsonIgnore
+    private boolean dirty;
+    
+    // Lookup indexes over images, built on first use; see findImageByPath
+    @JsonIgnore
+    private Map<String, YoloImage> imagesByPath;
+    
+    @JsonIgnore
+    private Map<String, YoloImage> imagesByFilename;
+    
+    @JsonIgnore
+    private int indexedImageCount;
+    
+    @JsonIgnore
+    private boolean indexHasDuplicates;
       public YoloProject() {
         this.classes = new ArrayList<>();
         this.images = new ArrayList<>();
@@ -43,6 +82,7 @@ public class YoloProject {
         this.name = name;
         this.description = description;
         this.projectPath = projectPath;
+        this.dimensionsProbed = true;
     }
     
     private String generateProjectId() {
@@ -63,6 +103,7 @@ public class YoloProject {
     
     public void setName(String name) {
         this.name = name;
+        this.dirty = true;
     }
     
     public String getDescription() {
@@ -71,6 +112,7 @@ public class YoloProject {
     
     public void setDescription(String description) {
         this.description = description;
+        this.dirty = true;
     }
     
     public LocalDateTime getCreatedDate() {
@@ -95,6 +137,32 @@ public class YoloProject {
     
     public void setClasses(List<String> classes) {
         this.classes = classes;
+        this.dirty = true;
+    }
+    
+    public int getStorageVersion() {
+        return storageVersion;
+    }
+    
+    public void setStorageVersion(int storageVersion) {
+        this.storageVersion = storageVersion;
+    }
+    
+    public boolean isDimensionsProbed() {
+        return dimensionsProbed;
+    }
+    
+    public void setDimensionsProbed(boolean dimensionsProbed) {
+        this.dimensionsProbed = dimensionsProbed;
+        this.dirty = true;
+    }
+    
+    public int getAnnotationShards() {
+        return annotationShards;
+    }
+    
+    public void setAnnotationShards(int annotationShards) {
+        this.annotationShards = annotationShards;
     }
     
     public List<YoloImage> getImages() {
@@ -103,25 +171,283 @@ public class YoloProject {
     
     public void setImages(List<YoloImage> images) {
         this.images = images;
+        this.imagesByPath = null;
+        this.imagesByFilename = null;
+        this.dirty = true;
     }
     
     // Utility methods
     public void addClass(String className) {
         if (!classes.contains(className)) {
             classes.add(className);
+            dirty = true;
         }
     }
     
     public void removeClass(String className) {
-        classes.remove(className);
+        if (classes.remove(className)) {
+            dirty = true;
+        }
     }
     
     public void addImage(YoloImage image) {
         images.add(image);
+        if (imagesByPath != null) {
+            indexImage(image);
+        }
+        dirty = true;
     }
     
     public void removeImage(YoloImage image) {
-        images.remove(image);
+        if (images.remove(image)) {
+            removedAnnotationKeys.add(getStorageKey(image));
+            if (imagesByPath != null) {
+                unindexImage(image);
+            }
+            dirty = true;
+        }
+    }
+    
+    /**
+     * Key an image's annotations are stored under: its path relative to the
+     * images folder, or its absolute path for images kept elsewhere. Unlike
+     * filenames these are unique within a project.
+     */
+    public String getStorageKey(YoloImage image) {
+        return storageKey(getImagesDirPrefix(), image);
+    }
+    
+    /**
+     * Storage key with the images folder prefix computed once by the caller
+     */
+    public static String storageKey(String imagesDirPrefix, YoloImage image) {
+        String path = image.getPath();
+        if (path == null) {
+            return image.getFilename();
+        }
+        if (path.startsWith(imagesDirPrefix)) {
+            String filename = image.getFilename();
+            if (filename != null && path.length() == imagesDirPrefix.length() + filename.length()
+                    && path.endsWith(filename)) {
+                // Directly in the images folder, as most images are; reuse the filename string
+                return filename;
+            }
+            path = path.substring(imagesDirPrefix.length());
+        }
+        return path.replace('\\', '/');
+    }
+    
+    /**
+     * Absolute path of the images folder with a trailing separator
+     */
+    @JsonIgnore
+    public String getImagesDirPrefix() {
+        return getImagesDir().getAbsolutePath() + File.separator;
+    }
+    
+    /**
+     * Boxes over all images, counted from the project index for images whose
+     * annotations are not loaded
+     */
+    @JsonIgnore
+    public int getTotalAnnotationCount() {
+        int total = 0;
+        for (YoloImage image : images) {
+            total += image.getAnnotationCount();
+        }
+        return total;
+    }
+    
+    @JsonIgnore
+    public int getLabeledImageCount() {
+        int labeled = 0;
+        for (YoloImage image : images) {
+            if (image.isLabeled()) labeled++;
+        }
+        return labeled;
+    }
+    
+    /**
+     * Boxes per class name, counted from the project index for images whose
+     * annotations are not loaded
+     */
+    @JsonIgnore
+    public Map<String, Integer> getClassDistribution() {
+        int[] counts = new int[classes.size()];
+        Map<String, Integer> distribution = new LinkedHashMap<>();
+        for (YoloImage image : images) {
+            for (int classId : image.getAnnotationClassIds()) {
+                if (classId >= 0 && classId < counts.length) {
+                    counts[classId]++;
+                } else {
+                    distribution.merge("class_" + classId, 1, Integer::sum);
+                }
+            }
+        }
+        Map<String, Integer> named = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                named.merge(classes.get(i), counts[i], Integer::sum);
+            }
+        }
+        distribution.forEach((name, count) -> named.merge(name, count, Integer::sum));
+        return named;
+    }
+    
+    /**
+     * Find an image by its file path in constant time
+     */
+    public YoloImage findImageByPath(String path) {
+        if (path == null) return null;
+        ensureImageIndex();
+        String key = normalizePath(path);
+        YoloImage image = imagesByPath.get(key);
+        if (image != null && !key.equals(normalizePath(image.getPath()))) {
+            // Path was changed in place; rebuild and retry
+            reindexImages();
+            image = imagesByPath.get(key);
+        }
+        return image;
+    }
+    
+    /**
+     * Find an image by its filename in constant time; with duplicate names
+     * the first image in the list wins
+     */
+    public YoloImage findImageByFilename(String filename) {
+        if (filename == null) return null;
+        ensureImageIndex();
+        YoloImage image = imagesByFilename.get(filename);
+        if (image != null && !filename.equals(image.getFilename())) {
+            reindexImages();
+            image = imagesByFilename.get(filename);
+        }
+        return image;
+    }
+    
+    /**
+     * Rebuild the lookup index, e.g. after editing the image list directly
+     */
+    public void reindexImages() {
+        imagesByPath = new HashMap<>(images.size() * 2);
+        imagesByFilename = new HashMap<>(images.size() * 2);
+        indexedImageCount = 0;
+        indexHasDuplicates = false;
+        for (YoloImage image : images) {
+            indexImage(image);
+        }
+    }
+    
+    private void ensureImageIndex() {
+        // Also catches images added or removed through getImages()
+        if (imagesByPath == null || indexedImageCount != images.size()) {
+            reindexImages();
+        }
+    }
+    
+    private void indexImage(YoloImage image) {
+        boolean collision = image.getPath() != null
+            && imagesByPath.putIfAbsent(normalizePath(image.getPath()), image) != null;
+        collision |= image.getFilename() != null
+            && imagesByFilename.putIfAbsent(image.getFilename(), image) != null;
+        indexHasDuplicates |= collision;
+        indexedImageCount++;
+    }
+    
+    private void unindexImage(YoloImage image) {
+        if (indexHasDuplicates) {
+            // Another image may take over the key; simplest to rebuild lazily
+            imagesByPath = null;
+            imagesByFilename = null;
+            return;
+        }
+        if (image.getPath() != null) {
+            imagesByPath.remove(normalizePath(image.getPath()), image);
+        }
+        if (image.getFilename() != null) {
+            imagesByFilename.remove(image.getFilename(), image);
+        }
+        indexedImageCount--;
+    }
+    
+    private static String normalizePath(String path) {
+        return new File(path).getAbsoluteFile().toPath().normalize().toString();
+    }
+    
+    public void markDirty() {
+        dirty = true;
+    }
+    
+    /**
+     * True if anything needs saving: project metadata, the image index, an
+     * annotation shard or a label file
+     */
+    @JsonIgnore
+    public boolean isDirty() {
+        if (dirty || !removedAnnotationKeys.isEmpty()) return true;
+        for (YoloImage image : images) {
+            if (image.isAnnotationsDirty() || image.isStoredAnnotationsDirty() || image.isIndexStale()) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * True if project.json needs rewriting for project-level changes or
+     * because an image's entry in the index changed
+     */
+    @JsonIgnore
+    public boolean isIndexDirty() {
+        if (dirty) return true;
+        for (YoloImage image : images) {
+            if (image.isIndexStale()) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Storage keys of images removed since the annotation shards were last written
+     */
+    @JsonIgnore
+    public Set<String> getRemovedAnnotationKeys() {
+        return removedAnnotationKeys;
+    }
+    
+    /**
+     * Return images whose label files are out of date
+     */
+    @JsonIgnore
+    public List<YoloImage> getDirtyImages() {
+        List<YoloImage> dirtyImages = new ArrayList<>();
+        for (YoloImage image : images) {
+            if (image.isAnnotationsDirty()) {
+                dirtyImages.add(image);
+            }
+        }
+        return dirtyImages;
+    }
+    
+    /**
+     * Clear the project-level flag after writing project.json; label files
+     * that are still stale keep their own flags
+     */
+    public void markProjectFileSaved() {
+        dirty = false;
+        for (YoloImage image : images) {
+            image.markIndexed();
+        }
+    }
+    
+    /**
+     * Mark the project and all of its images as matching what is on disk
+     */
+    public void markSaved() {
+        dirty = false;
+        removedAnnotationKeys.clear();
+        for (YoloImage image : images) {
+            image.markAnnotationsClean();
+            image.markStoredAnnotationsClean();
+            image.markIndexed();
+        }
     }
     
     public File getImagesDir() {
@@ -135,4 +461,16 @@ public class YoloProject {
     public File getProjectFile() {
         return new File(projectPath, "project.json");
     }
+    
+    public File getAnnotationsDir() {
+        return new File(projectPath, "annotations");
+    }
+    
+    public File getJournalFile() {
+        return new File(projectPath, "journal.log");
+    }
+    
+    public File getSnapshotFile() {
+        return new File(projectPath, "project.snapshot");
+    }
 }
@@ -1,8 +1,12 @@
 package raven.yolo.training;
 
 import raven.yolo.manager.ProjectManager;
+import raven.yolo.manager.WorkspaceManager;
 import raven.yolo.model.TrainingConfig;
+import raven.yolo.model.YoloImage;
 import raven.yolo.model.YoloProject;
+import raven.yolo.utils.DatasetCache;
+import raven.yolo.utils.FileMaterializer;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -123,7 +127,7 @@ public class TrainingManager {
      * Prepare dataset for training (split train/val)
      */
     private void prepareDataset(YoloProject project, String datasetDir) throws IOException {
-        List<String> validImageFiles = new ArrayList<>();
+        List<YoloImage> validImages = new ArrayList<>();
         
         // Filter for images that have valid annotations
         for (var image : project.getImages()) {
@@ -145,93 +149,25 @@ public class TrainingManager {
                 }
                 
                 if (hasValidAnnotation) {
-                    validImageFiles.add(image.getPath());
+                    validImages.add(image);
                 }
             }
         }
         
-        if (validImageFiles.isEmpty()) {
+        if (validImages.isEmpty()) {
             throw new IllegalStateException("No valid annotated images found for training");
         }
         
-        System.out.println("Found " + validImageFiles.size() + " valid annotated images for training");
+        System.out.println("Found " + validImages.size() + " valid annotated images for training");
         
-        // Split 80% train, 20% val with random shuffle
-        java.util.Collections.shuffle(validImageFiles, new java.util.Random(42)); // Fixed seed for reproducibility
-        int trainSize = (int) (validImageFiles.size() * 0.8);
+        FileMaterializer materializer = new FileMaterializer(WorkspaceManager.getInstance().getMaterializationStrategy());
+        DatasetCache cache = new DatasetCache(Paths.get(datasetDir), DatasetCache.Layout.TYPE_FIRST, materializer);
+        // The training dataset directory belongs to us; clear out older layouts too
+        cache.setPruneUnknownFiles(true);
+        DatasetCache.SyncReport report = cache.sync(validImages);
         
-        for (int i = 0; i < validImageFiles.size(); i++) {
-            String imagePath = validImageFiles.get(i);
-            String originalName = new File(imagePath).getName();
-            
-            // Generate UUID-based filename to avoid special characters and spaces
-            String uuid = java.util.UUID.randomUUID().toString();
-            String fileExtension = getFileExtension(originalName);
-            String safeName = uuid + "." + fileExtension;
-            String labelName = uuid + ".txt";
-            
-            String destImageDir = i < trainSize ? "images/train" : "images/val";
-            String destLabelDir = i < trainSize ? "labels/train" : "labels/val";
-            
-            // Copy image with safe name
-            Path sourceImage = Paths.get(imagePath);
-            Path destImage = Paths.get(datasetDir, destImageDir, safeName);
-            Files.copy(sourceImage, destImage, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            
-            // Create YOLO format label file
-            createYoloLabelFile(project, imagePath, Paths.get(datasetDir, destLabelDir, labelName));
-            
-            System.out.println("Copied: " + originalName + " -> " + safeName);
-        }
-    }
-    
-    /**
-     * Create YOLO format label file for an image
-     */
-    private void createYoloLabelFile(YoloProject project, String imagePath, Path labelPath) throws IOException {
-        // Find the image in project
-        var imageOpt = project.getImages().stream()
-            .filter(img -> img.getPath().equals(imagePath))
-            .findFirst();
-            
-        if (imageOpt.isEmpty()) {
-            System.err.println("Warning: Image not found in project: " + imagePath);
-            return;
-        }
-        
-        var image = imageOpt.get();
-        List<String> labelLines = new ArrayList<>();
-        
-        for (var annotation : image.getAnnotations()) {
-            // Skip invalid annotations
-            if (annotation.getWidth() <= 0 || annotation.getHeight() <= 0) {
-                continue;
-            }
-            
-            // YOLO format: class_id x_center y_center width height (all normalized 0-1)
-            String line = String.format("%d %.6f %.6f %.6f %.6f", 
-                annotation.getClassId(),
-                annotation.getXCenter(),
-                annotation.getYCenter(), 
-                annotation.getWidth(),
-                annotation.getHeight());
-            labelLines.add(line);
-        }        
-        if (!labelLines.isEmpty()) {
-            Files.write(labelPath, labelLines, java.nio.charset.StandardCharsets.UTF_8);
-        } else {
-            System.err.println("Warning: No valid annotations for image: " + imagePath);
-        }
-    }
-    
-    /**
-     * Get file extension from filename
-     */
-    private String getFileExtension(String filename) {
-        int lastDotIndex = filename.lastIndexOf('.');        if (lastDotIndex > 0 && lastDotIndex < filename.length() - 1) {
-            return filename.substring(lastDotIndex + 1).toLowerCase();
-        }
-        return "jpg"; // default extension
+        System.out.println("Dataset prepared: " + report);
+        System.out.println("Dataset images: " + materializer.getSummary());
     }
     
     /**
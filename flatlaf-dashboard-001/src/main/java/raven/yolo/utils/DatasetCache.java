@@ -0,0 +1,450 @@
+package raven.yolo.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Content-addressed YOLO dataset directory, used for training datasets and
+ * exports. Each image is stored under a name derived from the hash of its
+ * content and assigned to a split by a {@link DatasetSplitter} keyed on that
+ * name, so the layout is identical from run to run. A manifest remembers
+ * what was written; a later sync only touches images and labels that changed
+ * and removes files that no longer belong to the dataset. Hashing and writing run on a thread pool.
+ */
+public class DatasetCache {
+
+    /**
+     * Where a split's images and labels live, relative to the dataset root
+     */
+    public enum Layout {
+        /** images/train, labels/train - what the training script expects */
+        TYPE_FIRST,
+        /** train/images, train/labels - the export format */
+        SPLIT_FIRST;
+
+        public String imagesDir(String split) {
+            return this == TYPE_FIRST ? "images/" + split : split + "/images";
+        }
+
+        public String labelsDir(String split) {
+            return this == TYPE_FIRST ? "labels/" + split : split + "/labels";
+        }
+    }
+
+    /**
+     * Progress of the write phase; may be called from worker threads
+     */
+    public interface ProgressListener {
+        void onProgress(int completed, int total);
+    }
+
+    public static final String MANIFEST_FILE = "manifest.json";
+    private static final int MANIFEST_VERSION = 1;
+    private static final int HASH_CHARS = 32;
+
+    private final Path datasetDir;
+    private final Layout layout;
+    private final FileMaterializer materializer;
+    private final ObjectMapper objectMapper;
+    private int parallelism = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private boolean pruneUnknownFiles;
+    private boolean includeUnlabeled;
+    private ProgressListener progressListener;
+    private DatasetSplitter splitter = DatasetSplitter.defaultSplit();
+
+    public DatasetCache(Path datasetDir, Layout layout, FileMaterializer materializer) {
+        this.datasetDir = datasetDir;
+        this.layout = layout;
+        this.materializer = materializer;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Also delete files in the split directories that the manifest doesn't
+     * know about. Only safe for directories the application owns.
+     */
+    public void setPruneUnknownFiles(boolean pruneUnknownFiles) {
+        this.pruneUnknownFiles = pruneUnknownFiles;
+    }
+
+    /**
+     * Write an empty label file for images without valid annotations
+     * instead of skipping the label
+     */
+    public void setIncludeUnlabeled(boolean includeUnlabeled) {
+        this.includeUnlabeled = includeUnlabeled;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setSplitter(DatasetSplitter splitter) {
+        this.splitter = splitter != null ? splitter : DatasetSplitter.defaultSplit();
+    }
+
+    /**
+     * Bring the dataset directory in line with the given images
+     */
+    public SyncReport sync(List<YoloImage> images) throws IOException {
+        long start = System.currentTimeMillis();
+        SyncReport report = new SyncReport();
+
+        for (String split : splitter.getSplits()) {
+            Files.createDirectories(datasetDir.resolve(layout.imagesDir(split)));
+            Files.createDirectories(datasetDir.resolve(layout.labelsDir(split)));
+        }
+
+        Manifest previous = loadManifest();
+        Manifest current = new Manifest();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, images.size())), r -> {
+            Thread thread = new Thread(r, "dataset-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Pass 1: hash contents in parallel, re-hashing only sources that
+            // look different from last time
+            List<Callable<Entry>> hashTasks = new ArrayList<>(images.size());
+            for (YoloImage image : images) {
+                Entry old = previous.entries.get(image.getPath());
+                hashTasks.add(() -> identify(image, old));
+            }
+            List<Entry> entries = runAll(executor, hashTasks);
+
+            // Naming and splitting stay sequential so they don't depend on thread timing
+            Set<String> usedNames = new HashSet<>();
+            List<DatasetSplitter.Item> splitItems = new ArrayList<>(images.size());
+            for (int i = 0; i < images.size(); i++) {
+                Entry entry = entries.get(i);
+                YoloImage image = images.get(i);
+
+                String baseName = entry.contentHash.substring(0, HASH_CHARS);
+                // Byte-identical images in the project get distinct, still stable names
+                for (int n = 2; !usedNames.add(baseName); n++) {
+                    baseName = entry.contentHash.substring(0, HASH_CHARS) + "_" + n;
+                }
+                entry.fileName = baseName + "." + getFileExtension(new File(image.getPath()).getName());
+                splitItems.add(new DatasetSplitter.Item(baseName, classIdsOf(image)));
+                current.entries.put(image.getPath(), entry);
+            }
+
+            Map<String, String> assignment = splitter.assign(splitItems);
+            for (Entry entry : current.entries.values()) {
+                entry.split = assignment.get(getFileNameWithoutExtension(entry.fileName));
+            }
+            report.splitReport = splitter.report(splitItems, assignment);
+
+            // Pass 2: write only what differs from the previous sync
+            AtomicInteger imagesWritten = new AtomicInteger();
+            AtomicInteger labelsWritten = new AtomicInteger();
+            AtomicInteger completed = new AtomicInteger();
+            List<Callable<Entry>> writeTasks = new ArrayList<>(images.size());
+            for (YoloImage image : images) {
+                Entry entry = current.entries.get(image.getPath());
+                Entry old = previous.entries.get(image.getPath());
+                writeTasks.add(() -> {
+                    write(image, entry, old, imagesWritten, labelsWritten);
+                    int done = completed.incrementAndGet();
+                    if (progressListener != null) {
+                        progressListener.onProgress(done, images.size());
+                    }
+                    return entry;
+                });
+            }
+            runAll(executor, writeTasks);
+
+            report.imagesWritten = imagesWritten.get();
+            report.imagesReused = images.size() - imagesWritten.get();
+            report.labelsWritten = labelsWritten.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report.filesRemoved = removeStaleFiles(previous, current);
+        saveManifest(current);
+
+        report.elapsedMs = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private Entry identify(YoloImage image, Entry old) throws IOException {
+        Path source = new File(image.getPath()).toPath();
+        Entry entry = new Entry();
+        entry.size = Files.size(source);
+        entry.modified = Files.getLastModifiedTime(source).toMillis();
+        entry.contentHash = old != null && old.size == entry.size && old.modified == entry.modified && old.contentHash != null
+            ? old.contentHash
+            : hashFile(source);
+        return entry;
+    }
+
+    private void write(YoloImage image, Entry entry, Entry old,
+                       AtomicInteger imagesWritten, AtomicInteger labelsWritten) throws IOException {
+        String baseName = getFileNameWithoutExtension(entry.fileName);
+
+        Path imageTarget = datasetDir.resolve(layout.imagesDir(entry.split)).resolve(entry.fileName);
+        boolean imageCurrent = old != null && entry.fileName.equals(old.fileName) && entry.split.equals(old.split)
+            && entry.contentHash.equals(old.contentHash) && Files.exists(imageTarget);
+        if (!imageCurrent) {
+            materializer.materialize(new File(image.getPath()).toPath(), imageTarget);
+            imagesWritten.incrementAndGet();
+        }
+
+        String labelText = buildLabelText(image);
+        entry.labelHash = hashString(labelText);
+        entry.hasLabel = !labelText.isEmpty() || includeUnlabeled;
+        Path labelTarget = datasetDir.resolve(layout.labelsDir(entry.split)).resolve(baseName + ".txt");
+        if (!entry.hasLabel) {
+            Files.deleteIfExists(labelTarget);
+            return;
+        }
+        boolean labelCurrent = imageCurrent && old.hasLabel && entry.labelHash.equals(old.labelHash)
+            && Files.exists(labelTarget);
+        if (!labelCurrent) {
+            Files.write(labelTarget, labelText.getBytes(StandardCharsets.UTF_8));
+            labelsWritten.incrementAndGet();
+        }
+    }
+
+    /**
+     * YOLO label lines for the image's valid (non-zero size) annotations
+     */
+    static String buildLabelText(YoloImage image) {
+        StringBuilder text = new StringBuilder();
+        for (YoloAnnotation annotation : image.getAnnotations()) {
+            if (annotation.getWidth() <= 0 || annotation.getHeight() <= 0) {
+                continue;
+            }
+            text.append(String.format(Locale.ROOT, "%d %.6f %.6f %.6f %.6f",
+                annotation.getClassId(),
+                annotation.getXCenter(),
+                annotation.getYCenter(),
+                annotation.getWidth(),
+                annotation.getHeight())).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static int[] classIdsOf(YoloImage image) {
+        return image.getAnnotations().stream()
+            .filter(annotation -> annotation.getWidth() > 0 && annotation.getHeight() > 0)
+            .mapToInt(YoloAnnotation::getClassId)
+            .distinct()
+            .toArray();
+    }
+
+    private static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Dataset sync was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+        return results;
+    }
+
+    private int removeStaleFiles(Manifest previous, Manifest current) throws IOException {
+        Set<String> keep = new HashSet<>();
+        for (Entry entry : current.entries.values()) {
+            keep.add(layout.imagesDir(entry.split) + "/" + entry.fileName);
+            if (entry.hasLabel) {
+                keep.add(layout.labelsDir(entry.split) + "/" + getFileNameWithoutExtension(entry.fileName) + ".txt");
+            }
+        }
+
+        // Files written by earlier syncs
+        Set<String> candidates = new HashSet<>();
+        for (Entry entry : previous.entries.values()) {
+            if (entry.split == null || entry.fileName == null) {
+                continue;
+            }
+            candidates.add(layout.imagesDir(entry.split) + "/" + entry.fileName);
+            candidates.add(layout.labelsDir(entry.split) + "/" + getFileNameWithoutExtension(entry.fileName) + ".txt");
+        }
+        if (pruneUnknownFiles) {
+            for (String split : DatasetSplitter.ALL_SPLITS) {
+                for (String dir : new String[]{layout.imagesDir(split), layout.labelsDir(split)}) {
+                    File[] files = datasetDir.resolve(dir).toFile().listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            if (file.isFile()) {
+                                candidates.add(dir + "/" + file.getName());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        int removed = 0;
+        for (String relative : candidates) {
+            if (!keep.contains(relative) && Files.deleteIfExists(datasetDir.resolve(relative))) {
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            // Ultralytics label caches would still list the removed files
+            for (String split : DatasetSplitter.ALL_SPLITS) {
+                Files.deleteIfExists(datasetDir.resolve(layout.labelsDir(split) + ".cache"));
+            }
+        }
+        return removed;
+    }
+
+    private Manifest loadManifest() {
+        File file = datasetDir.resolve(MANIFEST_FILE).toFile();
+        if (file.exists()) {
+            try {
+                Manifest manifest = objectMapper.readValue(file, Manifest.class);
+                if (manifest.version == MANIFEST_VERSION) {
+                    return manifest;
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable dataset manifest: " + e.getMessage());
+            }
+        }
+        return new Manifest();
+    }
+
+    private void saveManifest(Manifest manifest) throws IOException {
+        Path target = datasetDir.resolve(MANIFEST_FILE);
+        Path temp = datasetDir.resolve(MANIFEST_FILE + ".tmp");
+        objectMapper.writeValue(temp.toFile(), manifest);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String hashString(String text) {
+        return toHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String getFileExtension(String filename) {
+        int lastDotIndex = filename.lastIndexOf('.');
+        if (lastDotIndex > 0 && lastDotIndex < filename.length() - 1) {
+            return filename.substring(lastDotIndex + 1).toLowerCase();
+        }
+        return "jpg"; // default extension
+    }
+
+    private static String getFileNameWithoutExtension(String filename) {
+        int lastDotIndex = filename.lastIndexOf('.');
+        return lastDotIndex > 0 ? filename.substring(0, lastDotIndex) : filename;
+    }
+
+    /**
+     * On-disk record of the last sync, keyed by project image path
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Manifest {
+        public int version = MANIFEST_VERSION;
+        public Map<String, Entry> entries = new LinkedHashMap<>();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        public long size;
+        public long modified;
+        public String contentHash;
+        public String split;
+        public String fileName;
+        public String labelHash;
+        public boolean hasLabel = true;
+    }
+
+    /**
+     * What a sync actually had to do
+     */
+    public static class SyncReport {
+        private int imagesWritten;
+        private int imagesReused;
+        private int labelsWritten;
+        private int filesRemoved;
+        private long elapsedMs;
+        private DatasetSplitter.SplitReport splitReport;
+
+        public int getImagesWritten() { return imagesWritten; }
+        public int getImagesReused() { return imagesReused; }
+        public int getLabelsWritten() { return labelsWritten; }
+        public int getFilesRemoved() { return filesRemoved; }
+        public long getElapsedMs() { return elapsedMs; }
+        public DatasetSplitter.SplitReport getSplitReport() { return splitReport; }
+
+        @Override
+        public String toString() {
+            return imagesWritten + " image(s) written, " + imagesReused + " reused, "
+                + labelsWritten + " label(s) written, " + filesRemoved + " stale file(s) removed in " + elapsedMs + " ms"
+                + (splitReport != null ? " (" + splitReport + ")" : "");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a YOLO dataset into a project in stages: scan, copy, parse labels,
+ * probe dimensions and assemble {@link YoloImage}s. The per-image stages run
+ * on a bounded pool with a cap on in-flight work; images are added to the
+ * project in scan order so the result matches a serial import.
+ */
+public class DatasetImportPipeline {
+
+    /**
+     * Throughput report, called from the thread running {@link #run}
+     */
+    public interface ProgressListener {
+        void onProgress(int completed, int total, double imagesPerSecond, long etaMillis);
+    }
+
+    /**
+     * Supplies width/height for a copied image
+     */
+    public interface DimensionProbe {
+        int[] probe(File imageFile);
+    }
+
+    /**
+     * Nothing is read from disk; the dimensions are left unknown and read
+     * in the background when the project is opened
+     */
+    public static final DimensionProbe UNKNOWN_DIMENSIONS =
+        imageFile -> new int[]{ImageDimensionProbe.UNKNOWN, ImageDimensionProbe.UNKNOWN};
+
+    /**
+     * Reads the dimensions from the image header
+     */
+    public static final DimensionProbe HEADER_DIMENSIONS = ImageDimensionProbe::probeOrUnknown;
+
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final int parallelism;
+    private final int maxInFlight;
+    private DimensionProbe dimensionProbe = HEADER_DIMENSIONS;
+    private ProgressListener progressListener;
+    private FileMaterializer materializer = new FileMaterializer(FileMaterializer.Strategy.COPY);
+
+    public DatasetImportPipeline(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.maxInFlight = this.parallelism * 4;
+    }
+
+    public static int defaultParallelism() {
+        return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void setDimensionProbe(DimensionProbe dimensionProbe) {
+        this.dimensionProbe = dimensionProbe != null ? dimensionProbe : HEADER_DIMENSIONS;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setMaterializer(FileMaterializer materializer) {
+        this.materializer = materializer;
+    }
+
+    public FileMaterializer getMaterializer() {
+        return materializer;
+    }
+
+    /**
+     * Scan stage: list the images of each directory, paired with the label
+     * directory next to it (or the image directory itself)
+     */
+    public static List<SourceImage> scan(List<File> imageDirs) {
+        List<SourceImage> sources = new ArrayList<>();
+        for (File imageDir : imageDirs) {
+            File labelsDir = new File(imageDir.getParent(), "labels");
+            if (!labelsDir.exists()) {
+                labelsDir = imageDir;
+            }
+
+            File[] imageFiles = imageDir.listFiles((d, name) -> {
+                String lower = name.toLowerCase();
+                return lower.endsWith(".jpg") || lower.endsWith(".jpeg") ||
+                       lower.endsWith(".png") || lower.endsWith(".bmp");
+            });
+            if (imageFiles == null) {
+                continue;
+            }
+
+            for (File imageFile : imageFiles) {
+                String baseName = getFileNameWithoutExtension(imageFile.getName());
+                sources.add(new SourceImage(imageFile, new File(labelsDir, baseName + ".txt")));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Copy, parse and probe every source, then add the images to the project
+     * in source order. The first copy failure cancels the rest and is thrown.
+     */
+    public List<YoloImage> run(YoloProject project, List<SourceImage> sources,
+                               Map<String, String> classNames) throws IOException, InterruptedException {
+        File projectImagesDir = new File(project.getProjectPath(), "images");
+        projectImagesDir.mkdirs();
+
+        int total = sources.size();
+        YoloImage[] assembled = new YoloImage[total];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, total)), r -> {
+            Thread thread = new Thread(r, "dataset-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+
+        long startTime = System.currentTimeMillis();
+        long lastReport = 0;
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (completed < total) {
+                // Backpressure: keep a bounded number of images in flight
+                while (submitted < total && submitted - completed < maxInFlight) {
+                    int index = submitted++;
+                    SourceImage source = sources.get(index);
+                    String newImageName = UUID.randomUUID() + "." + getFileExtension(source.imageFile.getName());
+                    completion.submit(() -> {
+                        assembled[index] = processImage(source, projectImagesDir, newImageName, classNames);
+                        return index;
+                    });
+                }
+
+                Future<Integer> done = completion.take();
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                }
+                completed++;
+
+                long now = System.currentTimeMillis();
+                if (progressListener != null && (now - lastReport >= PROGRESS_INTERVAL_MS || completed == total)) {
+                    lastReport = now;
+                    double elapsedSeconds = Math.max(0.001, (now - startTime) / 1000.0);
+                    double rate = completed / elapsedSeconds;
+                    long eta = rate > 0 ? (long) ((total - completed) / rate * 1000) : -1;
+                    progressListener.onProgress(completed, total, rate, eta);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assembly stage: single-threaded, in scan order
+        List<YoloImage> images = new ArrayList<>(total);
+        for (YoloImage image : assembled) {
+            project.addImage(image);
+            images.add(image);
+        }
+        return images;
+    }
+
+    private YoloImage processImage(SourceImage source, File projectImagesDir, String newImageName,
+                                   Map<String, String> classNames) throws IOException {
+        File targetImageFile = new File(projectImagesDir, newImageName);
+        materializer.materialize(source.imageFile.toPath(), targetImageFile.toPath());
+
+        List<YoloAnnotation> annotations = source.labelFile.exists()
+            ? parseLabelFile(source.labelFile, classNames)
+            : new ArrayList<>();
+
+        int[] dimensions = dimensionProbe.probe(targetImageFile);
+
+        YoloImage yoloImage = new YoloImage(newImageName, targetImageFile.getAbsolutePath(), dimensions[0], dimensions[1]);
+        for (YoloAnnotation annotation : annotations) {
+            yoloImage.addAnnotation(annotation);
+        }
+        return yoloImage;
+    }
+
+    /**
+     * Parse a label file; unreadable files and malformed lines are skipped
+     */
+    static List<YoloAnnotation> parseLabelFile(File labelFile, Map<String, String> classNames) {
+        List<YoloAnnotation> annotations = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(labelFile.toPath())) {
+            String[] parts = new String[5];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (splitFields(line, parts) < 5) {
+                    continue;
+                }
+                try {
+                    int classId = Integer.parseInt(parts[0]);
+                    double x = Double.parseDouble(parts[1]);
+                    double y = Double.parseDouble(parts[2]);
+                    double width = Double.parseDouble(parts[3]);
+                    double height = Double.parseDouble(parts[4]);
+
+                    String className = classNames.get(String.valueOf(classId));
+                    if (className == null) {
+                        className = "class_" + classId;
+                    }
+                    annotations.add(new YoloAnnotation(classId, className, x, y, width, height));
+                } catch (NumberFormatException e) {
+                    // Skip invalid lines
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read annotation file: " + labelFile.getName());
+        }
+        return annotations;
+    }
+
+    /**
+     * Split the first fields of a whitespace separated line without a regex;
+     * returns how many fields were found (at most parts.length)
+     */
+    private static int splitFields(String line, String[] parts) {
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        while (i < length && count < parts.length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                parts[count++] = line.substring(start, i);
+            }
+        }
+        return count;
+    }
+
+    private static String getFileExtension(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
+            return fileName.substring(dotIndex + 1);
+        }
+        return "";
+    }
+
+    private static String getFileNameWithoutExtension(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex > 0) {
+            return fileName.substring(0, dotIndex);
+        }
+        return fileName;
+    }
+
+    /**
+     * An image found by the scan stage and its (possibly missing) label file
+     */
+    public static class SourceImage {
+        private final File imageFile;
+        private final File labelFile;
+
+        public SourceImage(File imageFile, File labelFile) {
+            this.imageFile = imageFile;
+            this.labelFile = labelFile;
+        }
+
+        public File getImageFile() { return imageFile; }
+        public File getLabelFile() { return labelFile; }
+    }
+}
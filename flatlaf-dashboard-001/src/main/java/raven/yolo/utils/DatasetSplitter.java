@@ -0,0 +1,272 @@
+package raven.yolo.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns dataset items to train/val/test from a stable hash of their
+ * identity, so the same item always lands in the same split and adding
+ * items doesn't reshuffle the existing ones.
+ * <p>
+ * With stratification, items are grouped by their rarest class and each
+ * group is divided by the ratios in hash order. That keeps rare classes
+ * present in every split at the cost of a few items near the group's
+ * boundaries moving when the group grows.
+ */
+public class DatasetSplitter {
+
+    public static final String TRAIN = "train";
+    public static final String VAL = "val";
+    public static final String TEST = "test";
+
+    /** Every split name a dataset directory may contain */
+    public static final String[] ALL_SPLITS = {TRAIN, VAL, TEST};
+
+    private final double trainRatio;
+    private final double valRatio;
+    private final double testRatio;
+    private boolean stratify;
+
+    /**
+     * Ratios are normalized, so 80/20/0 and 0.8/0.2/0 are the same
+     */
+    public DatasetSplitter(double trainRatio, double valRatio, double testRatio) {
+        double total = trainRatio + valRatio + testRatio;
+        if (trainRatio <= 0 || valRatio < 0 || testRatio < 0 || total <= 0) {
+            throw new IllegalArgumentException("Invalid split ratios: " + trainRatio + "/" + valRatio + "/" + testRatio);
+        }
+        this.trainRatio = trainRatio / total;
+        this.valRatio = valRatio / total;
+        this.testRatio = testRatio / total;
+    }
+
+    /**
+     * The 80/20 train/val split used for training
+     */
+    public static DatasetSplitter defaultSplit() {
+        return new DatasetSplitter(0.8, 0.2, 0.0);
+    }
+
+    public DatasetSplitter setStratify(boolean stratify) {
+        this.stratify = stratify;
+        return this;
+    }
+
+    public boolean isStratify() {
+        return stratify;
+    }
+
+    /**
+     * Splits with a non-zero share, in train/val/test order
+     */
+    public List<String> getSplits() {
+        List<String> splits = new ArrayList<>();
+        splits.add(TRAIN);
+        if (valRatio > 0) splits.add(VAL);
+        if (testRatio > 0) splits.add(TEST);
+        return splits;
+    }
+
+    /**
+     * Assign every item to a split. Keys must be unique.
+     */
+    public Map<String, String> assign(List<Item> items) {
+        Map<String, String> assignment = new HashMap<>(items.size() * 2);
+        if (stratify) {
+            assignStratified(items, assignment);
+        } else {
+            for (Item item : items) {
+                assignment.put(item.key, splitForFraction(fraction(item.key)));
+            }
+        }
+        fillEmptySplits(items, assignment);
+        return assignment;
+    }
+
+    /**
+     * Per-split image and class counts for an assignment
+     */
+    public SplitReport report(List<Item> items, Map<String, String> assignment) {
+        SplitReport report = new SplitReport(getSplits());
+        for (Item item : items) {
+            String split = assignment.get(item.key);
+            report.imageCounts.merge(split, 1, Integer::sum);
+            Map<Integer, Integer> classCounts = report.classCounts.get(split);
+            for (int classId : item.classIds) {
+                classCounts.merge(classId, 1, Integer::sum);
+            }
+        }
+        return report;
+    }
+
+    private void assignStratified(List<Item> items, Map<String, String> assignment) {
+        // How many items contain each class, to find every item's rarest class
+        Map<Integer, Integer> classFrequency = new HashMap<>();
+        for (Item item : items) {
+            for (int classId : item.classIds) {
+                classFrequency.merge(classId, 1, Integer::sum);
+            }
+        }
+
+        Map<Integer, List<Item>> strata = new TreeMap<>();
+        for (Item item : items) {
+            int stratum = -1;
+            int best = Integer.MAX_VALUE;
+            for (int classId : item.classIds) {
+                int frequency = classFrequency.get(classId);
+                if (frequency < best || (frequency == best && classId < stratum)) {
+                    best = frequency;
+                    stratum = classId;
+                }
+            }
+            strata.computeIfAbsent(stratum, k -> new ArrayList<>()).add(item);
+        }
+
+        for (List<Item> group : strata.values()) {
+            group.sort(Comparator.comparingDouble((Item item) -> fraction(item.key)).thenComparing(item -> item.key));
+            int n = group.size();
+            int trainCount = (int) Math.round(n * trainRatio);
+            int valCount = (int) Math.round(n * (trainRatio + valRatio)) - trainCount;
+            for (int i = 0; i < n; i++) {
+                String split = i < trainCount ? TRAIN : i < trainCount + valCount ? VAL : TEST;
+                if (split.equals(TEST) && testRatio <= 0) {
+                    split = valRatio > 0 ? VAL : TRAIN;
+                }
+                assignment.put(group.get(i).key, split);
+            }
+        }
+    }
+
+    /**
+     * Small datasets can hash entirely into train; YOLO needs at least one
+     * image in each requested split, so move over the closest candidates
+     */
+    private void fillEmptySplits(List<Item> items, Map<String, String> assignment) {
+        List<String> splits = getSplits();
+        if (items.size() < splits.size()) {
+            return;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (String split : assignment.values()) {
+            counts.merge(split, 1, Integer::sum);
+        }
+        for (String split : splits) {
+            if (counts.getOrDefault(split, 0) > 0) {
+                continue;
+            }
+            Item candidate = null;
+            for (Item item : items) {
+                String current = assignment.get(item.key);
+                if (counts.getOrDefault(current, 0) > 1
+                    && (candidate == null || fraction(item.key) > fraction(candidate.key))) {
+                    candidate = item;
+                }
+            }
+            if (candidate != null) {
+                counts.merge(assignment.get(candidate.key), -1, Integer::sum);
+                assignment.put(candidate.key, split);
+                counts.put(split, 1);
+            }
+        }
+    }
+
+    private String splitForFraction(double fraction) {
+        if (fraction < trainRatio) return TRAIN;
+        if (fraction < trainRatio + valRatio || testRatio <= 0) return valRatio > 0 ? VAL : TRAIN;
+        return TEST;
+    }
+
+    /**
+     * Stable value in [0, 1) for a key. Hex digests use their last 13 digits
+     * directly; other keys are mixed through a 64-bit FNV-1a hash.
+     */
+    static double fraction(String key) {
+        long bits;
+        if (key.length() >= 13 && key.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            bits = Long.parseLong(key.substring(key.length() - 13), 16);
+        } else {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            bits = hash >>> 12;
+        }
+        return (bits & ((1L << 52) - 1)) / (double) (1L << 52);
+    }
+
+    /**
+     * An item to split: a stable identity and the classes it contains
+     */
+    public static class Item {
+        private final String key;
+        private final int[] classIds;
+
+        public Item(String key, int[] classIds) {
+            this.key = key;
+            this.classIds = classIds != null ? classIds : new int[0];
+        }
+
+        public String getKey() { return key; }
+        public int[] getClassIds() { return classIds; }
+    }
+
+    /**
+     * Image counts and images-per-class counts for each split
+     */
+    public static class SplitReport {
+        private final Map<String, Integer> imageCounts = new LinkedHashMap<>();
+        private final Map<String, Map<Integer, Integer>> classCounts = new LinkedHashMap<>();
+
+        SplitReport(List<String> splits) {
+            for (String split : splits) {
+                imageCounts.put(split, 0);
+                classCounts.put(split, new TreeMap<>());
+            }
+        }
+
+        public Map<String, Integer> getImageCounts() { return imageCounts; }
+        public Map<String, Map<Integer, Integer>> getClassCounts() { return classCounts; }
+
+        /**
+         * Multi-line summary, naming classes where names are known
+         */
+        public String format(List<String> classNames) {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : imageCounts.entrySet()) {
+                text.append(entry.getKey()).append(": ").append(entry.getValue()).append(" image(s)");
+                Map<Integer, Integer> perClass = classCounts.get(entry.getKey());
+                if (!perClass.isEmpty()) {
+                    text.append(" [");
+                    boolean first = true;
+                    for (Map.Entry<Integer, Integer> classEntry : perClass.entrySet()) {
+                        if (!first) text.append(", ");
+                        int classId = classEntry.getKey();
+                        text.append(classNames != null && classId >= 0 && classId < classNames.size()
+                            ? classNames.get(classId) : "class_" + classId);
+                        text.append("=").append(classEntry.getValue());
+                        first = false;
+                    }
+                    text.append("]");
+                }
+                text.append("\n");
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : imageCounts.entrySet()) {
+                if (text.length() > 0) text.append(", ");
+                text.append(entry.getKey()).append("=").append(entry.getValue());
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.DetectionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detections in struct-of-arrays form: one primitive array per field,
+ * boxes as corners. Post-processing runs over these arrays without
+ * touching {@link DetectionResult} objects; results are converted back only
+ * for what is displayed.
+ */
+public class DetectionArrays {
+
+    private float[] x1;
+    private float[] y1;
+    private float[] x2;
+    private float[] y2;
+    private float[] scores;
+    private int[] classIds;
+    private String[] classNames = new String[0];
+    private int size;
+
+    public DetectionArrays() {
+        this(64);
+    }
+
+    public DetectionArrays(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    public static DetectionArrays from(List<DetectionResult> detections) {
+        DetectionArrays arrays = new DetectionArrays(detections.size());
+        for (DetectionResult detection : detections) {
+            DetectionResult.BoundingBox box = detection.getBoundingBox();
+            if (box != null) {
+                arrays.add(detection.getClassId(), detection.getClassName(), (float) detection.getConfidence(),
+                    (float) box.getX(), (float) box.getY(), (float) box.getWidth(), (float) box.getHeight());
+            }
+        }
+        return arrays;
+    }
+
+    /**
+     * Append one detection given as top-left corner plus size
+     */
+    public void add(int classId, String className, float score, float x, float y, float width, float height) {
+        if (size == scores.length) {
+            grow(size * 2);
+        }
+        x1[size] = x;
+        y1[size] = y;
+        x2[size] = x + width;
+        y2[size] = y + height;
+        scores[size] = score;
+        classIds[size] = classId;
+        if (classId >= 0) {
+            if (classId >= classNames.length) {
+                classNames = Arrays.copyOf(classNames, Math.max(classId + 1, classNames.length * 2));
+            }
+            if (classNames[classId] == null) {
+                classNames[classId] = className;
+            }
+        }
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() { return size; }
+    public float[] getX1() { return x1; }
+    public float[] getY1() { return y1; }
+    public float[] getX2() { return x2; }
+    public float[] getY2() { return y2; }
+    public float[] getScores() { return scores; }
+    public int[] getClassIds() { return classIds; }
+
+    /**
+     * Largest class id present plus one, for sizing per-class tables
+     */
+    public int getClassCount() {
+        int max = -1;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, classIds[i]);
+        }
+        return max + 1;
+    }
+
+    public String getClassName(int classId) {
+        String name = classId >= 0 && classId < classNames.length ? classNames[classId] : null;
+        return name != null ? name : "Class_" + classId;
+    }
+
+    /**
+     * Convert selected entries back to results. When given, scores[k] (e.g.
+     * decayed by soft-NMS) replaces the stored score of indices[k].
+     */
+    public List<DetectionResult> toResults(int[] indices, float[] scoreOverride, int count) {
+        List<DetectionResult> results = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            int i = indices[k];
+            float score = scoreOverride != null ? scoreOverride[k] : scores[i];
+            results.add(new DetectionResult(classIds[i], getClassName(classIds[i]), score,
+                new DetectionResult.BoundingBox(x1[i], y1[i], x2[i] - x1[i], y2[i] - y1[i])));
+        }
+        return results;
+    }
+
+    private void allocate(int capacity) {
+        x1 = new float[capacity];
+        y1 = new float[capacity];
+        x2 = new float[capacity];
+        y2 = new float[capacity];
+        scores = new float[capacity];
+        classIds = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        classIds = Arrays.copyOf(classIds, capacity);
+    }
+}
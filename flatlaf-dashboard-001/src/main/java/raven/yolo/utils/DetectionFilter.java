@@ -0,0 +1,55 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.DetectionResult;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Re-applies confidence threshold, class visibility and NMS to detections
+ * that were fetched once at a low floor threshold, so changing these
+ * settings doesn't require running the model again. The work is done by a
+ * {@link DetectionPostProcessor} on a struct-of-arrays copy of the raw
+ * detections that is built once per result.
+ */
+public class DetectionFilter {
+
+    private final DetectionPostProcessor postProcessor = new DetectionPostProcessor();
+    private final Set<Integer> hiddenClasses = new HashSet<>();
+    private List<DetectionResult> lastRaw;
+    private DetectionArrays lastArrays;
+
+    public DetectionPostProcessor getPostProcessor() { return postProcessor; }
+
+    public double getConfidenceThreshold() { return postProcessor.getConfidenceThreshold(); }
+    public void setConfidenceThreshold(double confidenceThreshold) { postProcessor.setConfidenceThreshold((float) confidenceThreshold); }
+
+    public double getIouThreshold() { return postProcessor.getIouThreshold(); }
+    public void setIouThreshold(double iouThreshold) { postProcessor.setIouThreshold((float) iouThreshold); }
+
+    public void setClassAgnostic(boolean classAgnostic) { postProcessor.setClassAgnostic(classAgnostic); }
+    public void setMethod(DetectionPostProcessor.Method method) { postProcessor.setMethod(method); }
+
+    public Set<Integer> getHiddenClasses() { return hiddenClasses; }
+
+    public void setClassVisible(int classId, boolean visible) {
+        if (visible) {
+            hiddenClasses.remove(classId);
+        } else {
+            hiddenClasses.add(classId);
+        }
+        postProcessor.setClassVisible(classId, visible);
+    }
+
+    /**
+     * Detections that pass every setting, highest confidence first
+     */
+    public List<DetectionResult> apply(List<DetectionResult> rawDetections) {
+        if (rawDetections != lastRaw) {
+            lastRaw = rawDetections;
+            lastArrays = DetectionArrays.from(rawDetections);
+        }
+        return postProcessor.apply(lastArrays);
+    }
+}
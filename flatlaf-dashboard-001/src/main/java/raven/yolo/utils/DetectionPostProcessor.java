@@ -0,0 +1,327 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.DetectionResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Threshold, top-k and non-maximum suppression over {@link DetectionArrays}.
+ * Supports class-aware or class-agnostic suppression, standard (hard) NMS
+ * and linear or Gaussian soft-NMS, and per-class confidence thresholds.
+ * <p>
+ * Candidates are copied into score-sorted work arrays so the suppression
+ * loops run over contiguous primitives. The work arrays are reused between
+ * calls; after the first call at a given size, {@link #process} allocates
+ * nothing. Not thread-safe: use one instance per thread.
+ */
+public class DetectionPostProcessor {
+
+    public enum Method {
+        HARD("Standard NMS"),
+        SOFT_LINEAR("Soft-NMS (linear)"),
+        SOFT_GAUSSIAN("Soft-NMS (Gaussian)");
+
+        private final String displayName;
+
+        Method(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private float confidenceThreshold = 0.25f;
+    private float iouThreshold = 0.7f;
+    private boolean classAgnostic;
+    private Method method = Method.HARD;
+    private float sigma = 0.5f;
+    private int topK;
+    private int maxDetections;
+    private float[] classThresholds = new float[0];
+    private boolean[] hiddenClasses = new boolean[0];
+
+    // Work arrays, in descending score order
+    private long[] sortKeys = new long[0];
+    private int[] order = new int[0];
+    private float[] sx1 = new float[0];
+    private float[] sy1 = new float[0];
+    private float[] sx2 = new float[0];
+    private float[] sy2 = new float[0];
+    private float[] area = new float[0];
+    private float[] score = new float[0];
+    private int[] classOf = new int[0];
+    private boolean[] removed = new boolean[0];
+
+    // Output
+    private int[] kept = new int[0];
+    private float[] keptScores = new float[0];
+    private int keptCount;
+
+    public float getConfidenceThreshold() { return confidenceThreshold; }
+    public DetectionPostProcessor setConfidenceThreshold(float confidenceThreshold) {
+        this.confidenceThreshold = confidenceThreshold;
+        return this;
+    }
+
+    public float getIouThreshold() { return iouThreshold; }
+    public DetectionPostProcessor setIouThreshold(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+        return this;
+    }
+
+    public boolean isClassAgnostic() { return classAgnostic; }
+    public DetectionPostProcessor setClassAgnostic(boolean classAgnostic) {
+        this.classAgnostic = classAgnostic;
+        return this;
+    }
+
+    public Method getMethod() { return method; }
+    public DetectionPostProcessor setMethod(Method method) {
+        this.method = method != null ? method : Method.HARD;
+        return this;
+    }
+
+    /**
+     * Gaussian soft-NMS decay width
+     */
+    public DetectionPostProcessor setSigma(float sigma) {
+        this.sigma = sigma;
+        return this;
+    }
+
+    /**
+     * Only the k highest scoring candidates enter NMS; 0 for no limit
+     */
+    public DetectionPostProcessor setTopK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+
+    /**
+     * Stop after this many detections are kept; 0 for no limit
+     */
+    public DetectionPostProcessor setMaxDetections(int maxDetections) {
+        this.maxDetections = maxDetections;
+        return this;
+    }
+
+    /**
+     * Override the confidence threshold for one class; NaN restores the default
+     */
+    public DetectionPostProcessor setClassThreshold(int classId, float threshold) {
+        if (classId >= classThresholds.length) {
+            int oldLength = classThresholds.length;
+            classThresholds = Arrays.copyOf(classThresholds, classId + 1);
+            Arrays.fill(classThresholds, oldLength, classThresholds.length, Float.NaN);
+        }
+        classThresholds[classId] = threshold;
+        return this;
+    }
+
+    public void clearClassThresholds() {
+        classThresholds = new float[0];
+    }
+
+    public DetectionPostProcessor setClassVisible(int classId, boolean visible) {
+        if (classId >= hiddenClasses.length) {
+            if (visible) {
+                return this;
+            }
+            hiddenClasses = Arrays.copyOf(hiddenClasses, classId + 1);
+        }
+        hiddenClasses[classId] = !visible;
+        return this;
+    }
+
+    public void showAllClasses() {
+        Arrays.fill(hiddenClasses, false);
+    }
+
+    /**
+     * Run thresholding, top-k and NMS. Returns the number of kept
+     * detections, whose indices into the input are {@link #getKeptIndices()}
+     * and whose (possibly decayed) scores are {@link #getKeptScores()}.
+     */
+    public int process(DetectionArrays detections) {
+        int n = detections.size();
+        ensureCapacity(n);
+        int candidates = selectCandidates(detections);
+
+        keptCount = 0;
+        if (method == Method.HARD) {
+            hardNms(candidates);
+        } else {
+            softNms(candidates);
+        }
+        return keptCount;
+    }
+
+    /**
+     * Convenience for callers working with result objects
+     */
+    public List<DetectionResult> apply(DetectionArrays detections) {
+        int count = process(detections);
+        return detections.toResults(kept, keptScores, count);
+    }
+
+    public int[] getKeptIndices() { return kept; }
+    public float[] getKeptScores() { return keptScores; }
+    public int getKeptCount() { return keptCount; }
+
+    private int selectCandidates(DetectionArrays detections) {
+        int n = detections.size();
+        float[] scores = detections.getScores();
+        int[] classIds = detections.getClassIds();
+
+        // Scores are non-negative, so their float bits sort like the values;
+        // the low half carries the index
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int classId = classIds[i];
+            if (isHidden(classId) || !(scores[i] >= thresholdFor(classId))) {
+                continue;
+            }
+            sortKeys[m++] = ((long) Float.floatToIntBits(Math.max(scores[i], 0f)) << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, m);
+
+        // Ascending order, so the best candidates are at the end
+        int selected = m;
+        if (topK > 0 && m > topK) {
+            m = topK;
+        }
+
+        float[] x1 = detections.getX1();
+        float[] y1 = detections.getY1();
+        float[] x2 = detections.getX2();
+        float[] y2 = detections.getY2();
+        for (int k = 0; k < m; k++) {
+            int i = (int) sortKeys[selected - 1 - k];
+            order[k] = i;
+            sx1[k] = x1[i];
+            sy1[k] = y1[i];
+            sx2[k] = x2[i];
+            sy2[k] = y2[i];
+            area[k] = Math.max(0f, x2[i] - x1[i]) * Math.max(0f, y2[i] - y1[i]);
+            score[k] = scores[i];
+            classOf[k] = classIds[i];
+            removed[k] = false;
+        }
+        return m;
+    }
+
+    private void hardNms(int m) {
+        for (int a = 0; a < m; a++) {
+            if (removed[a]) {
+                continue;
+            }
+            kept[keptCount] = order[a];
+            keptScores[keptCount] = score[a];
+            if (++keptCount == maxDetections) {
+                return;
+            }
+
+            float ax1 = sx1[a], ay1 = sy1[a], ax2 = sx2[a], ay2 = sy2[a], aArea = area[a];
+            int aClass = classOf[a];
+            for (int b = a + 1; b < m; b++) {
+                if (removed[b] || (!classAgnostic && classOf[b] != aClass)) {
+                    continue;
+                }
+                if (iou(ax1, ay1, ax2, ay2, aArea, b) > iouThreshold) {
+                    removed[b] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Soft-NMS: instead of dropping overlapping boxes, decay their scores and
+     * re-pick the best remaining box each round; boxes decayed below their
+     * class threshold are dropped
+     */
+    private void softNms(int m) {
+        while (true) {
+            int best = -1;
+            float bestScore = -1f;
+            for (int b = 0; b < m; b++) {
+                if (!removed[b] && score[b] > bestScore) {
+                    bestScore = score[b];
+                    best = b;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            removed[best] = true;
+            kept[keptCount] = order[best];
+            keptScores[keptCount] = bestScore;
+            if (++keptCount == maxDetections) {
+                return;
+            }
+
+            float ax1 = sx1[best], ay1 = sy1[best], ax2 = sx2[best], ay2 = sy2[best], aArea = area[best];
+            int aClass = classOf[best];
+            for (int b = 0; b < m; b++) {
+                if (removed[b] || (!classAgnostic && classOf[b] != aClass)) {
+                    continue;
+                }
+                float overlap = iou(ax1, ay1, ax2, ay2, aArea, b);
+                if (method == Method.SOFT_LINEAR) {
+                    if (overlap > iouThreshold) {
+                        score[b] *= 1f - overlap;
+                    }
+                } else {
+                    score[b] *= (float) Math.exp(-(overlap * overlap) / sigma);
+                }
+                if (score[b] < thresholdFor(classOf[b])) {
+                    removed[b] = true;
+                }
+            }
+        }
+    }
+
+    private float iou(float ax1, float ay1, float ax2, float ay2, float aArea, int b) {
+        float width = Math.min(ax2, sx2[b]) - Math.max(ax1, sx1[b]);
+        float height = Math.min(ay2, sy2[b]) - Math.max(ay1, sy1[b]);
+        if (width <= 0f || height <= 0f) {
+            return 0f;
+        }
+        float intersection = width * height;
+        float union = aArea + area[b] - intersection;
+        return union > 0f ? intersection / union : 0f;
+    }
+
+    private float thresholdFor(int classId) {
+        if (classId >= 0 && classId < classThresholds.length && !Float.isNaN(classThresholds[classId])) {
+            return classThresholds[classId];
+        }
+        return confidenceThreshold;
+    }
+
+    private boolean isHidden(int classId) {
+        return classId >= 0 && classId < hiddenClasses.length && hiddenClasses[classId];
+    }
+
+    private void ensureCapacity(int n) {
+        if (sortKeys.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, sortKeys.length * 2);
+        sortKeys = new long[capacity];
+        order = new int[capacity];
+        sx1 = new float[capacity];
+        sy1 = new float[capacity];
+        sx2 = new float[capacity];
+        sy2 = new float[capacity];
+        area = new float[capacity];
+        score = new float[capacity];
+        classOf = new int[capacity];
+        removed = new boolean[capacity];
+        kept = new int[capacity];
+        keptScores = new float[capacity];
+    }
+}
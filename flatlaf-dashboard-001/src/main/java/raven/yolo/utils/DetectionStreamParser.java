@@ -0,0 +1,247 @@
+package raven.yolo.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import raven.yolo.model.DetectionResult;
+import raven.yolo.model.DetectionResult.BoundingBox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass detection parser on Jackson's streaming {@link JsonParser}.
+ * Builds {@link DetectionResult}s straight from the token stream: no DTOs,
+ * no intermediate strings, no regular expressions and no logging per field.
+ * <p>
+ * Accepts the inference output shape
+ * {"detections": [{"class_id", "class_name", "confidence", "bbox": [x, y, w, h]}],
+ * "image_shape": [h, w, ...], "error": "..."}; unknown fields are skipped.
+ */
+public class DetectionStreamParser {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+        .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+        .build();
+    private static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    private DetectionStreamParser() {
+    }
+
+    /**
+     * Drop-in replacement for DetectionParserNew.parseDetections
+     */
+    public static List<DetectionResult> parseDetections(String output) {
+        return parse(output).getDetections();
+    }
+
+    /**
+     * Parse process output; anything before the first '{' (log lines printed
+     * by the model) is skipped. Never throws; failures are reported in the
+     * result's error.
+     */
+    public static ParseResult parse(String output) {
+        if (output == null) {
+            return ParseResult.failed("No output");
+        }
+        int start = output.indexOf('{');
+        if (start < 0) {
+            return ParseResult.failed("No JSON found in output");
+        }
+        char[] chars = output.toCharArray();
+        try (JsonParser parser = FACTORY.createParser(chars, start, chars.length - start)) {
+            return parse(parser);
+        } catch (IOException e) {
+            return ParseResult.failed("Invalid inference output: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse a result already read as a tree, e.g. by the inference worker,
+     * by walking its tokens. Never throws, like {@link #parse(String)}.
+     */
+    public static ParseResult parse(JsonNode node) {
+        if (node == null) {
+            return ParseResult.failed("No output");
+        }
+        try (JsonParser parser = MAPPER.treeAsTokens(node)) {
+            return parse(parser);
+        } catch (IOException e) {
+            return ParseResult.failed("Invalid inference output: " + e.getMessage());
+        }
+    }
+
+    private static ParseResult parse(JsonParser parser) throws IOException {
+        ParseResult result = new ParseResult();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return ParseResult.failed("Expected a JSON object");
+        }
+
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "detections":
+                    if (value == JsonToken.START_ARRAY) {
+                        readDetections(parser, result.detections, new HashMap<>());
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "image_shape":
+                    if (value == JsonToken.START_ARRAY) {
+                        result.imageShape = readIntArray(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "error":
+                    if (value != JsonToken.VALUE_NULL) {
+                        String error = parser.getValueAsString();
+                        if (error != null && !error.isEmpty()) {
+                            result.error = error;
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Class names repeat across detections, so each distinct name is kept
+     * once per parse instead of allocating a String per detection
+     */
+    private static void readDetections(JsonParser parser, List<DetectionResult> detections,
+                                       Map<Integer, String> classNames) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int classId = 0;
+            String className = null;
+            double confidence = 0;
+            double x = 0, y = 0, width = 0, height = 0;
+            boolean hasBox = false;
+
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "class_id":
+                    case "class":
+                        classId = parser.getValueAsInt();
+                        break;
+                    case "class_name":
+                    case "name":
+                        className = value == JsonToken.VALUE_NULL ? null : classNameOf(parser, classNames);
+                        break;
+                    case "confidence":
+                        confidence = parser.getValueAsDouble();
+                        break;
+                    case "bbox":
+                        if (value != JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                            break;
+                        }
+                        int index = 0;
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            double coordinate = parser.getValueAsDouble();
+                            switch (index++) {
+                                case 0: x = coordinate; break;
+                                case 1: y = coordinate; break;
+                                case 2: width = coordinate; break;
+                                case 3: height = coordinate; break;
+                                default: break;
+                            }
+                        }
+                        hasBox = index == 4;
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+
+            // Same rule as the DTO parser: a detection needs a 4-value box
+            if (hasBox) {
+                if (className == null || className.isEmpty()) {
+                    className = "Class_" + classId;
+                }
+                detections.add(new DetectionResult(classId, className, confidence, new BoundingBox(x, y, width, height)));
+            }
+        }
+    }
+
+    private static String classNameOf(JsonParser parser, Map<Integer, String> classNames) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + text[i];
+        }
+        String cached = classNames.get(hash);
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == text[offset + i]) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+        String name = parser.getText();
+        classNames.put(hash, name);
+        return name;
+    }
+
+    private static int[] readIntArray(JsonParser parser) throws IOException {
+        int[] values = new int[4];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (count == values.length) {
+                values = java.util.Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = parser.getValueAsInt();
+        }
+        return java.util.Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Detections plus whatever else the output carried
+     */
+    public static class ParseResult {
+        private final List<DetectionResult> detections = new ArrayList<>();
+        private int[] imageShape;
+        private String error;
+
+        static ParseResult failed(String error) {
+            ParseResult result = new ParseResult();
+            result.error = error;
+            return result;
+        }
+
+        public List<DetectionResult> getDetections() { return detections; }
+        public String getError() { return error; }
+        public boolean hasError() { return error != null; }
+
+        /**
+         * Original image size as reported by the model, or 0 if unknown
+         */
+        public int getImageHeight() { return imageShape != null && imageShape.length > 0 ? imageShape[0] : 0; }
+        public int getImageWidth() { return imageShape != null && imageShape.length > 1 ? imageShape[1] : 0; }
+    }
+}
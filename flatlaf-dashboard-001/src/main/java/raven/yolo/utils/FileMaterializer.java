@@ -0,0 +1,191 @@
+package raven.yolo.utils;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places a source file at a target path using a hard link, symbolic link,
+ * copy-on-write clone or full copy. When the chosen strategy fails (e.g. a
+ * hard link across filesystems) the materializer falls back to a full copy
+ * for the rest of the operation. Clone support is probed once per target
+ * filesystem, so a filesystem without it is copied to without starting a cp
+ * process for every file.
+ */
+public class FileMaterializer {
+
+    public enum Strategy {
+        COPY("Full copy"),
+        HARD_LINK("Hard link"),
+        SYMLINK("Symbolic link"),
+        REFLINK("Copy-on-write clone");
+
+        private final String displayName;
+
+        Strategy(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+
+        /**
+         * Parse a stored setting, defaulting to a full copy
+         */
+        public static Strategy fromName(String name) {
+            if (name != null) {
+                for (Strategy strategy : values()) {
+                    if (strategy.name().equalsIgnoreCase(name)) {
+                        return strategy;
+                    }
+                }
+            }
+            return COPY;
+        }
+    }
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase().contains("win");
+    private static final boolean IS_MAC = System.getProperty("os.name", "").toLowerCase().contains("mac");
+    private static final long CLONE_TIMEOUT_SECONDS = 60;
+
+    private final Strategy strategy;
+    private volatile boolean fallenBack;
+    private final Map<FileStore, Boolean> cloneSupport = new ConcurrentHashMap<>();
+    private final AtomicInteger linkedCount = new AtomicInteger();
+    private final AtomicInteger copiedCount = new AtomicInteger();
+
+    public FileMaterializer(Strategy strategy) {
+        this.strategy = strategy != null ? strategy : Strategy.COPY;
+        // Windows has no cp to clone with
+        this.fallenBack = IS_WINDOWS && this.strategy == Strategy.REFLINK;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Make target refer to source's content, replacing any existing target.
+     * Returns the strategy that was actually used.
+     */
+    public Strategy materialize(Path source, Path target) throws IOException {
+        if (strategy != Strategy.COPY && !fallenBack && (strategy != Strategy.REFLINK || canClone(target))) {
+            try {
+                Files.deleteIfExists(target);
+                switch (strategy) {
+                    case HARD_LINK:
+                        Files.createLink(target, source);
+                        break;
+                    case SYMLINK:
+                        Files.createSymbolicLink(target, source.toAbsolutePath());
+                        break;
+                    case REFLINK:
+                        cloneFile(source, target);
+                        break;
+                    default:
+                        break;
+                }
+                linkedCount.incrementAndGet();
+                return strategy;
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                if (!fallenBack) {
+                    fallenBack = true;
+                    System.out.println("[MATERIALIZE] " + strategy + " failed for " + source.getFileName()
+                        + " (" + e.getMessage() + "), falling back to full copy");
+                }
+            }
+        }
+
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        copiedCount.incrementAndGet();
+        return Strategy.COPY;
+    }
+
+    /**
+     * Whether the target's filesystem supports clones, found by cloning a
+     * one-byte file the first time the filesystem is seen
+     */
+    private boolean canClone(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        FileStore store = Files.getFileStore(dir);
+        Boolean supported = cloneSupport.get(store);
+        if (supported == null) {
+            supported = cloneSupport.computeIfAbsent(store, s -> probeClone(dir));
+        }
+        return supported;
+    }
+
+    private boolean probeClone(Path dir) {
+        Path probe = null;
+        Path clone = null;
+        try {
+            probe = Files.createTempFile(dir, ".reflink-probe", ".tmp");
+            Files.write(probe, new byte[]{0});
+            clone = probe.resolveSibling(probe.getFileName() + ".clone");
+            cloneFile(probe, clone);
+            return true;
+        } catch (IOException e) {
+            System.out.println("[MATERIALIZE] " + Strategy.REFLINK + " is not supported in " + dir
+                + " (" + e.getMessage() + "), using full copies there");
+            return false;
+        } finally {
+            deleteQuietly(clone);
+            deleteQuietly(probe);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Leftover probe file; harmless
+            }
+        }
+    }
+
+    /**
+     * Clone through cp, which issues the FICLONE / clonefile call for us;
+     * fails on filesystems without copy-on-write support
+     */
+    private void cloneFile(Path source, Path target) throws IOException {
+        ProcessBuilder pb = IS_MAC
+            ? new ProcessBuilder("cp", "-c", source.toAbsolutePath().toString(), target.toAbsolutePath().toString())
+            : new ProcessBuilder("cp", "--reflink=always", source.toAbsolutePath().toString(), target.toAbsolutePath().toString());
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        try {
+            String output = new String(process.getInputStream().readAllBytes()).trim();
+            if (!process.waitFor(CLONE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("cp timed out");
+            }
+            if (process.exitValue() != 0) {
+                Files.deleteIfExists(target);
+                throw new IOException(output.isEmpty() ? "cp exited with " + process.exitValue() : output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            throw new IOException("Clone interrupted", e);
+        }
+    }
+
+    /**
+     * Human readable counts, e.g. "1200 hard link, 3 copied"
+     */
+    public String getSummary() {
+        if (strategy == Strategy.COPY) {
+            return copiedCount.get() + " copied";
+        }
+        return linkedCount.get() + " " + strategy.toString().toLowerCase() + ", " + copiedCount.get() + " copied";
+    }
+}
@@ -0,0 +1,129 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads image width/height from the file header through an {@link ImageReader}
+ * without decoding any pixels.
+ */
+public class ImageDimensionProbe {
+
+    /**
+     * Width and height recorded for an image whose header hasn't been read
+     * yet or can't be read; such images are probed again when the project
+     * is opened
+     */
+    public static final int UNKNOWN = 0;
+
+    /**
+     * Placeholder dimensions given to every image before headers were read;
+     * see {@link YoloProject#isDimensionsProbed()}
+     */
+    public static final int LEGACY_WIDTH = 640;
+    public static final int LEGACY_HEIGHT = 480;
+
+    private ImageDimensionProbe() {
+    }
+
+    /**
+     * Probe a single file; returns {width, height} or null if no reader
+     * understands the file
+     */
+    public static int[] probe(File imageFile) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            while (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    input.seek(0);
+                    reader.setInput(input, true, true);
+                    return new int[]{reader.getWidth(0), reader.getHeight(0)};
+                } catch (IOException | RuntimeException e) {
+                    // Try the next reader registered for this format
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read image header: " + imageFile.getName() + " - " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Probe a single file, falling back to unknown dimensions
+     */
+    public static int[] probeOrUnknown(File imageFile) {
+        int[] dimensions = probe(imageFile);
+        return dimensions != null ? dimensions : new int[]{UNKNOWN, UNKNOWN};
+    }
+
+    /**
+     * True for images whose header hasn't been read. In projects saved
+     * before headers were read, 640x480 may be a placeholder as well; once
+     * such a project has been probed it is flagged, so images that really
+     * are 640x480 aren't read again on every open.
+     */
+    public static boolean needsProbe(YoloImage image, boolean legacyPlaceholders) {
+        return image.getWidth() <= UNKNOWN || image.getHeight() <= UNKNOWN
+            || (legacyPlaceholders && image.getWidth() == LEGACY_WIDTH && image.getHeight() == LEGACY_HEIGHT);
+    }
+
+    /**
+     * Probe many images in parallel. Only images whose real dimensions differ
+     * from the stored ones are returned; unreadable files are left out.
+     */
+    public static Map<YoloImage, int[]> probeAll(List<YoloImage> images, int parallelism) throws InterruptedException {
+        Map<YoloImage, int[]> changed = new IdentityHashMap<>();
+        if (images.isEmpty()) {
+            return changed;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, images.size())), r -> {
+            Thread thread = new Thread(r, "dimension-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<int[]>> futures = new ArrayList<>(images.size());
+            for (YoloImage image : images) {
+                String path = image.getPath();
+                futures.add(executor.submit(() -> path != null ? probe(new File(path)) : null));
+            }
+            for (int i = 0; i < images.size(); i++) {
+                int[] dimensions;
+                try {
+                    dimensions = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    continue;
+                }
+                YoloImage image = images.get(i);
+                if (dimensions != null && (dimensions[0] != image.getWidth() || dimensions[1] != image.getHeight())) {
+                    changed.put(image, dimensions);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return changed;
+    }
+}
@@ -3,8 +3,15 @@ package raven.yolo.utils;
 import raven.yolo.model.DetectionResult;
 import raven.yolo.model.DetectionResult.BoundingBox;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -12,7 +19,7 @@ import java.util.List;
  */
 public class ImageRenderer {
     
-    private static final int STROKE_WIDTH = 2;
+    private static final Stroke BOX_STROKE = new BasicStroke(2);
     private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 12);
     
     /**
@@ -39,38 +46,50 @@ public class ImageRenderer {
         // Draw original image
         g2d.drawImage(originalImage, 0, 0, null);
         
-        // Draw each detection
-        for (DetectionResult detection : detections) {
-            renderDetection(g2d, detection, originalImage.getWidth(), originalImage.getHeight());
-        }
+        paintDetections(g2d, detections, 1.0, 0, 0);
         
         g2d.dispose();
         return resultImage;
     }
     
+    /**
+     * Paint detections given in image coordinates onto a view that shows the
+     * image scaled by scale at (offsetX, offsetY). Strokes and labels keep
+     * their screen size; nothing is drawn into the image itself.
+     */
+    public static void paintDetections(Graphics2D g2d, List<DetectionResult> detections,
+                                       double scale, int offsetX, int offsetY) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        for (DetectionResult detection : detections) {
+            renderDetection(g2d, detection, scale, offsetX, offsetY);
+        }
+    }
+    
     /**
      * Render a single detection
      */
-    private static void renderDetection(Graphics2D g2d, DetectionResult detection, int imageWidth, int imageHeight) {
+    private static void renderDetection(Graphics2D g2d, DetectionResult detection, double scale, int offsetX, int offsetY) {
         BoundingBox bbox = detection.getBoundingBox();
         if (bbox == null) return;
         
-        // Scale bounding box to image dimensions if needed
-        BoundingBox scaledBbox = bbox;
-        
         // Get colors
         Color fillColor = detection.getConfidenceColor();
         Color borderColor = detection.getBorderColor();
         
-        // Draw bounding box
-        Rectangle rect = scaledBbox.getRectangle();
+        // Draw bounding box in view coordinates
+        Rectangle rect = new Rectangle(
+            offsetX + (int) Math.round(bbox.getX() * scale),
+            offsetY + (int) Math.round(bbox.getY() * scale),
+            (int) Math.round(bbox.getWidth() * scale),
+            (int) Math.round(bbox.getHeight() * scale));
         
         // Fill with transparent color
         g2d.setColor(fillColor);
         g2d.fillRect(rect.x, rect.y, rect.width, rect.height);
         
         // Draw border
-        g2d.setStroke(new BasicStroke(STROKE_WIDTH));
+        g2d.setStroke(BOX_STROKE);
         g2d.setColor(borderColor);
         g2d.drawRect(rect.x, rect.y, rect.width, rect.height);
         
@@ -79,13 +98,13 @@ public class ImageRenderer {
             detection.getClassName(), 
             detection.getConfidence() * 100);
         
-        drawLabel(g2d, label, rect.x, rect.y, borderColor);
+        drawLabel(g2d, label, rect.x, rect.y, offsetY, borderColor);
     }
     
     /**
      * Draw detection label
      */
-    private static void drawLabel(Graphics2D g2d, String label, int x, int y, Color borderColor) {
+    private static void drawLabel(Graphics2D g2d, String label, int x, int y, int top, Color borderColor) {
         g2d.setFont(LABEL_FONT);
         FontMetrics fm = g2d.getFontMetrics();
         
@@ -97,8 +116,8 @@ public class ImageRenderer {
         int labelX = x;
         int labelY = y - labelHeight;
         
-        // If label would be outside image, position it inside the box
-        if (labelY < 0) {
+        // If label would be outside the view, position it inside the box
+        if (labelY < top) {
             labelY = y + labelHeight + padding;
         }
         
@@ -133,7 +152,8 @@ public class ImageRenderer {
         int newWidth = (int) (originalWidth * scale);
         int newHeight = (int) (originalHeight * scale);
         
-        BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage scaledImage = createCompatibleImage(Math.max(1, newWidth), Math.max(1, newHeight),
+            originalImage.getTransparency());
         Graphics2D g2d = scaledImage.createGraphics();
         
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
@@ -143,6 +163,79 @@ public class ImageRenderer {
         return scaledImage;
     }
     
+    /**
+     * Decode an image for display only, reading every n-th pixel so that its
+     * longer side ends up between maxSize and twice that. Large photos are
+     * never held at full resolution; the source size is kept for mapping
+     * detection coordinates.
+     */
+    public static DisplayImage loadForDisplay(File file, int maxSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("Cannot open " + file.getName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = Math.max(1, Math.max(width, height) / maxSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new DisplayImage(toCompatibleImage(reader.read(0, param)), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * An image in the screen's native pixel layout, so drawing it needs no
+     * per-paint conversion
+     */
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height,
+            transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+    
+    private static BufferedImage toCompatibleImage(BufferedImage image) {
+        BufferedImage compatible = createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+        if (compatible.getColorModel().equals(image.getColorModel())) {
+            return image;
+        }
+        Graphics2D g2d = compatible.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+    
+    /**
+     * A display-resolution image plus the size of the file it came from
+     */
+    public static class DisplayImage {
+        private final BufferedImage image;
+        private final int sourceWidth;
+        private final int sourceHeight;
+        
+        public DisplayImage(BufferedImage image, int sourceWidth, int sourceHeight) {
+            this.image = image;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+        }
+        
+        public BufferedImage getImage() { return image; }
+        public int getSourceWidth() { return sourceWidth; }
+        public int getSourceHeight() { return sourceHeight; }
+    }
+    
     /**
      * Scale detection results to match scaled image
      */
@@ -1,17 +1,37 @@
 package raven.yolo.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import raven.yolo.inference.InferenceBackend;
+import raven.yolo.inference.InferenceResultCache;
+import raven.yolo.inference.InferenceWorkerManager;
+import raven.yolo.inference.OnnxRuntimeBackend;
+import raven.yolo.inference.PythonInferenceBackend;
+import raven.yolo.inference.PythonInferenceWorker;
 import raven.yolo.training.PythonSetupManager;
 import raven.yolo.manager.WorkspaceManager;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class for converting YOLO models to different formats
  */
 public class ModelConverter {
     
+    private static final ObjectMapper JSON = new ObjectMapper();
+    
+    /** Tiles per forward pass in tiled inference */
+    private static final int TILE_BATCH_SIZE = 8;
+    
+    /** Images looked up in the result cache at a time during batch runs */
+    private static final int BATCH_CACHE_CHUNK = 256;
+    
     public enum ModelFormat {
         PYTORCH(".pt"),
         ONNX(".onnx"),
@@ -161,10 +181,23 @@ public class ModelConverter {
         return lower.endsWith(".pt") || lower.endsWith(".onnx") || 
                lower.endsWith(".engine") || lower.endsWith(".torchscript");
     }
-      /**
-     * Run inference on an image using a model
+    
+    /**
+     * Run inference on an image using a model.
+     * Served by a persistent worker that keeps the model loaded between calls;
+     * returns a {"detections", "image_shape"} node for
+     * {@link DetectionStreamParser#parse(JsonNode)}.
+     */
+    public static JsonNode runInference(String modelPath, String imagePath, double confidence, String projectPath) throws IOException {
+        return runInference(modelPath, imagePath, confidence, InferenceWorkerManager.DEFAULT_IOU,
+            InferenceWorkerManager.DEFAULT_MAX_DETECTIONS, projectPath);
+    }
+    
+    /**
+     * Run inference with explicit NMS IoU and detection cap
      */
-    public static String runInference(String modelPath, String imagePath, double confidence, String projectPath) throws IOException {
+    public static JsonNode runInference(String modelPath, String imagePath, double confidence, double iou,
+                                      int maxDetections, String projectPath) throws IOException {
         File modelFile = new File(modelPath);
         File imageFile = new File(imagePath);
         
@@ -173,122 +206,288 @@ public class ModelConverter {
         }
         if (!imageFile.exists()) {
             throw new IOException("Image file not found: " + imagePath);
-        }        List<String> command = getPythonCommand(projectPath);
+        }
         
-        // Create a proper multi-line Python script
-        String pythonScript = String.format(
-            "import json\n" +
-            "from ultralytics import YOLO\n" +
-            "try:\n" +
-            "    model = YOLO('%s')\n" +
-            "    results = model('%s', conf=%.2f)\n" +
-            "    detections = []\n" +
-            "    for r in results:\n" +
-            "        if hasattr(r, 'boxes') and r.boxes is not None:\n" +
-            "            for i in range(len(r.boxes)):\n" +
-            "                box = r.boxes[i]\n" +
-            "                x1, y1, x2, y2 = box.xyxy[0].tolist()\n" +
-            "                x, y, w, h = x1, y1, x2-x1, y2-y1\n" +
-            "                det = {\n" +
-            "                    'class_id': int(box.cls.item()),\n" +
-            "                    'class_name': model.names[int(box.cls.item())] if hasattr(model, 'names') else f'class_{int(box.cls.item())}',\n" +
-            "                    'confidence': float(box.conf.item()),\n" +
-            "                    'bbox': [x, y, w, h]\n" +
-            "                }\n" +
-            "                detections.append(det)\n" +
-            "    result = {'detections': detections, 'image_shape': list(results[0].orig_shape)}\n" +
-            "    print(json.dumps(result))\n" +
-            "except Exception as e:\n" +
-            "    error_result = {'error': str(e), 'detections': []}\n" +
-            "    print(json.dumps(error_result))",
-            modelPath.replace("\\", "/"),
-            imagePath.replace("\\", "/"),
-            confidence        );
+        InferenceResultCache cache = InferenceResultCache.getInstance();
+        String cacheKey = cache.key(modelPath, imagePath,
+            InferenceResultCache.params(getInferenceBackendName(modelPath), confidence, iou, maxDetections));
+        JsonNode cached = cache.get(cacheKey);
+        if (cached != null) {
+            System.out.println("[CACHE] Hit for " + imagePath);
+            return cached;
+        }
+        
+        InferenceBackend backend = getInferenceBackend(modelPath, projectPath);
         
         System.out.println("=== runInference ===");
         System.out.println("Model path: " + modelPath);
         System.out.println("Image path: " + imagePath);
         System.out.println("Confidence: " + confidence);
-        System.out.println("Project path: " + projectPath);
+        System.out.println("Backend: " + backend.getName());
         
-        // Create temporary Python script file
-        File tempScript = File.createTempFile("yolo_inference_", ".py");
-        tempScript.deleteOnExit();
-        
-        System.out.println("Created temp script: " + tempScript.getAbsolutePath());
-          
-        // Write script to temporary file
-        try (java.io.FileWriter writer = new java.io.FileWriter(tempScript)) {
-            writer.write(pythonScript);
+        long start = System.currentTimeMillis();
+        ObjectNode result = JSON.createObjectNode();
+        try {
+            List<JsonNode> results = backend.infer(modelPath, List.of(imagePath), confidence, iou, maxDetections);
+            
+            if (results.isEmpty()) {
+                result.putArray("detections");
+            } else {
+                JsonNode imageResult = results.get(0);
+                result.set("detections", imageResult.path("detections"));
+                result.set("image_shape", imageResult.path("image_shape"));
+            }
+        } catch (InferenceWorkerManager.InferenceException e) {
+            // Errors raised by the model are reported in-band, as the parsers expect
+            result.put("error", e.getMessage());
+            result.putArray("detections");
         }
+        cache.put(cacheKey, result);
         
-        System.out.println("Written Python script to temp file:");
-        System.out.println("--- Script Content ---");
-        System.out.println(pythonScript);
-        System.out.println("--- End Script ---");
+        System.out.println("Inference finished in " + (System.currentTimeMillis() - start) + " ms");
+        return result;
+    }
+    
+    /**
+     * Sliced inference for images much larger than the model input: the image
+     * is covered by overlapping tiles plus one full-image pass for objects
+     * larger than a tile, all run as one request, and detections are merged
+     * across seams by {@link TiledInference#merge}. Returns the same
+     * {"detections", "image_shape"} node as {@link #runInference}, with
+     * per-tile NMS at the Ultralytics default IoU. Runs on the same backend
+     * as {@link #runInference}.
+     */
+    public static JsonNode runTiledInference(String modelPath, String imagePath, int tileSize, double overlap,
+                                           double confidence, String projectPath) throws IOException {
+        if (!new File(modelPath).exists()) {
+            throw new IOException("Model file not found: " + modelPath);
+        }
+        int[] size = ImageDimensionProbe.probe(new File(imagePath));
+        if (size == null) {
+            throw new IOException("Cannot read image size: " + imagePath);
+        }
+        List<int[]> tiles = TiledInference.planTiles(size[0], size[1], tileSize, overlap);
+        if (tiles.size() > 1) {
+            tiles.add(new int[]{0, 0, size[0], size[1]});
+        }
+        InferenceResultCache cache = InferenceResultCache.getInstance();
+        String cacheKey = cache.key(modelPath, imagePath, "tiles=" + tileSize + "/" + overlap + "|"
+            + InferenceResultCache.params(getInferenceBackendName(modelPath), confidence,
+                InferenceWorkerManager.DEFAULT_IOU, InferenceWorkerManager.DEFAULT_MAX_DETECTIONS));
+        JsonNode cached = cache.get(cacheKey);
+        if (cached != null) {
+            System.out.println("[CACHE] Hit for tiled " + imagePath);
+            return cached;
+        }
+        InferenceBackend backend = getInferenceBackend(modelPath, projectPath);
         
-        // Add script file path to command
-        command.add(tempScript.getAbsolutePath());
+        System.out.println("[INFERENCE] Tiled inference on " + size[0] + "x" + size[1] + " with "
+            + tiles.size() + " tiles of " + tileSize + "px, overlap " + overlap + " (" + backend.getName() + ")");
+        long start = System.currentTimeMillis();
+        ObjectNode result = JSON.createObjectNode();
+        try {
+            JsonNode response = backend.inferTiles(modelPath, imagePath, tiles, confidence,
+                InferenceWorkerManager.DEFAULT_IOU, InferenceWorkerManager.DEFAULT_MAX_DETECTIONS, TILE_BATCH_SIZE);
+            
+            // Shift tile boxes to image coordinates, remembering which tile each came from
+            DetectionArrays all = new DetectionArrays();
+            List<Integer> sources = new ArrayList<>();
+            JsonNode tileResults = response.path("tiles");
+            for (int t = 0; t < tileResults.size() && t < tiles.size(); t++) {
+                int[] tile = tiles.get(t);
+                for (JsonNode detection : tileResults.get(t)) {
+                    JsonNode bbox = detection.path("bbox");
+                    if (bbox.size() < 4) {
+                        continue;
+                    }
+                    int classId = detection.path("class_id").asInt();
+                    all.add(classId, detection.path("class_name").asText("class_" + classId),
+                        (float) detection.path("confidence").asDouble(),
+                        (float) (bbox.get(0).asDouble() + tile[0]), (float) (bbox.get(1).asDouble() + tile[1]),
+                        (float) bbox.get(2).asDouble(), (float) bbox.get(3).asDouble());
+                    sources.add(t);
+                }
+            }
+            int[] sourceOf = sources.stream().mapToInt(Integer::intValue).toArray();
+            DetectionArrays merged = TiledInference.merge(all, sourceOf, TiledInference.DEFAULT_MATCH_THRESHOLD);
+            
+            ArrayNode detections = result.putArray("detections");
+            for (int i = 0; i < merged.size(); i++) {
+                int classId = merged.getClassIds()[i];
+                ObjectNode detection = detections.addObject();
+                detection.put("class_id", classId);
+                detection.put("class_name", merged.getClassName(classId));
+                detection.put("confidence", merged.getScores()[i]);
+                detection.putArray("bbox")
+                    .add(merged.getX1()[i]).add(merged.getY1()[i])
+                    .add(merged.getX2()[i] - merged.getX1()[i]).add(merged.getY2()[i] - merged.getY1()[i]);
+            }
+            result.set("image_shape", response.path("image_shape"));
+            System.out.println("[INFERENCE] Merged " + all.size() + " tile detections into " + merged.size());
+        } catch (InferenceWorkerManager.InferenceException e) {
+            result.put("error", e.getMessage());
+            result.putArray("detections");
+        }
+        cache.put(cacheKey, result);
         
-        System.out.println("Final command: " + command);
+        System.out.println("Tiled inference finished in " + (System.currentTimeMillis() - start) + " ms");
+        return result;
+    }
+    
+    /**
+     * Run a model over many images through the persistent worker, streaming
+     * each chunk's {"image", "detections", "image_shape"} results to the
+     * listener. Images with a cached result are reported without running the
+     * model. Returns the number of images processed.
+     */
+    public static int runBatchInference(String modelPath, List<String> imagePaths, double confidence, int batchSize,
+                                        String projectPath, InferenceWorkerManager.BatchListener listener,
+                                        java.util.function.BooleanSupplier cancelled) throws IOException {
+        if (!new File(modelPath).exists()) {
+            throw new IOException("Model file not found: " + modelPath);
+        }
+        System.out.println("[BATCH] " + imagePaths.size() + " images with " + modelPath + ", batch size " + batchSize);
+        long start = System.currentTimeMillis();
+        InferenceResultCache cache = InferenceResultCache.getInstance();
+        String params = InferenceResultCache.params(getInferenceBackendName(modelPath), confidence,
+            InferenceWorkerManager.DEFAULT_IOU, InferenceWorkerManager.DEFAULT_MAX_DETECTIONS);
+        boolean inProcess = OnnxRuntimeBackend.getInstance().supports(modelPath);
+        List<String> pythonCommand = null;
+        int total = imagePaths.size();
+        int completed = 0;
+        int cacheHits = 0;
         
-        try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.directory(new File(getCurrentProjectPath()));
-            pb.redirectErrorStream(true);
-            
-            System.out.println("Starting inference process...");
-            Process process = pb.start();
-            
-            // Read output with timeout
-            java.util.concurrent.CompletableFuture<String> outputFuture = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                StringBuilder output = new StringBuilder();
-                try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("Inference output: " + line);
-                        output.append(line).append("\n");
+        // Cache lookups hash each image, so they go a chunk at a time to keep results streaming
+        for (int chunkStart = 0; chunkStart < total; chunkStart += BATCH_CACHE_CHUNK) {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                break;
+            }
+            List<String> chunk = imagePaths.subList(chunkStart, Math.min(total, chunkStart + BATCH_CACHE_CHUNK));
+            Map<String, String> keys = new HashMap<>();
+            List<JsonNode> hits = new ArrayList<>();
+            List<String> misses = new ArrayList<>();
+            for (String imagePath : chunk) {
+                String key = cache.key(modelPath, imagePath, params);
+                JsonNode cached = cache.get(key);
+                if (cached != null) {
+                    ((ObjectNode) cached).put("image", imagePath);
+                    hits.add(cached);
+                } else {
+                    misses.add(imagePath);
+                    if (key != null) {
+                        keys.put(imagePath, key);
                     }
-                } catch (Exception e) {
-                    System.err.println("Error reading inference output: " + e.getMessage());
                 }
-                return output.toString();
-            });
-            
-            // Wait for process with timeout (3 minutes)
-            boolean finished = process.waitFor(3, java.util.concurrent.TimeUnit.MINUTES);
-            
-            if (!finished) {
-                System.err.println("Inference timed out after 3 minutes, destroying...");
-                process.destroyForcibly();
-                throw new IOException("Inference timed out after 3 minutes");
             }
-            
-            int exitCode = process.exitValue();
-            String output = outputFuture.get(10, java.util.concurrent.TimeUnit.SECONDS);
-            
-            System.out.println("Inference finished with exit code: " + exitCode);
-            System.out.println("Inference output:");
-            System.out.println(output);
-            
-            if (exitCode != 0) {
-                throw new IOException("Inference failed with exit code: " + exitCode + "\nOutput: " + output);
+            if (!hits.isEmpty()) {
+                completed += hits.size();
+                cacheHits += hits.size();
+                if (listener != null) {
+                    listener.onResults(hits, completed, total);
+                }
+            }
+            if (misses.isEmpty()) {
+                continue;
             }
-              return output;
             
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Inference was interrupted", e);
-        } catch (java.util.concurrent.TimeoutException e) {
-            throw new IOException("Timeout waiting for inference output", e);
-        } catch (java.util.concurrent.ExecutionException e) {
-            throw new IOException("Error getting inference output", e);
-        } finally {
-            // Clean up temporary file
-            boolean deleted = tempScript.delete();
-            System.out.println("Temp inference script deleted: " + deleted);
+            int base = completed;
+            InferenceWorkerManager.BatchListener caching = (results, done, count) -> {
+                for (JsonNode result : results) {
+                    cache.put(keys.get(result.path("image").asText()), result);
+                }
+                if (listener != null) {
+                    listener.onResults(results, base + done, total);
+                }
+            };
+            if (inProcess) {
+                completed += runInProcessBatch(OnnxRuntimeBackend.getInstance(), modelPath, misses, confidence,
+                    Math.max(1, batchSize), caching, cancelled);
+            } else {
+                if (pythonCommand == null) {
+                    pythonCommand = getPythonCommand(projectPath);
+                }
+                completed += InferenceWorkerManager.getInstance().inferBatch(pythonCommand, modelPath,
+                    new File(getCurrentProjectPath()), misses, confidence, batchSize, caching, cancelled);
+            }
         }
-    }/**
+        System.out.println("[BATCH] " + completed + " images (" + cacheHits + " cached) in "
+            + (System.currentTimeMillis() - start) + " ms");
+        return completed;
+    }
+    
+    /**
+     * Backend that runs the model: exported ONNX models run in-process when
+     * ONNX Runtime is available, everything else in the project's Python
+     * environment
+     */
+    public static InferenceBackend getInferenceBackend(String modelPath, String projectPath) {
+        if (OnnxRuntimeBackend.getInstance().supports(modelPath)) {
+            return OnnxRuntimeBackend.getInstance();
+        }
+        return new PythonInferenceBackend(getPythonCommand(projectPath), new File(getCurrentProjectPath()));
+    }
+    
+    /**
+     * Name of the backend {@link #getInferenceBackend} picks, without
+     * resolving the Python environment
+     */
+    public static String getInferenceBackendName(String modelPath) {
+        return OnnxRuntimeBackend.getInstance().supports(modelPath) ? OnnxRuntimeBackend.NAME : PythonInferenceBackend.NAME;
+    }
+    
+    /**
+     * Batch loop for in-process backends, with the same per-chunk reporting,
+     * per-image errors and cancellation as the Python worker
+     */
+    private static int runInProcessBatch(InferenceBackend backend, String modelPath, List<String> imagePaths,
+                                         double confidence, int batchSize, InferenceWorkerManager.BatchListener listener,
+                                         java.util.function.BooleanSupplier cancelled) throws IOException {
+        int completed = 0;
+        for (int start = 0; start < imagePaths.size(); start += batchSize) {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                break;
+            }
+            List<String> chunk = imagePaths.subList(start, Math.min(imagePaths.size(), start + batchSize));
+            List<JsonNode> results = new ArrayList<>(chunk.size());
+            for (String imagePath : chunk) {
+                try {
+                    results.addAll(backend.infer(modelPath, List.of(imagePath), confidence,
+                        InferenceWorkerManager.DEFAULT_IOU, InferenceWorkerManager.DEFAULT_MAX_DETECTIONS));
+                } catch (InferenceWorkerManager.InferenceException e) {
+                    ObjectNode failed = JSON.createObjectNode();
+                    failed.put("image", imagePath);
+                    failed.put("error", e.getMessage());
+                    failed.putArray("detections");
+                    results.add(failed);
+                }
+            }
+            completed += chunk.size();
+            if (listener != null) {
+                listener.onResults(results, completed, imagePaths.size());
+            }
+        }
+        return completed;
+    }
+    
+    /**
+     * Benchmark a model, freshly loaded, on the backend that runs it for
+     * inference; see {@link InferenceBackend#benchmark}
+     */
+    public static JsonNode runBenchmark(String modelPath, List<String> imagePaths, List<Integer> batchSizes,
+                                        int warmup, int iterations, String projectPath,
+                                        PythonInferenceWorker.MessageListener listener,
+                                        java.util.function.BooleanSupplier cancelled) throws IOException {
+        if (!new File(modelPath).exists()) {
+            throw new IOException("Model file not found: " + modelPath);
+        }
+        InferenceBackend backend = getInferenceBackend(modelPath, projectPath);
+        
+        System.out.println("[BENCHMARK] " + modelPath + " on " + imagePaths.size() + " images, batch sizes "
+            + batchSizes + " (" + backend.getName() + ")");
+        return backend.benchmark(modelPath, imagePaths, batchSizes, warmup, iterations, listener, cancelled);
+    }
+    
+    /**
      * Get Python command for a specific project
      */
     private static List<String> getPythonCommand(String projectPath) {
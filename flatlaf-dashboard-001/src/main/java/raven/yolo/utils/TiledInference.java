@@ -0,0 +1,121 @@
+package raven.yolo.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Geometry and merging for sliced inference on images much larger than the
+ * model's input size. The image is covered by overlapping square tiles
+ * that are run as one batch; tile detections are shifted back to image
+ * coordinates and duplicates across tile seams are fused.
+ * <p>
+ * Merging is greedy non-maximum merging: the best remaining box absorbs
+ * same-class boxes from other tiles whose intersection covers at least the
+ * match threshold of the smaller box, and grows to their union. Intersection
+ * over the smaller box, rather than IoU, matches the clipped half of an
+ * object cut by a seam to the whole object. Boxes from the same tile are
+ * never fused; the model's own NMS already separated them.
+ */
+public class TiledInference {
+
+    public static final int DEFAULT_TILE_SIZE = 640;
+    public static final double DEFAULT_OVERLAP = 0.2;
+    public static final float DEFAULT_MATCH_THRESHOLD = 0.5f;
+
+    private TiledInference() {
+    }
+
+    /**
+     * Tiles as {x, y, width, height} covering the image with at least the
+     * given overlap fraction between neighbours. The last row and column
+     * are aligned to the image edge; images no larger than a tile give a
+     * single tile.
+     */
+    public static List<int[]> planTiles(int width, int height, int tileSize, double overlap) {
+        int tileWidth = Math.min(tileSize, width);
+        int tileHeight = Math.min(tileSize, height);
+        int[] xs = offsets(width, tileWidth, overlap);
+        int[] ys = offsets(height, tileHeight, overlap);
+
+        List<int[]> tiles = new ArrayList<>(xs.length * ys.length);
+        for (int y : ys) {
+            for (int x : xs) {
+                tiles.add(new int[]{x, y, tileWidth, tileHeight});
+            }
+        }
+        return tiles;
+    }
+
+    private static int[] offsets(int length, int tile, double overlap) {
+        if (tile >= length) {
+            return new int[]{0};
+        }
+        int step = Math.max(1, (int) Math.floor(tile * (1.0 - Math.max(0.0, Math.min(overlap, 0.9)))));
+        int count = (int) Math.ceil((double) (length - tile) / step) + 1;
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = Math.min(i * step, length - tile);
+        }
+        return offsets;
+    }
+
+    /**
+     * Fuse duplicates across tiles. sourceOf[i] names the tile detection i
+     * came from; the result is ordered by descending score.
+     */
+    public static DetectionArrays merge(DetectionArrays detections, int[] sourceOf, float matchThreshold) {
+        int n = detections.size();
+        float[] x1 = detections.getX1();
+        float[] y1 = detections.getY1();
+        float[] x2 = detections.getX2();
+        float[] y2 = detections.getY2();
+        float[] scores = detections.getScores();
+        int[] classIds = detections.getClassIds();
+
+        // Score bits sort like the values for non-negative scores; the low half carries the index
+        long[] sortKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortKeys[i] = ((long) Float.floatToIntBits(Math.max(scores[i], 0f)) << 32) | i;
+        }
+        Arrays.sort(sortKeys);
+
+        boolean[] absorbed = new boolean[n];
+        DetectionArrays merged = new DetectionArrays(n);
+        for (int a = n - 1; a >= 0; a--) {
+            int i = (int) sortKeys[a];
+            if (absorbed[i]) {
+                continue;
+            }
+            float areaI = area(x1[i], y1[i], x2[i], y2[i]);
+            float ux1 = x1[i], uy1 = y1[i], ux2 = x2[i], uy2 = y2[i];
+
+            for (int b = a - 1; b >= 0; b--) {
+                int j = (int) sortKeys[b];
+                if (absorbed[j] || classIds[j] != classIds[i] || sourceOf[j] == sourceOf[i]) {
+                    continue;
+                }
+                float width = Math.min(x2[i], x2[j]) - Math.max(x1[i], x1[j]);
+                float height = Math.min(y2[i], y2[j]) - Math.max(y1[i], y1[j]);
+                if (width <= 0f || height <= 0f) {
+                    continue;
+                }
+                float smaller = Math.min(areaI, area(x1[j], y1[j], x2[j], y2[j]));
+                if (smaller > 0f && width * height / smaller >= matchThreshold) {
+                    absorbed[j] = true;
+                    ux1 = Math.min(ux1, x1[j]);
+                    uy1 = Math.min(uy1, y1[j]);
+                    ux2 = Math.max(ux2, x2[j]);
+                    uy2 = Math.max(uy2, y2[j]);
+                }
+            }
+            merged.add(classIds[i], detections.getClassName(classIds[i]), scores[i],
+                ux1, uy1, ux2 - ux1, uy2 - uy1);
+        }
+        return merged;
+    }
+
+    private static float area(float x1, float y1, float x2, float y2) {
+        return Math.max(0f, x2 - x1) * Math.max(0f, y2 - y1);
+    }
+}
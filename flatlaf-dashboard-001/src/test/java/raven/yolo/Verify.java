@@ -0,0 +1,64 @@
+package raven.yolo;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Minimal assertions for the verification classes under src/test, which run
+ * as plain main methods since the build has no test framework. A failed
+ * check throws, so the run exits non-zero. Run a check with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=&lt;check class&gt;
+ */
+public final class Verify {
+
+    private Verify() {
+    }
+
+    public interface Case {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run one named case and report it
+     */
+    public static void run(String name, Case test) throws Exception {
+        try {
+            test.run();
+        } catch (Exception | AssertionError e) {
+            System.out.println("FAIL " + name + ": " + e);
+            throw e;
+        }
+        System.out.println("ok   " + name);
+    }
+
+    public static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    public static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void near(double expected, double actual, double tolerance, String what) {
+        if (Math.abs(expected - actual) > tolerance) {
+            throw new AssertionError(String.format(Locale.ROOT, "%s: expected %.6f but was %.6f",
+                what, expected, actual));
+        }
+    }
+
+    public static void fails(Class<? extends Throwable> type, Case test, String what) throws Exception {
+        try {
+            test.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return;
+            }
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + " but got " + e);
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName());
+    }
+}
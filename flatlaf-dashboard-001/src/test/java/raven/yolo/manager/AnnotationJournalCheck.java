@@ -0,0 +1,159 @@
+package raven.yolo.manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import raven.yolo.model.YoloAnnotation;
+import raven.yolo.model.YoloImage;
+import raven.yolo.model.YoloProject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+
+import static raven.yolo.Verify.check;
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.near;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies that AnnotationJournal replays what it recorded, including after
+ * a torn append. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.manager.AnnotationJournalCheck
+ */
+public class AnnotationJournalCheck {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("journal-check");
+        try {
+            run("edits are replayed onto a fresh load", () -> {
+                File file = dir.resolve("replay.journal").toFile();
+                YoloProject edited = project(dir);
+                YoloImage car = edited.getImages().get(0);
+                car.addAnnotation(new YoloAnnotation(0, "car", 0.5, 0.5, 0.2, 0.1));
+                car.setLabeled(true);
+                YoloImage nested = edited.getImages().get(2);
+                nested.addAnnotation(new YoloAnnotation(1, "bus", 0.25, 0.75, 0.125, 0.4));
+                nested.setLabeled(true);
+
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    journal.append(edited, car);
+                    journal.append(List.of(AnnotationJournal.Edit.of(edited, nested)));
+                    equal(2, journal.getRecordCount(), "records");
+                }
+
+                YoloProject loaded = project(dir);
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    equal(2, journal.replay(loaded), "applied");
+                    equal(2, journal.getRecordCount(), "records after replay");
+                }
+                verifyBox(loaded.getImages().get(0), 0, 0.5, 0.5, 0.2, 0.1);
+                equal(0, loaded.getImages().get(1).getAnnotations().size(), "same filename, other folder untouched");
+                verifyBox(loaded.getImages().get(2), 1, 0.25, 0.75, 0.125, 0.4);
+                check(loaded.getImages().get(2).isAnnotationsDirty(), "replayed image is saved next time");
+            });
+
+            run("the latest record of an image wins", () -> {
+                File file = dir.resolve("latest.journal").toFile();
+                YoloProject edited = project(dir);
+                YoloImage image = edited.getImages().get(1);
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    image.addAnnotation(new YoloAnnotation(0, "car", 0.1, 0.1, 0.1, 0.1));
+                    image.setLabeled(true);
+                    journal.append(edited, image);
+                    image.clearAnnotations();
+                    image.setLabeled(false);
+                    journal.append(edited, image);
+                }
+                YoloProject loaded = project(dir);
+                loaded.getImages().get(1).addAnnotation(new YoloAnnotation(0, "car", 0.9, 0.9, 0.1, 0.1));
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    equal(2, journal.replay(loaded), "applied");
+                }
+                equal(0, loaded.getImages().get(1).getAnnotations().size(), "cleared");
+                check(!loaded.getImages().get(1).isLabeled(), "unlabeled");
+            });
+
+            run("a torn last record is ignored", () -> {
+                File file = dir.resolve("torn.journal").toFile();
+                YoloProject edited = project(dir);
+                YoloImage image = edited.getImages().get(0);
+                image.addAnnotation(new YoloAnnotation(0, "car", 0.3, 0.3, 0.1, 0.1));
+                image.setLabeled(true);
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    journal.append(edited, image);
+                }
+                Files.write(file.toPath(), "{\"image\":\"b.jpg\",\"labeled\":true,\"annot".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+                YoloProject loaded = project(dir);
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    equal(1, journal.replay(loaded), "applied");
+                }
+                verifyBox(loaded.getImages().get(0), 0, 0.3, 0.3, 0.1, 0.1);
+            });
+
+            run("unknown images are skipped and filename keys still match", () -> {
+                File file = dir.resolve("keys.journal").toFile();
+                String annotation = "[[1,\"bus\",0.5,0.5,0.5,0.5]]";
+                Files.write(file.toPath(), ("{\"image\":\"gone.jpg\",\"labeled\":true,\"annotations\":" + annotation + "}\n"
+                    + "{\"image\":\"c.jpg\",\"labeled\":true,\"annotations\":" + annotation + "}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+                YoloProject loaded = project(dir);
+                try (AnnotationJournal journal = new AnnotationJournal(file, MAPPER)) {
+                    equal(1, journal.replay(loaded), "applied");
+                }
+                // Written by a version that keyed records by filename
+                equal(1, loaded.getImages().get(2).getAnnotations().size(), "matched by filename");
+            });
+
+            run("reset empties the journal, also after close", () -> {
+                File file = dir.resolve("reset.journal").toFile();
+                YoloProject edited = project(dir);
+                YoloImage image = edited.getImages().get(0);
+                AnnotationJournal journal = new AnnotationJournal(file, MAPPER);
+                journal.close();
+                journal.append(edited, image);
+                check(file.length() > 0, "closed journal reopened for the append");
+                journal.reset();
+                equal(0L, file.length(), "emptied");
+                equal(0, journal.getRecordCount(), "records");
+                equal(0, new AnnotationJournal(file, MAPPER).replay(project(dir)), "nothing to replay");
+            });
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Two images share a filename, one of them in a subfolder of images
+     */
+    private static YoloProject project(Path dir) {
+        YoloProject project = new YoloProject("check", "", dir.toString());
+        project.addClass("car");
+        project.addClass("bus");
+        String images = project.getImagesDirPrefix();
+        project.addImage(new YoloImage("a.jpg", images + "a.jpg", 640, 480));
+        project.addImage(new YoloImage("b.jpg", images + "b.jpg", 640, 480));
+        project.addImage(new YoloImage("c.jpg", images + "day" + File.separator + "c.jpg", 640, 480));
+        return project;
+    }
+
+    private static void verifyBox(YoloImage image, int classId, double x, double y, double width, double height) {
+        List<YoloAnnotation> annotations = image.getAnnotations();
+        equal(1, annotations.size(), image.getFilename() + " boxes");
+        YoloAnnotation box = annotations.get(0);
+        equal(classId, box.getClassId(), "class id");
+        near(x, box.getXCenter(), 1e-9, "x");
+        near(y, box.getYCenter(), 1e-9, "y");
+        near(width, box.getWidth(), 1e-9, "width");
+        near(height, box.getHeight(), 1e-9, "height");
+        check(image.isLabeled(), image.getFilename() + " labeled");
+    }
+}
@@ -0,0 +1,100 @@
+package raven.yolo.manager;
+
+import raven.yolo.Verify;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static raven.yolo.Verify.check;
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies that BinaryProjectSnapshot round-trips the index and is refused
+ * when it is stale, truncated or damaged. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.manager.BinaryProjectSnapshotCheck
+ */
+public class BinaryProjectSnapshotCheck {
+
+    private static final byte[] PROJECT_JSON = "{\"name\":\"check\",\"images\":[[\"a.jpg\",640,480,1,[0,2]]]}"
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] METADATA_JSON = "{\"name\":\"check\",\"classes\":[\"car\",\"bus\"]}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        List<ProjectStorage.IndexEntry> index = List.of(
+            new ProjectStorage.IndexEntry("a.jpg", 640, 480, true, new int[]{0, 2, 2}, null),
+            new ProjectStorage.IndexEntry("b.jpg", 1920, 1080, false, new int[0], "/data/outside/b.jpg"),
+            new ProjectStorage.IndexEntry("xe đạp.png", 0, 0, true, new int[]{40000, 1}, "day/xe đạp.png"));
+
+        run("index round-trips", () -> {
+            byte[] snapshot = BinaryProjectSnapshot.encode(PROJECT_JSON, METADATA_JSON, index);
+            BinaryProjectSnapshot.Contents contents = BinaryProjectSnapshot.decode(snapshot, PROJECT_JSON);
+            check(contents != null, "decoded");
+            check(Arrays.equals(METADATA_JSON, contents.metadataJson), "metadata");
+            equal(index.size(), contents.index.size(), "entries");
+            for (int i = 0; i < index.size(); i++) {
+                equal(format(index.get(i)), format(contents.index.get(i)), "entry " + i);
+            }
+        });
+
+        run("a changed project.json makes the snapshot stale", () -> {
+            byte[] snapshot = BinaryProjectSnapshot.encode(PROJECT_JSON, METADATA_JSON, index);
+            byte[] edited = PROJECT_JSON.clone();
+            edited[10] ^= 1;
+            check(BinaryProjectSnapshot.decode(snapshot, edited) == null, "same length, other content");
+            check(BinaryProjectSnapshot.decode(snapshot, Arrays.copyOf(PROJECT_JSON, PROJECT_JSON.length + 1)) == null,
+                "other length");
+        });
+
+        run("any flipped bit is caught", () -> quietly(() -> {
+            byte[] snapshot = BinaryProjectSnapshot.encode(PROJECT_JSON, METADATA_JSON, index);
+            for (int i = 0; i < snapshot.length; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    byte[] damaged = snapshot.clone();
+                    damaged[i] ^= (byte) (1 << bit);
+                    check(BinaryProjectSnapshot.decode(damaged, PROJECT_JSON) == null, "bit " + bit + " of byte " + i);
+                }
+            }
+        }));
+
+        run("truncated and extended snapshots are refused", () -> quietly(() -> {
+            byte[] snapshot = BinaryProjectSnapshot.encode(PROJECT_JSON, METADATA_JSON, index);
+            for (int length = 0; length < snapshot.length; length++) {
+                check(BinaryProjectSnapshot.decode(Arrays.copyOf(snapshot, length), PROJECT_JSON) == null,
+                    "truncated to " + length);
+            }
+            check(BinaryProjectSnapshot.decode(Arrays.copyOf(snapshot, snapshot.length + 8), PROJECT_JSON) == null,
+                "trailing bytes");
+        }));
+
+        run("an empty index round-trips", () -> {
+            byte[] snapshot = BinaryProjectSnapshot.encode(PROJECT_JSON, new byte[0], List.of());
+            BinaryProjectSnapshot.Contents contents = BinaryProjectSnapshot.decode(snapshot, PROJECT_JSON);
+            check(contents != null, "decoded");
+            equal(0, contents.index.size(), "entries");
+            equal(0, contents.metadataJson.length, "metadata");
+        });
+    }
+
+    /**
+     * Each refused snapshot logs a line; keep thousands of them off the console
+     */
+    private static void quietly(Verify.Case test) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            test.run();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static String format(ProjectStorage.IndexEntry entry) {
+        return entry.filename + " " + entry.width + "x" + entry.height + " " + entry.labeled + " "
+            + Arrays.toString(entry.classIds) + " " + entry.path;
+    }
+}
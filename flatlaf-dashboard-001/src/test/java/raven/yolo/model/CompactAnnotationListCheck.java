@@ -0,0 +1,132 @@
+package raven.yolo.model;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static raven.yolo.Verify.check;
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.fails;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies that CompactAnnotationList behaves like a list of annotations
+ * and keeps label-file precision. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.model.CompactAnnotationListCheck
+ */
+public class CompactAnnotationListCheck {
+
+    public static void main(String[] args) throws Exception {
+        YoloProject project = new YoloProject();
+        project.addClass("car");
+        project.addClass("bus");
+
+        run("six decimals come back exactly", () -> {
+            CompactAnnotationList list = new CompactAnnotationList(project);
+            list.add(new YoloAnnotation(1, "ignored", 0.4, 0.123456, 0.999999, 0.000001));
+            YoloAnnotation box = list.get(0);
+            equal(0.4, box.getXCenter(), "x");
+            equal(0.123456, box.getYCenter(), "y");
+            equal(0.999999, box.getWidth(), "width");
+            equal(0.000001, box.getHeight(), "height");
+            equal("bus", box.getClassName(), "name from the project's classes");
+
+            list.add(5, 0.5, 0.5, 0.1, 0.1);
+            equal("class_5", list.get(1).getClassName(), "unknown class");
+            equal(5, list.getClassId(1), "class id");
+        });
+
+        run("elements are copies, replaced with set", () -> {
+            CompactAnnotationList list = new CompactAnnotationList(project);
+            list.add(0, 0.1, 0.1, 0.1, 0.1);
+            list.get(0).setXCenter(0.9);
+            equal(0.1, list.get(0).getXCenter(), "changing a copy does not change the list");
+            YoloAnnotation previous = list.set(0, new YoloAnnotation(1, "bus", 0.9, 0.1, 0.1, 0.1));
+            equal(0.1, previous.getXCenter(), "set returns the previous box");
+            equal(0.9, list.get(0).getXCenter(), "replaced");
+        });
+
+        run("boxes are found and removed by value", () -> {
+            CompactAnnotationList list = new CompactAnnotationList(project);
+            list.add(0, 0.1, 0.2, 0.3, 0.4);
+            list.add(1, 0.5, 0.6, 0.7, 0.8);
+            YoloAnnotation same = new YoloAnnotation(1, "bus", 0.5, 0.6, 0.7, 0.8);
+            equal(1, list.indexOf(same), "index of an equal box");
+            check(list.contains(list.get(0)), "contains a copy");
+            check(!list.contains(new YoloAnnotation(0, "car", 0.5, 0.6, 0.7, 0.8)), "class id matters");
+            check(!list.contains("not a box"), "other types");
+            check(list.remove((Object) same), "removed by value");
+            equal(1, list.size(), "size");
+            check(!list.remove((Object) same), "already removed");
+        });
+
+        run("matches an ArrayList under random edits", () -> {
+            Random random = new Random(7);
+            CompactAnnotationList compact = new CompactAnnotationList(project);
+            List<YoloAnnotation> reference = new ArrayList<>();
+            for (int step = 0; step < 20000; step++) {
+                int op = random.nextInt(10);
+                if (op < 5 || reference.isEmpty()) {
+                    YoloAnnotation box = randomBox(random);
+                    int index = random.nextInt(reference.size() + 1);
+                    compact.add(index, box);
+                    reference.add(index, box);
+                } else if (op < 7) {
+                    int index = random.nextInt(reference.size());
+                    YoloAnnotation box = randomBox(random);
+                    compact.set(index, box);
+                    reference.set(index, box);
+                } else if (op < 9) {
+                    int index = random.nextInt(reference.size());
+                    equal(format(reference.get(index)), format(compact.remove(index)), "removed box");
+                    reference.remove(index);
+                } else {
+                    compact.trimToSize();
+                }
+            }
+            equal(reference.size(), compact.size(), "size");
+            for (int i = 0; i < reference.size(); i++) {
+                equal(format(reference.get(i)), format(compact.get(i)), "box " + i);
+            }
+
+            CompactAnnotationList copy = compact.copy();
+            compact.clear();
+            equal(0, compact.size(), "cleared");
+            equal(reference.size(), copy.size(), "copy is independent");
+            equal(format(reference.get(0)), format(copy.get(0)), "copied box");
+        });
+
+        run("bounds, class ids and concurrent modification", () -> {
+            CompactAnnotationList list = new CompactAnnotationList(project);
+            fails(IndexOutOfBoundsException.class, () -> list.get(0), "get on an empty list");
+            fails(IndexOutOfBoundsException.class, () -> list.add(1, new YoloAnnotation()), "add past the end");
+            fails(IllegalArgumentException.class, () -> list.add(-1, 0, 0, 0, 0), "negative class id");
+            fails(IllegalArgumentException.class, () -> list.add(Short.MAX_VALUE + 1, 0, 0, 0, 0), "class id too large");
+            equal(0, list.size(), "failed adds leave the list unchanged");
+
+            list.add(Short.MAX_VALUE, 0.5, 0.5, 0.5, 0.5);
+            equal((int) Short.MAX_VALUE, list.getClassId(0), "largest class id");
+            Iterator<YoloAnnotation> iterator = list.iterator();
+            iterator.next();
+            list.add(0, 0.5, 0.5, 0.5, 0.5);
+            fails(ConcurrentModificationException.class, iterator::next, "iterator after an add");
+        });
+    }
+
+    private static YoloAnnotation randomBox(Random random) {
+        return new YoloAnnotation(random.nextInt(3), null, round(random.nextDouble()), round(random.nextDouble()),
+            round(random.nextDouble()), round(random.nextDouble()));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1e6) / 1e6;
+    }
+
+    private static String format(YoloAnnotation box) {
+        return String.format(Locale.ROOT, "%d %s %s %s %s", box.getClassId(),
+            box.getXCenter(), box.getYCenter(), box.getWidth(), box.getHeight());
+    }
+}
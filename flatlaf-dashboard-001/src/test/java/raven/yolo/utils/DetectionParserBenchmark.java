@@ -0,0 +1,96 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.DetectionResult;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares DetectionParser, DetectionParserNew and DetectionStreamParser on
+ * synthetic inference output. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.utils.DetectionParserBenchmark
+ */
+public class DetectionParserBenchmark {
+
+    private static final int[] SIZES = {100, 1000, 10000};
+    private static final long TARGET_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        console.printf(Locale.ROOT, "%-22s %8s %12s %14s %8s%n", "parser", "boxes", "ms/parse", "KB alloc/parse", "found");
+
+        for (int size : SIZES) {
+            String output = generateOutput(size, 42);
+            run(console, "DetectionParser", size, output, DetectionParser::parseDetections);
+            run(console, "DetectionParserNew", size, output, DetectionParserNew::parseDetections);
+            run(console, "DetectionStreamParser", size, output, DetectionStreamParser::parseDetections);
+        }
+    }
+
+    private static void run(PrintStream console, String name, int size, String output,
+                            Function<String, List<DetectionResult>> parser) {
+        // The older parsers log every field; keep that out of the timing and the console
+        PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(silent);
+        try {
+            int found = 0;
+            long warmupEnd = System.nanoTime() + TARGET_NANOS / 2;
+            while (System.nanoTime() < warmupEnd) {
+                found = parser.apply(output).size();
+            }
+
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int iterations = 0;
+            do {
+                found = parser.apply(output).size();
+                iterations++;
+            } while (System.nanoTime() - start < TARGET_NANOS);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            console.printf(Locale.ROOT, "%-22s %8d %12.3f %14s %8d%n", name, size,
+                elapsed / 1e6 / iterations,
+                allocatedBefore < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", allocated / 1024.0 / iterations),
+                found);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Bytes allocated by this thread so far, or -1 where the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Output in the shape ModelConverter.runInference returns
+     */
+    static String generateOutput(int detections, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(detections * 110 + 64);
+        json.append("{\"detections\": [");
+        for (int i = 0; i < detections; i++) {
+            if (i > 0) json.append(", ");
+            int classId = random.nextInt(80);
+            json.append(String.format(Locale.ROOT,
+                "{\"class_id\": %d, \"class_name\": \"class_%d\", \"confidence\": %.6f, \"bbox\": [%.3f, %.3f, %.3f, %.3f]}",
+                classId, classId, random.nextDouble(),
+                random.nextDouble() * 1800, random.nextDouble() * 1000,
+                10 + random.nextDouble() * 120, 10 + random.nextDouble() * 120));
+        }
+        json.append("], \"image_shape\": [1080, 1920, 3]}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package raven.yolo.utils;
+
+import raven.yolo.model.DetectionResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.near;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies DetectionPostProcessor's thresholds and hard and soft NMS on
+ * hand-computed cases. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.utils.DetectionPostProcessorCheck
+ */
+public class DetectionPostProcessorCheck {
+
+    public static void main(String[] args) throws Exception {
+        run("hard NMS suppresses overlaps within a class", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.7f);
+            equal(3, processor.process(sample()), "kept");
+            // B overlaps A with IoU 0.81; C overlaps too but is another class
+            equal("[0, 2, 3]", kept(processor), "kept indices");
+            near(0.9, processor.getKeptScores()[0], 1e-6, "scores are unchanged");
+        });
+
+        run("class-agnostic hard NMS", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.7f).setClassAgnostic(true);
+            processor.process(sample());
+            equal("[0, 3]", kept(processor), "kept indices");
+        });
+
+        run("IoU at the threshold is kept", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.81f);
+            processor.process(sample());
+            equal("[0, 1, 2, 3]", kept(processor), "kept indices");
+        });
+
+        run("linear soft-NMS decays overlapping scores", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor()
+                .setMethod(DetectionPostProcessor.Method.SOFT_LINEAR)
+                .setIouThreshold(0.5f)
+                .setConfidenceThreshold(0.1f);
+            processor.process(sample());
+            equal("[0, 2, 3, 1]", kept(processor), "kept indices, by decayed score");
+            near(0.8 * (1 - 0.81), processor.getKeptScores()[3], 1e-5, "decayed score");
+
+            processor.setConfidenceThreshold(0.25f);
+            processor.process(sample());
+            equal("[0, 2, 3]", kept(processor), "decayed below the threshold");
+        });
+
+        run("Gaussian soft-NMS", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor()
+                .setMethod(DetectionPostProcessor.Method.SOFT_GAUSSIAN)
+                .setSigma(0.5f)
+                .setConfidenceThreshold(0.1f);
+            processor.process(sample());
+            equal("[0, 2, 3, 1]", kept(processor), "kept indices");
+            near(0.8 * Math.exp(-0.81 * 0.81 / 0.5), processor.getKeptScores()[3], 1e-5, "decayed score");
+        });
+
+        run("per-class thresholds and hidden classes", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.7f)
+                .setClassThreshold(1, 0.75f);
+            processor.process(sample());
+            equal("[0, 3]", kept(processor), "class 1 below its own threshold");
+
+            processor.setClassThreshold(1, Float.NaN).setClassVisible(0, false);
+            processor.process(sample());
+            equal("[2]", kept(processor), "class 0 hidden");
+
+            processor.showAllClasses();
+            processor.clearClassThresholds();
+            processor.process(sample());
+            equal("[0, 2, 3]", kept(processor), "defaults restored");
+        });
+
+        run("top-k and max detections", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.7f).setTopK(2);
+            processor.process(sample());
+            // Only A and B enter NMS, and B is suppressed
+            equal("[0]", kept(processor), "top-k");
+
+            processor.setTopK(0).setMaxDetections(2);
+            processor.process(sample());
+            equal("[0, 2]", kept(processor), "max detections");
+        });
+
+        run("work arrays are reused across sizes", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor().setIouThreshold(0.7f);
+            DetectionArrays many = new DetectionArrays();
+            for (int i = 0; i < 500; i++) {
+                many.add(0, "a", 0.3f + i / 1000f, i * 20, 0, 10, 10);
+            }
+            equal(500, processor.process(many), "disjoint boxes are all kept");
+            equal(499, processor.getKeptIndices()[0], "best first");
+            processor.process(sample());
+            equal("[0, 2, 3]", kept(processor), "smaller input after a larger one");
+        });
+
+        run("results carry decayed scores", () -> {
+            DetectionPostProcessor processor = new DetectionPostProcessor()
+                .setMethod(DetectionPostProcessor.Method.SOFT_LINEAR)
+                .setIouThreshold(0.5f)
+                .setConfidenceThreshold(0.1f);
+            List<DetectionResult> results = processor.apply(sample());
+            equal(4, results.size(), "results");
+            equal("b", results.get(1).getClassName(), "class name");
+            near(0.8 * 0.19, results.get(3).getConfidence(), 1e-5, "confidence");
+            near(1, results.get(3).getBoundingBox().getX(), 1e-6, "box");
+        });
+    }
+
+    /**
+     * A and B overlap with IoU 0.81, C matches B's box in another class,
+     * D stands alone and E is below the default threshold
+     */
+    private static DetectionArrays sample() {
+        DetectionArrays arrays = new DetectionArrays(4);
+        arrays.add(0, "a", 0.9f, 0, 0, 10, 10);
+        arrays.add(0, "a", 0.8f, 1, 1, 9, 9);
+        arrays.add(1, "b", 0.7f, 1, 1, 9, 9);
+        arrays.add(0, "a", 0.6f, 50, 50, 10, 10);
+        arrays.add(0, "a", 0.1f, 0, 0, 10, 10);
+        return arrays;
+    }
+
+    private static String kept(DetectionPostProcessor processor) {
+        return Arrays.toString(Arrays.copyOf(processor.getKeptIndices(), processor.getKeptCount()));
+    }
+}
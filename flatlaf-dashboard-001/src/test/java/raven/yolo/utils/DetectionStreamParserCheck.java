@@ -0,0 +1,83 @@
+package raven.yolo.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import raven.yolo.model.DetectionResult;
+
+import java.util.List;
+
+import static raven.yolo.Verify.check;
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.near;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies DetectionStreamParser on the shapes the inference scripts and
+ * worker produce. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.utils.DetectionStreamParserCheck
+ */
+public class DetectionStreamParserCheck {
+
+    private static final String OUTPUT = "Loading model...\n"
+        + "{\"image_shape\": [480, 640, 3], \"speed\": {\"inference\": 4.2},"
+        + " \"detections\": ["
+        + "{\"class_id\": 2, \"class_name\": \"car\", \"confidence\": 0.91, \"bbox\": [10.5, 20, 100, 50]},"
+        + "{\"class\": 0, \"name\": \"person\", \"confidence\": 0.5, \"bbox\": [1, 2, 3, 4], \"extra\": [1, {\"a\": 2}]},"
+        + "{\"class_id\": 7, \"confidence\": 0.3, \"bbox\": [0, 0, 5, 5]},"
+        + "{\"class_id\": 1, \"class_name\": \"bus\", \"confidence\": 0.8, \"bbox\": [1, 2, 3]}"
+        + "], \"error\": null}";
+
+    public static void main(String[] args) throws Exception {
+        run("detections and image shape", () -> {
+            DetectionStreamParser.ParseResult result = DetectionStreamParser.parse(OUTPUT);
+            check(!result.hasError(), "no error");
+            equal(640, result.getImageWidth(), "width");
+            equal(480, result.getImageHeight(), "height");
+
+            List<DetectionResult> detections = result.getDetections();
+            equal(3, detections.size(), "boxes without 4 values are dropped");
+            DetectionResult car = detections.get(0);
+            equal(2, car.getClassId(), "class id");
+            equal("car", car.getClassName(), "class name");
+            near(0.91, car.getConfidence(), 1e-9, "confidence");
+            near(10.5, car.getBoundingBox().getX(), 1e-9, "x");
+            near(50, car.getBoundingBox().getHeight(), 1e-9, "height");
+            equal("person", detections.get(1).getClassName(), "alternate field names");
+            equal("Class_7", detections.get(2).getClassName(), "missing name falls back to the id");
+        });
+
+        run("tree input matches text input", () -> {
+            int start = OUTPUT.indexOf('{');
+            DetectionStreamParser.ParseResult fromTree =
+                DetectionStreamParser.parse(new ObjectMapper().readTree(OUTPUT.substring(start)));
+            List<DetectionResult> fromText = DetectionStreamParser.parseDetections(OUTPUT);
+            equal(fromText.size(), fromTree.getDetections().size(), "count");
+            for (int i = 0; i < fromText.size(); i++) {
+                equal(fromText.get(i).toString(), fromTree.getDetections().get(i).toString(), "detection " + i);
+            }
+            equal(640, fromTree.getImageWidth(), "width");
+        });
+
+        run("class names with equal hashes stay distinct", () -> {
+            // "Aa" and "BB" have the same String hash code
+            List<DetectionResult> detections = DetectionStreamParser.parseDetections("{\"detections\": ["
+                + "{\"class_name\": \"Aa\", \"bbox\": [0, 0, 1, 1]},"
+                + "{\"class_name\": \"BB\", \"bbox\": [0, 0, 1, 1]},"
+                + "{\"class_name\": \"Aa\", \"bbox\": [0, 0, 1, 1]}]}");
+            equal("Aa", detections.get(0).getClassName(), "first");
+            equal("BB", detections.get(1).getClassName(), "second");
+            equal("Aa", detections.get(2).getClassName(), "third");
+        });
+
+        run("errors are reported, not thrown", () -> {
+            check(DetectionStreamParser.parse((String) null).hasError(), "null text");
+            check(DetectionStreamParser.parse((JsonNode) null).hasError(), "null tree");
+            check(DetectionStreamParser.parse("no json here").hasError(), "no object");
+            check(DetectionStreamParser.parse("{\"detections\": [").hasError(), "truncated");
+            DetectionStreamParser.ParseResult failed =
+                DetectionStreamParser.parse("{\"error\": \"model not found\", \"detections\": []}");
+            equal("model not found", failed.getError(), "error field");
+            equal(0, failed.getImageWidth(), "unknown width");
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package raven.yolo.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static raven.yolo.Verify.check;
+import static raven.yolo.Verify.equal;
+import static raven.yolo.Verify.near;
+import static raven.yolo.Verify.run;
+
+/**
+ * Verifies TiledInference's tile plans and cross-tile merging. Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=raven.yolo.utils.TiledInferenceCheck
+ */
+public class TiledInferenceCheck {
+
+    public static void main(String[] args) throws Exception {
+        run("images no larger than a tile give one tile", () -> {
+            List<int[]> tiles = TiledInference.planTiles(640, 480, 640, 0.2);
+            equal(1, tiles.size(), "tiles");
+            equal("[0, 0, 640, 480]", Arrays.toString(tiles.get(0)), "tile");
+        });
+
+        run("last row and column align to the edge", () -> {
+            List<int[]> tiles = TiledInference.planTiles(2000, 1000, 640, 0.2);
+            // Step 512: columns at 0, 512, 1024 and 1360, rows at 0 and 360
+            equal(8, tiles.size(), "tiles");
+            equal("[1360, 0, 640, 640]", Arrays.toString(tiles.get(3)), "last column");
+            equal("[1360, 360, 640, 640]", Arrays.toString(tiles.get(7)), "last tile");
+        });
+
+        run("plans cover the image with the requested overlap", () -> {
+            int[][] sizes = {{641, 641}, {1280, 720}, {4000, 3000}, {12345, 678}, {700, 5000}};
+            double[] overlaps = {0.0, 0.2, 0.5, 0.95};
+            for (int[] size : sizes) {
+                for (double overlap : overlaps) {
+                    verifyPlan(size[0], size[1], 640, overlap);
+                }
+            }
+        });
+
+        run("a box cut by a seam is fused with the whole box", () -> {
+            DetectionArrays detections = new DetectionArrays();
+            detections.add(0, "car", 0.6f, 600, 100, 40, 50);  // clipped at tile 0's right edge
+            detections.add(0, "car", 0.9f, 590, 100, 110, 50); // whole object in tile 1
+            DetectionArrays merged = TiledInference.merge(detections, new int[]{0, 1},
+                TiledInference.DEFAULT_MATCH_THRESHOLD);
+            equal(1, merged.size(), "fused");
+            near(0.9, merged.getScores()[0], 1e-6, "best score kept");
+            near(590, merged.getX1()[0], 1e-6, "x1");
+            near(700, merged.getX2()[0], 1e-6, "x2");
+            equal("car", merged.getClassName(0), "class name");
+        });
+
+        run("same tile, other class and small overlaps stay separate", () -> {
+            DetectionArrays detections = new DetectionArrays();
+            detections.add(0, "car", 0.9f, 0, 0, 100, 100);
+            detections.add(0, "car", 0.8f, 10, 10, 100, 100);  // same tile
+            detections.add(1, "bus", 0.7f, 0, 0, 100, 100);    // other class
+            detections.add(0, "car", 0.6f, 80, 0, 100, 100);   // covers 20% of the smaller box
+            detections.add(0, "car", 0.95f, 500, 500, 10, 10); // elsewhere
+            DetectionArrays merged = TiledInference.merge(detections, new int[]{0, 0, 1, 1, 1}, 0.5f);
+            equal(5, merged.size(), "nothing fused");
+            float[] scores = merged.getScores();
+            for (int i = 1; i < merged.size(); i++) {
+                check(scores[i - 1] >= scores[i], "descending scores");
+            }
+        });
+
+        run("matches are measured against the best box, not the growing union", () -> {
+            DetectionArrays detections = new DetectionArrays();
+            detections.add(2, "sign", 0.5f, 630, 630, 10, 10);
+            detections.add(2, "sign", 0.7f, 620, 630, 30, 10);
+            detections.add(2, "sign", 0.8f, 630, 620, 10, 30);
+            detections.add(2, "sign", 0.4f, 620, 620, 30, 30);
+            DetectionArrays merged = TiledInference.merge(detections, new int[]{0, 1, 2, 3}, 0.5f);
+            // The 0.7 box covers a third of the 0.8 box and stays; the other two fuse into it
+            equal(2, merged.size(), "fused");
+            near(0.8, merged.getScores()[0], 1e-6, "best first");
+            near(620, merged.getX1()[0], 1e-6, "x1");
+            near(620, merged.getY1()[0], 1e-6, "y1");
+            near(650, merged.getX2()[0], 1e-6, "x2");
+            near(650, merged.getY2()[0], 1e-6, "y2");
+            near(0.7, merged.getScores()[1], 1e-6, "unmatched box kept");
+        });
+    }
+
+    private static void verifyPlan(int width, int height, int tileSize, double overlap) {
+        String plan = width + "x" + height + " overlap " + overlap;
+        List<int[]> tiles = TiledInference.planTiles(width, height, tileSize, overlap);
+        boolean[] coveredX = new boolean[width];
+        boolean[] coveredY = new boolean[height];
+        int previousX = -1;
+        int previousY = -1;
+        for (int[] tile : tiles) {
+            check(tile[0] >= 0 && tile[1] >= 0, plan + ": tile inside the image");
+            check(tile[0] + tile[2] <= width && tile[1] + tile[3] <= height, plan + ": tile inside the image");
+            check(tile[2] == Math.min(tileSize, width) && tile[3] == Math.min(tileSize, height), plan + ": tile size");
+            for (int x = tile[0]; x < tile[0] + tile[2]; x++) coveredX[x] = true;
+            for (int y = tile[1]; y < tile[1] + tile[3]; y++) coveredY[y] = true;
+
+            if (tile[1] == previousY && previousX >= 0) {
+                int shared = previousX + tile[2] - tile[0];
+                check(shared >= Math.floor(tile[2] * Math.min(overlap, 0.9)) - 1, plan + ": overlap " + shared);
+            }
+            previousX = tile[0];
+            previousY = tile[1];
+        }
+        for (boolean covered : coveredX) check(covered, plan + ": every column covered");
+        for (boolean covered : coveredY) check(covered, plan + ": every row covered");
+    }
+}